@@ -24,16 +24,14 @@ import android.widget.ImageView;
 import android.widget.TableRow;
 import android.widget.TextView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.radarcns.android.device.DeviceStatusListener;
+import org.radarcns.prmtmonitor.data.DeviceSummary;
+import org.radarcns.prmtmonitor.data.TimeSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.AbstractMap;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -65,14 +63,15 @@ public class DeviceRowView {
     private String previousName;
     private final TextView mConnectionNameLabel;
 
-    HashMap<String, ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>>> mTopicData;
+    Map<String, TimeSeries> mTopicData;
 
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mTabData;
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mTabBat;
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mE4Data;
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mE4Bat;
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mBiovData;
-    private ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> mBiovBat;
+    /**
+     * Status and last-seen time of a device follow its acceleration topic, and battery levels any
+     * of its topics, as in the status served by the monitor daemon.
+     */
+    private DeviceSummary mTabSummary;
+    private DeviceSummary mE4Summary;
+    private DeviceSummary mBiovSummary;
 
     private final View mTabStatusIcon;
     private final ImageView mTabBatteryLabel;
@@ -96,9 +95,9 @@ public class DeviceRowView {
     private DeviceStatusListener.Status prevBiovStatus = null;
     private float prevBiovBatteryLevel = Float.NaN;
 
-    private double lastTabStatus = 0;
-    private double lastE4Status = 0;
-    private double lastBiovStatus = 0;
+    private long lastTabStatus = 0;
+    private long lastE4Status = 0;
+    private long lastBiovStatus = 0;
     private String lastE4Label = "";
     private String lastBiovLabel = "";
 
@@ -112,13 +111,10 @@ public class DeviceRowView {
         TableRow row = (TableRow) root.getChildAt(root.getChildCount() - 1);
         mConnectionNameLabel = row.findViewById(R.id.connectionName_label);
 
-        mTopicData = new HashMap<>();
-        mTabData = new ArrayList<>();
-        mTabBat = new ArrayList<>();
-        mE4Data = new ArrayList<>();
-        mE4Bat = new ArrayList<>();
-        mBiovData = new ArrayList<>();
-        mBiovBat = new ArrayList<>();
+        mTopicData = Collections.emptyMap();
+        mTabSummary = null;
+        mE4Summary = null;
+        mBiovSummary = null;
 
         mTabStatusIcon = row.findViewById(R.id.tab_status_icon);
         mTabBatteryLabel = row.findViewById(R.id.tab_battery_label);
@@ -138,13 +134,10 @@ public class DeviceRowView {
         mConnectionNameLabel.setText(connection);
     }
 
-    void update(HashMap<String, ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>>> topicData) {
-        mTabData = topicData.get("android_phone_acceleration") == null ? null : new ArrayList<>(topicData.get("android_phone_acceleration"));
-        mTabBat = topicData.get("android_phone_battery_level") == null ? null : new ArrayList<>(topicData.get("android_phone_battery_level"));
-        mE4Data = topicData.get("android_empatica_e4_acceleration") == null ? null : new ArrayList<>(topicData.get("android_empatica_e4_acceleration"));
-        mE4Bat = topicData.get("android_empatica_e4_battery_level") == null ? null : new ArrayList<>(topicData.get("android_empatica_e4_battery_level"));
-        mBiovData = topicData.get("android_biovotion_vsm1_acceleration") == null ? null : new ArrayList<>(topicData.get("android_biovotion_vsm1_acceleration"));
-        mBiovBat = topicData.get("android_biovotion_vsm1_battery_level") == null ? null : new ArrayList<>(topicData.get("android_biovotion_vsm1_battery_level"));
+    void update(Map<String, TimeSeries> topicData, Map<String, DeviceSummary> deviceSummaries) {
+        mTabSummary = deviceSummaries.get("android_phone");
+        mE4Summary = deviceSummaries.get("android_empatica_e4");
+        mBiovSummary = deviceSummaries.get("android_biovotion_vsm1");
 
         mTopicData = topicData;
     }
@@ -156,8 +149,6 @@ public class DeviceRowView {
             updateTab();
             updateE4();
             updateBiov();
-        } catch (JSONException ex) {
-            logger.warn("JSON error trying to update device status:", ex);
         } catch (NullPointerException ex) {
             logger.warn("NullPointer error trying to update device status:", ex);
         }
@@ -165,44 +156,44 @@ public class DeviceRowView {
         updateLast();
     }
 
-    private void updateTab() throws JSONException, NullPointerException {
+    private void updateTab() throws NullPointerException {
         // update status
-        prevTabStatus = updateStatus(mTabData, prevTabStatus, mTabStatusIcon);
-        if (mTabData != null && !mTabData.isEmpty())
-            lastTabStatus = getLastTimeReceived(mTabData);
+        prevTabStatus = updateStatus(mTabSummary, prevTabStatus, mTabStatusIcon);
+        if (mTabSummary != null && mTabSummary.isConnected())
+            lastTabStatus = mTabSummary.getLastTimeReceived();
 
         // update battery
-        prevTabBatteryLevel = updateBattery(mTabBat, prevTabBatteryLevel, mTabBatteryValue, mTabBatteryLabel);
+        prevTabBatteryLevel = updateBattery(mTabSummary, prevTabBatteryLevel, mTabBatteryValue, mTabBatteryLabel);
     }
 
-    private void updateE4() throws JSONException, NullPointerException {
+    private void updateE4() throws NullPointerException {
         // update status
-        prevE4Status = updateStatus(mE4Data, prevE4Status, mE4StatusIcon);
-        if (mE4Data != null && !mE4Data.isEmpty()) {
-            lastE4Status = getLastTimeReceived(mE4Data);
-            lastE4Label = getLastSourceId(mE4Data);
+        prevE4Status = updateStatus(mE4Summary, prevE4Status, mE4StatusIcon);
+        if (mE4Summary != null && mE4Summary.isConnected()) {
+            lastE4Status = mE4Summary.getLastTimeReceived();
+            lastE4Label = mE4Summary.getLastSourceId();
         }
 
         // update battery
-        prevE4BatteryLevel = updateBattery(mE4Bat, prevE4BatteryLevel, mE4BatteryValue, mE4BatteryLabel);
+        prevE4BatteryLevel = updateBattery(mE4Summary, prevE4BatteryLevel, mE4BatteryValue, mE4BatteryLabel);
     }
 
-    private void updateBiov() throws JSONException, NullPointerException {
+    private void updateBiov() throws NullPointerException {
         // update status
-        prevBiovStatus = updateStatus(mBiovData, prevBiovStatus, mBiovStatusIcon);
-        if (mBiovData != null && !mBiovData.isEmpty()) {
-            lastBiovStatus = getLastTimeReceived(mBiovData);
-            lastBiovLabel = getLastSourceId(mBiovData);
+        prevBiovStatus = updateStatus(mBiovSummary, prevBiovStatus, mBiovStatusIcon);
+        if (mBiovSummary != null && mBiovSummary.isConnected()) {
+            lastBiovStatus = mBiovSummary.getLastTimeReceived();
+            lastBiovLabel = mBiovSummary.getLastSourceId();
         }
 
         // update battery
-        prevBiovBatteryLevel = updateBattery(mBiovBat, prevBiovBatteryLevel, mBiovBatteryValue, mBiovBatteryLabel);
+        prevBiovBatteryLevel = updateBattery(mBiovSummary, prevBiovBatteryLevel, mBiovBatteryValue, mBiovBatteryLabel);
     }
 
-    private DeviceStatusListener.Status updateStatus(ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> statusData, DeviceStatusListener.Status prevStatus, View statusIconView) {
+    private DeviceStatusListener.Status updateStatus(DeviceSummary summary, DeviceStatusListener.Status prevStatus, View statusIconView) {
         // Connection status. Change icon used.
         DeviceStatusListener.Status newStatus;
-        if (statusData == null || statusData.isEmpty()) {
+        if (summary == null || !summary.isConnected()) {
             newStatus = DeviceStatusListener.Status.DISCONNECTED;
         } else {
             newStatus = DeviceStatusListener.Status.CONNECTED;
@@ -216,16 +207,10 @@ public class DeviceRowView {
         return newStatus;
     }
 
-    private float updateBattery(ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> batteryData, float prevValue, TextView batValueView, ImageView batLabelView) {
+    private float updateBattery(DeviceSummary summary, float prevValue, TextView batValueView, ImageView batLabelView) {
         float batteryLevel = prevValue;
-        if (batteryData != null && !batteryData.isEmpty()) {
-            try {
-                batteryLevel = (float) batteryData.get(batteryData.size()-1).getValue().getDouble("batteryLevel");
-            } catch (JSONException ex) {
-                logger.error("Error trying to parse battery level", ex);
-            } catch (NullPointerException ex) {
-                logger.error("Something went wrong during a battery update step!", ex);
-            }
+        if (summary != null && !Float.isNaN(summary.getLastBatteryLevel())) {
+            batteryLevel = summary.getLastBatteryLevel();
         }
 
         if (Objects.equals((int)(prevValue*100), (int)(batteryLevel*100))) {
@@ -266,17 +251,8 @@ public class DeviceRowView {
         mConnectionNameLabel.setText(newName == null ? "\u2014" : newName);
     }
 
-    private double getLastTimeReceived(ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> data) throws JSONException, NullPointerException {
-        return data.get(data.size() - 1).getValue().getDouble("timeReceived");
-    }
-    private String getLastSourceId(ArrayList<AbstractMap.SimpleEntry<JSONObject,JSONObject>> data) throws JSONException, NullPointerException {
-        return data.get(data.size() - 1).getKey().getString("sourceId");
-    }
-
-
-
-    private String getLastText(double stamp, String label) {
-        long millis = System.currentTimeMillis() - (long) (stamp*1000);
+    private String getLastText(long stamp, String label) {
+        long millis = System.currentTimeMillis() - stamp;
         String sinceLast = String.format(Locale.UK,"%02d:%02d:%02d", TimeUnit.MILLISECONDS.toHours(millis),
                 TimeUnit.MILLISECONDS.toMinutes(millis) % TimeUnit.HOURS.toMinutes(1),
                 TimeUnit.MILLISECONDS.toSeconds(millis) % TimeUnit.MINUTES.toSeconds(1));
@@ -300,7 +276,7 @@ public class DeviceRowView {
     }
 
 
-    public ArrayList<AbstractMap.SimpleEntry<JSONObject, JSONObject>> getDataForTopic(String topic) {
-        return (!mTopicData.containsKey(topic) || mTopicData.get(topic) == null) ? null : new ArrayList<>(mTopicData.get(topic));
+    public TimeSeries getDataForTopic(String topic) {
+        return mTopicData.get(topic);
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import org.radarcns.prmtmonitor.kafka.TaskExecutor;
+
+import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+
+/**
+ * Task executor backed by a Handler on its own background HandlerThread.
+ */
+public class HandlerTaskExecutor implements TaskExecutor {
+    /** Creates a handler task executor per name. */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public TaskExecutor create(String name) {
+            return new HandlerTaskExecutor(name);
+        }
+    };
+
+    private final HandlerThread handlerThread;
+    private final Handler handler;
+
+    public HandlerTaskExecutor(String name) {
+        handlerThread = new HandlerThread(name, THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+    }
+
+    @Override
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+
+    @Override
+    public void quitSafely() {
+        handlerThread.quitSafely();
+    }
+}
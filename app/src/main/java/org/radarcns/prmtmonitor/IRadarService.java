@@ -20,13 +20,22 @@ import org.radarcns.android.auth.AppAuthState;
 import org.radarcns.data.TimedInt;
 import org.radarcns.prmtmonitor.kafka.KafkaDataReader;
 import org.radarcns.prmtmonitor.kafka.ServerStatusListener;
+import org.radarcns.prmtmonitor.metrics.MetricsSnapshot;
 
 public interface IRadarService {
     ServerStatusListener.Status getServerStatus();
 
+    ServerStatusListener.ConsumerState getConsumerState();
+
     TimedInt getLatestNumberOfRecordsRead();
 
     AppAuthState getAuthState();
 
     KafkaDataReader getDataReader();
+
+    /**
+     * Current throughput, latency and memory metrics of the data reader, or null if the data
+     * reader has not been created yet.
+     */
+    MetricsSnapshot getMetrics();
 }
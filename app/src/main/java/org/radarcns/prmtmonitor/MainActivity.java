@@ -86,6 +86,10 @@ public abstract class MainActivity extends Activity {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             radarService = (IRadarService) service;
+            MainActivityView previousView = mView;
+            if (previousView != null) {
+                previousView.close();
+            }
             mView = createView();
         }
 
@@ -187,6 +191,10 @@ public abstract class MainActivity extends Activity {
     protected void onPause() {
         logger.info("mainActivity onPause");
         getHandler().removeCallbacks(mViewUpdater);
+        MainActivityView localView = mView;
+        if (localView != null) {
+            localView.close();
+        }
         unbindService(radarServiceConnection);
         super.onPause();
     }
@@ -21,4 +21,9 @@ public interface MainActivityView {
      * Update the user interface.
      */
     void update();
+
+    /**
+     * Release any resources held by the view. The view is not updated after this is called.
+     */
+    void close();
 }
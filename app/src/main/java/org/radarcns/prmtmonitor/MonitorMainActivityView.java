@@ -29,20 +29,21 @@ import com.jjoe64.graphview.LegendRenderer;
 import com.jjoe64.graphview.series.DataPoint;
 import com.jjoe64.graphview.series.LineGraphSeries;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.radarcns.data.TimedInt;
+import org.radarcns.prmtmonitor.data.DataChange;
+import org.radarcns.prmtmonitor.data.StoreSnapshot;
+import org.radarcns.prmtmonitor.data.TimeSeries;
+import org.radarcns.prmtmonitor.kafka.DataChangeListener;
+import org.radarcns.prmtmonitor.kafka.KafkaDataReader;
 import org.radarcns.prmtmonitor.kafka.ServerStatusListener;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -50,7 +51,7 @@ import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 
-public class MonitorMainActivityView implements Runnable, MainActivityView, AdapterView.OnItemSelectedListener {
+public class MonitorMainActivityView implements Runnable, MainActivityView, AdapterView.OnItemSelectedListener, DataChangeListener {
     private static final DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
 
     private final static Map<ServerStatusListener.Status, Integer> serverStatusIconMap;
@@ -98,7 +99,11 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
     private ArrayAdapter mGraphTopicAdapter;
     private String mGraphTopicSelection;
 
-    private int mLastDataSize;
+    private TimeSeries mLastGraphData;
+    /** Users whose rows need new data, or null if all rows do. */
+    private Set<String> mChangedUsers;
+    /** Data reader that this view listens to, or null if there is none yet. */
+    private KafkaDataReader<?> mDataReader;
 
     private int[] primaryColors = {0xFFD50000, 0xFF00C853, 0xFF2962FF}; // {R, G, B}
 
@@ -108,13 +113,63 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
         this.previousUserId = "";
         this.savedConnections = new HashSet<>();
 
-        mLastDataSize = 0;
+        mLastGraphData = null;
+        mChangedUsers = null;
+        mDataReader = null;
 
         initializeViews();
 
         createRows();
     }
 
+    @Override
+    public synchronized void close() {
+        if (mDataReader != null) {
+            mDataReader.removeDataChangeListener(this);
+            mDataReader = null;
+        }
+    }
+
+    /**
+     * Listen to the data reader of the service, if it changed. The reader is only created once
+     * the service has its configuration, which may be after this view was created.
+     * @return current data reader, or null if there is none
+     */
+    private synchronized KafkaDataReader<?> updateDataReader() {
+        IRadarService radarService = mainActivity.getRadarService();
+        KafkaDataReader<?> dataReader = radarService != null ? radarService.getDataReader() : null;
+        if (dataReader != mDataReader) {
+            if (mDataReader != null) {
+                mDataReader.removeDataChangeListener(this);
+            }
+            if (dataReader != null) {
+                dataReader.addDataChangeListener(this);
+            }
+            mDataReader = dataReader;
+            // changes before listening to this reader were missed
+            setAllUsersChanged();
+        }
+        return dataReader;
+    }
+
+    @Override
+    public synchronized void onDataChanged(DataChange change) {
+        if (mChangedUsers != null) {
+            mChangedUsers.addAll(change.getUsers());
+        }
+    }
+
+    /** Users whose rows need new data, or null if all rows do. Resets the changed users. */
+    private synchronized Set<String> takeChangedUsers() {
+        Set<String> changedUsers = mChangedUsers;
+        mChangedUsers = new HashSet<>();
+        return changedUsers;
+    }
+
+    private synchronized void setAllUsersChanged() {
+        mChangedUsers = null;
+    }
+
     private void createRows() {
         createRows(false);
     }
@@ -141,6 +196,8 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
                 rows.put((String) connection, new DeviceRowView(mainActivity, (String) connection, root));
             }
             this.savedConnections = newConnections;
+            // new rows have no data yet
+            setAllUsersChanged();
         }
     }
 
@@ -150,10 +207,19 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
         userId = mainActivity.getUserId();
         projectId = mainActivity.getProjectId();
         serverUrl = mainActivity.getServerUrl();
-        for (Map.Entry<String,DeviceRowView> row : rows.entrySet()) {
-            HashMap topicData = mainActivity.getRadarService().getDataReader().getTopicData(row.getKey());
-            if (!topicData.isEmpty())
-                row.getValue().update(topicData);
+        // only rows of users with changed data are updated
+        KafkaDataReader<?> dataReader = updateDataReader();
+        Set<String> changedUsers = dataReader != null ? takeChangedUsers() : Collections.<String>emptySet();
+        if (changedUsers == null || !changedUsers.isEmpty()) {
+            StoreSnapshot snapshot = dataReader.getSnapshot();
+            for (Map.Entry<String,DeviceRowView> row : rows.entrySet()) {
+                if (changedUsers != null && !changedUsers.contains(row.getKey())) {
+                    continue;
+                }
+                Map<String, TimeSeries> topicData = snapshot.getSeries(row.getKey());
+                if (!topicData.isEmpty())
+                    row.getValue().update(topicData, snapshot.getDeviceSummaries(row.getKey()));
+            }
         }
         if (mainActivity.getRadarService() != null) {
             newServerStatus = getServerStatusMessage();
@@ -177,6 +243,9 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
             } else {
                 message = String.format(Locale.US, "last download at %1$s", messageTimeStamp);
             }
+            if (mainActivity.getRadarService().getConsumerState() == ServerStatusListener.ConsumerState.CATCHING_UP) {
+                message += " (catching up)";
+            }
         }
         return message;
     }
@@ -287,27 +356,22 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
             return;
         }
 
-        ArrayList<AbstractMap.SimpleEntry<JSONObject, JSONObject>> data = rows.get(mGraphSourceSelection).getDataForTopic(mGraphTopicSelection);
+        TimeSeries data = rows.get(mGraphSourceSelection).getDataForTopic(mGraphTopicSelection);
 
-        if (data == null || data.isEmpty() || data.size() == mLastDataSize) return;
+        // unchanged series are the same object in each snapshot
+        if (data == null || data.isEmpty() || data == mLastGraphData) return;
 
-        mLastDataSize = data.size();
+        mLastGraphData = data;
 
         if (mDataSeries.isEmpty())
             resetSeries();
 
         for (String line : mDataSeries.keySet()) {
-            DataPoint[] lineData = new DataPoint[data.size()];
-
-            try {
-                for (int i = 0; i < data.size(); i++) {
-                    if (data.get(i) != null)
-                        lineData[i] = new DataPoint(i, data.get(i).getValue().getDouble(line));
-                    else
-                        lineData[i] = new DataPoint(i, 0);
-                }
-            } catch (JSONException ex) {
-                continue;
+            double[] values = data.getValues(line);
+            DataPoint[] lineData = new DataPoint[values.length];
+
+            for (int i = 0; i < values.length; i++) {
+                lineData[i] = new DataPoint(i, values[i]);
             }
 
             mDataSeries.get(line).resetData(lineData);
@@ -336,16 +400,13 @@ public class MonitorMainActivityView implements Runnable, MainActivityView, Adap
         mDataGraph.getViewport().setMaxX(10);
 
         mDataSeries.clear();
-        ArrayList<AbstractMap.SimpleEntry<JSONObject, JSONObject>> data = rows.get(mGraphSourceSelection).getDataForTopic(mGraphTopicSelection);
+        mLastGraphData = null;
+        TimeSeries data = rows.get(mGraphSourceSelection).getDataForTopic(mGraphTopicSelection);
         if (data == null || data.isEmpty()) return;
 
-        Iterator<String> iter = data.get(0).getValue().keys();
         int colorInd = 0;
         int maxWidth = 0;
-        while (iter.hasNext()) {
-            String key = iter.next();
-            if (key.equals("time") || key.equals("timeReceived"))
-                continue;
+        for (String key : data.getSchema().getFieldNames()) {
             mDataSeries.put(key, new LineGraphSeries());
             mDataSeries.get(key).setColor(colorInd < primaryColors.length ? primaryColors[colorInd] : getRandColor());
             mDataSeries.get(key).setTitle(key);
@@ -40,24 +40,20 @@ import org.radarcns.android.auth.AppAuthState;
 import org.radarcns.android.util.BundleSerialization;
 import org.radarcns.config.ServerConfig;
 import org.radarcns.data.TimedInt;
-import org.radarcns.passive.biovotion.BiovotionVsm1BatteryLevel;
-import org.radarcns.passive.biovotion.BiovotionVsm1PpgRaw;
-import org.radarcns.passive.empatica.EmpaticaE4Acceleration;
-import org.radarcns.passive.empatica.EmpaticaE4BatteryLevel;
-import org.radarcns.passive.empatica.EmpaticaE4BloodVolumePulse;
-import org.radarcns.passive.empatica.EmpaticaE4ElectroDermalActivity;
-import org.radarcns.passive.phone.PhoneAcceleration;
-import org.radarcns.passive.phone.PhoneBatteryLevel;
 import org.radarcns.prmtmonitor.consumer.RestReader;
 import org.radarcns.prmtmonitor.kafka.KafkaDataReader;
+import org.radarcns.prmtmonitor.kafka.OffsetCheckpointStore;
 import org.radarcns.prmtmonitor.kafka.ServerStatusListener;
+import org.radarcns.prmtmonitor.metrics.MetricsServer;
+import org.radarcns.prmtmonitor.metrics.MetricsSnapshot;
 import org.radarcns.producer.rest.RestClient;
 import org.radarcns.producer.rest.SchemaRetriever;
-import org.radarcns.topic.AvroTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.Collections;
@@ -65,6 +61,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -83,11 +80,21 @@ import static org.radarcns.android.RadarConfiguration.UNSAFE_KAFKA_CONNECTION;
 import static org.radarcns.android.auth.portal.GetSubjectParser.getHumanReadableUserId;
 import static org.radarcns.android.auth.portal.ManagementPortalClient.MP_REFRESH_TOKEN_PROPERTY;
 import static org.radarcns.android.device.DeviceService.SERVER_STATUS_CHANGED;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_BINARY;
 import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_DECAY;
 import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_GROUP;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_HTTP2;
 import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_INSTANCE;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_MAX_BYTES;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_MAX_RECORDS;
 import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_PERSISTENT;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_PIPELINED;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_POOL_SIZE;
 import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_RATE;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_RESUME;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_SERIES_CAPACITY;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_TIMEOUT;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_METRICS_PORT;
 
 @SuppressWarnings("unused")
 public class RadarService extends Service implements ServerStatusListener {
@@ -127,6 +134,8 @@ public class RadarService extends Service implements ServerStatusListener {
     private IBinder binder;
 
     public KafkaDataReader dataReader;
+    private MetricsServer metricsServer;
+    private int metricsPort;
     private String mainActivityClass;
     private HandlerThread mHandlerThread;
     private Handler mHandler;
@@ -166,6 +175,8 @@ public class RadarService extends Service implements ServerStatusListener {
 
     /** Current server status. */
     private Status serverStatus;
+    /** Whether the data reader is reading a backlog or keeping up. */
+    private volatile ConsumerState consumerState;
     private AppAuthState authState;
 
     private final LinkedHashSet<String> needsPermissions = new LinkedHashSet<>();
@@ -223,17 +234,7 @@ public class RadarService extends Service implements ServerStatusListener {
 
         mHandler.post(() -> {
             try {
-                Set<AvroTopic> topics = new HashSet<>();
-                topics.add(dataReader.createTopic("android_phone_acceleration", PhoneAcceleration.class));
-                topics.add(dataReader.createTopic("android_phone_battery_level", PhoneBatteryLevel.class));
-                topics.add(dataReader.createTopic("android_empatica_e4_acceleration", EmpaticaE4Acceleration.class));
-                topics.add(dataReader.createTopic("android_empatica_e4_battery_level", EmpaticaE4BatteryLevel.class));
-                topics.add(dataReader.createTopic("android_empatica_e4_blood_volume_pulse", EmpaticaE4BloodVolumePulse.class));
-                topics.add(dataReader.createTopic("android_empatica_e4_electrodermal_activity", EmpaticaE4ElectroDermalActivity.class));
-                topics.add(dataReader.createTopic("android_biovotion_vsm1_acceleration", PhoneAcceleration.class));
-                topics.add(dataReader.createTopic("android_biovotion_vsm1_battery_level", BiovotionVsm1BatteryLevel.class));
-                topics.add(dataReader.createTopic("android_biovotion_vsm1_ppg_raw", BiovotionVsm1PpgRaw.class));
-                dataReader.addTopics(topics);
+                dataReader.addTopics(dataReader.createMonitorTopics());
             } catch (IOException ex) {
                 logger.error("KafkaDataReader failed!", ex);
             }
@@ -244,6 +245,9 @@ public class RadarService extends Service implements ServerStatusListener {
 
     @Override
     public void onDestroy() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
         dataReader.close();
 
         mHandler = null;
@@ -282,6 +286,15 @@ public class RadarService extends Service implements ServerStatusListener {
         int consumerDownloadRate = configuration.getInt(CONFIG_CONSUMER_RATE, 10);
         boolean consumerPersistentData = configuration.getBoolean(CONFIG_CONSUMER_PERSISTENT, false);
         int consumerDecay = configuration.getInt(CONFIG_CONSUMER_DECAY, 300000);
+        boolean consumerBinary = configuration.getBoolean(CONFIG_CONSUMER_BINARY, false);
+        boolean consumerPipelined = configuration.getBoolean(CONFIG_CONSUMER_PIPELINED, false);
+        int consumerMaxRecords = configuration.getInt(CONFIG_CONSUMER_MAX_RECORDS, 1000);
+        long consumerMaxBytes = configuration.getLong(CONFIG_CONSUMER_MAX_BYTES, 1048576L);
+        long consumerTimeout = configuration.getLong(CONFIG_CONSUMER_TIMEOUT, 1000L);
+        int consumerPoolSize = configuration.getInt(CONFIG_CONSUMER_POOL_SIZE, 1);
+        String consumerResume = configuration.getString(CONFIG_CONSUMER_RESUME, "end");
+        int consumerSeriesCapacity = configuration.getInt(CONFIG_CONSUMER_SERIES_CAPACITY, 0);
+        boolean consumerHttp2 = configuration.getBoolean(CONFIG_CONSUMER_HTTP2, false);
 
         if (kafkaConfig != null) {
             RestClient httpClient = RestClient.global()
@@ -294,15 +307,54 @@ public class RadarService extends Service implements ServerStatusListener {
                     .httpClient(httpClient)
                     .schemaRetriever(remoteSchemaRetriever)
                     .headers(authState.getOkHttpHeaders())
-                    .hasBinaryContent(false)
+                    .hasBinaryContent(consumerBinary)
+                    .http2(consumerHttp2)
                     .build();
 
-            if (dataReader == null)
-                dataReader = new KafkaDataReader(this, restReader, consumerGroup, consumerInstance, 100, consumerDownloadRate, consumerPersistentData, consumerDecay);
+            if (dataReader == null) {
+                dataReader = new KafkaDataReader(this, restReader, HandlerTaskExecutor.FACTORY, consumerGroup, consumerInstance, consumerMaxRecords, consumerDownloadRate, consumerPersistentData, consumerDecay, consumerPipelined, consumerPoolSize);
+                dataReader.setOffsetCheckpoints(
+                        new OffsetCheckpointStore(new File(getFilesDir(), "offsets_" + consumerGroup + ".tsv"), consumerDecay),
+                        parseResumePolicy(consumerResume));
+            }
+            dataReader.setGetLimit(consumerMaxRecords);
+            dataReader.setGetByteLimit(consumerMaxBytes);
+            dataReader.setGetTimeout(consumerTimeout);
+            dataReader.setSeriesCapacity(consumerSeriesCapacity);
+            updateMetricsServer(configuration.getInt(CONFIG_METRICS_PORT, 0));
+        }
+    }
+
+    /**
+     * Start, restart or stop the metrics server, so that it listens on given port on all
+     * interfaces.
+     * @param port port to listen on, or 0 to not serve metrics
+     */
+    private void updateMetricsServer(int port) {
+        if (metricsServer != null && port == metricsPort) {
+            return;
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+        metricsPort = port;
+        if (port > 0) {
+            metricsServer = new MetricsServer(dataReader.getMetrics(), new InetSocketAddress(port));
+            metricsServer.start();
         }
     }
 
 
+    private static KafkaDataReader.ResumePolicy parseResumePolicy(String policy) {
+        try {
+            return KafkaDataReader.ResumePolicy.valueOf(policy.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Unknown consumer resume policy {}, reading from the end", policy);
+            return KafkaDataReader.ResumePolicy.END;
+        }
+    }
+
     protected void requestPermissions(String[] permissions) {
         startActivity(new Intent()
                 .setComponent(new ComponentName(this, mainActivityClass))
@@ -343,6 +395,11 @@ public class RadarService extends Service implements ServerStatusListener {
         sendBroadcast(statusIntent);
     }
 
+    @Override
+    public void updateConsumerState(ConsumerState consumerState) {
+        this.consumerState = consumerState;
+    }
+
     @Override
     public void updateRecordsRead(String topicName, int numberOfRecords) {
         this.latestNumberOfRecordsRead.set(numberOfRecords);
@@ -431,6 +488,11 @@ public class RadarService extends Service implements ServerStatusListener {
              return serverStatus;
         }
 
+        @Override
+        public ConsumerState getConsumerState() {
+            return consumerState;
+        }
+
         @Override
         public TimedInt getLatestNumberOfRecordsRead() {
             return latestNumberOfRecordsRead;
@@ -445,5 +507,11 @@ public class RadarService extends Service implements ServerStatusListener {
         public KafkaDataReader getDataReader() {
             return dataReader;
         }
+
+        @Override
+        public MetricsSnapshot getMetrics() {
+            KafkaDataReader reader = dataReader;
+            return reader != null ? reader.getMetrics().snapshot() : null;
+        }
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.benchmark;
+
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.radarcns.prmtmonitor.data.DeviceSummary;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.prmtmonitor.data.StoreSnapshot;
+import org.radarcns.prmtmonitor.data.TimeSeries;
+import org.radarcns.prmtmonitor.data.TimeSeriesStore;
+import org.radarcns.prmtmonitor.mockproxy.Payloads;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the data work of a single dashboard refresh, on a snapshot that holds a minute of
+ * samples of all topics: reading the state of the devices of each user row, as
+ * DeviceRowView does in update and display, and building the points of the graph of a single
+ * series, as MonitorMainActivityView does in updateGraph. The views themselves need Android, so
+ * only the data access and the objects created for them are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardBenchmark {
+    private static final String[] ROW_DEVICES = {
+            "android_phone", "android_empatica_e4", "android_biovotion_vsm1"};
+    private static final String GRAPH_TOPIC = "android_phone_acceleration";
+    private static final int SECONDS = 60;
+
+    @Param({"10", "50"})
+    public int users;
+
+    private StoreSnapshot snapshot;
+    private String graphUser;
+
+    @Setup
+    public void setUp() {
+        TimeSeriesStore store = new TimeSeriesStore(TimeSeriesStore.capacityFor(SECONDS * 1000L));
+        double totalRate = 0d;
+        for (Payloads.TopicPayload topic : Payloads.TOPICS) {
+            store.addTopic(topic.name, topic.valueSchema);
+            totalRate += topic.rate;
+        }
+        int numRecords = (int) (totalRate * SECONDS * users);
+        for (Payloads.Record record : Payloads.records(numRecords, users, 1L)) {
+            SeriesSchema schema = store.getSchema(record.topic);
+            List<String> fieldNames = schema.getFieldNames();
+            double[] values = new double[fieldNames.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ((Number) record.value.get(fieldNames.get(i))).doubleValue();
+            }
+            GenericRecord key = record.key;
+            store.add(record.topic, key.get("userId").toString(), key.get("sourceId").toString(),
+                    Math.round((Double) record.value.get("time") * 1000d),
+                    Math.round((Double) record.value.get("timeReceived") * 1000d),
+                    values);
+        }
+        store.publish();
+        snapshot = store.getSnapshot();
+        graphUser = Payloads.userId(0);
+    }
+
+    /** Reading the device states of all rows and formatting their labels. */
+    @Benchmark
+    public void updateRows(Blackhole blackhole) {
+        long now = System.currentTimeMillis();
+        for (String userId : snapshot.getUsers()) {
+            blackhole.consume(snapshot.getSeries(userId));
+            Map<String, DeviceSummary> summaries = snapshot.getDeviceSummaries(userId);
+            for (String device : ROW_DEVICES) {
+                DeviceSummary summary = summaries.get(device);
+                boolean connected = summary != null && summary.getNumSamples() > 0;
+                blackhole.consume(connected);
+                if (!connected) {
+                    continue;
+                }
+                float batteryLevel = summary.getLastBatteryLevel();
+                blackhole.consume(Float.isNaN(batteryLevel)
+                        ? "\u2014" : Integer.toString((int) (batteryLevel * 100)) + "%");
+                long millis = now - summary.getLastTimeReceived();
+                blackhole.consume(String.format(Locale.UK, "%02d:%02d:%02d",
+                        TimeUnit.MILLISECONDS.toHours(millis),
+                        TimeUnit.MILLISECONDS.toMinutes(millis) % TimeUnit.HOURS.toMinutes(1),
+                        TimeUnit.MILLISECONDS.toSeconds(millis) % TimeUnit.MINUTES.toSeconds(1)));
+                blackhole.consume(summary.getLastSourceId());
+            }
+        }
+    }
+
+    /** Building the points of each line of the graph of a single series. */
+    @Benchmark
+    public void graphPoints(Blackhole blackhole) {
+        TimeSeries data = snapshot.getSeries(graphUser, GRAPH_TOPIC);
+        for (String line : data.getSchema().getFieldNames()) {
+            double[] values = data.getValues(line);
+            Point[] lineData = new Point[values.length];
+            for (int i = 0; i < values.length; i++) {
+                lineData[i] = new Point(i, values[i]);
+            }
+            blackhole.consume(lineData);
+        }
+    }
+
+    /** Stand-in for the GraphView DataPoint, which is only available on Android. */
+    private static final class Point {
+        private final double x;
+        private final double y;
+
+        Point(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
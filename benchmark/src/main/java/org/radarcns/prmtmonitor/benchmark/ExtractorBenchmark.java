@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.benchmark;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.radarcns.prmtmonitor.data.Sample;
+import org.radarcns.prmtmonitor.data.SampleExtractor;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting the user ID, times and numeric values out of a record: by field name from a
+ * JSONObject, as in the JSON embedded format, compared to a schema-compiled extractor that reads
+ * the Avro binary embedded format directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorBenchmark {
+    private static final int NUM_RECORDS = 1000;
+
+    private SeriesSchema seriesSchema;
+    private String[] keyJson;
+    private String[] valueJson;
+    private JSONObject[] keys;
+    private JSONObject[] values;
+    private byte[][] keyBytes;
+    private byte[][] valueBytes;
+    private SampleExtractor keyExtractor;
+    private SampleExtractor valueExtractor;
+    private Sample sample;
+    private double[] valueBuffer;
+    private BinaryDecoder decoder;
+
+    @Setup
+    public void setUp() throws IOException {
+        Schema keySchema = SchemaBuilder.record("ObservationKey").fields()
+                .optionalString("projectId")
+                .requiredString("userId")
+                .requiredString("sourceId")
+                .endRecord();
+        Schema valueSchema = SchemaBuilder.record("EmpaticaE4Acceleration").fields()
+                .requiredDouble("time")
+                .requiredDouble("timeReceived")
+                .requiredFloat("x")
+                .requiredFloat("y")
+                .requiredFloat("z")
+                .endRecord();
+        seriesSchema = new SeriesSchema(valueSchema);
+
+        keyJson = new String[NUM_RECORDS];
+        valueJson = new String[NUM_RECORDS];
+        keys = new JSONObject[NUM_RECORDS];
+        values = new JSONObject[NUM_RECORDS];
+        keyBytes = new byte[NUM_RECORDS][];
+        valueBytes = new byte[NUM_RECORDS][];
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            GenericRecord key = new GenericData.Record(keySchema);
+            key.put("projectId", "radar");
+            key.put("userId", "user-" + (i / 100));
+            key.put("sourceId", "source-" + (i / 100));
+            GenericRecord value = new GenericData.Record(valueSchema);
+            value.put("time", 1.5e9 + i * 0.03125);
+            value.put("timeReceived", 1.5e9 + i * 0.03125 + 0.1);
+            value.put("x", (float) Math.sin(i));
+            value.put("y", (float) Math.cos(i));
+            value.put("z", 0.98f);
+
+            keyJson[i] = GenericData.get().toString(key);
+            valueJson[i] = GenericData.get().toString(value);
+            keys[i] = new JSONObject(keyJson[i]);
+            values[i] = new JSONObject(valueJson[i]);
+            keyBytes[i] = encode(key);
+            valueBytes[i] = encode(value);
+        }
+
+        keyExtractor = SampleExtractor.forKey(keySchema);
+        valueExtractor = SampleExtractor.forValue(valueSchema, seriesSchema);
+        sample = new Sample(seriesSchema);
+        valueBuffer = new double[seriesSchema.size()];
+        decoder = null;
+    }
+
+    private static byte[] encode(GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    /** Field access by name on records that were already parsed to JSONObjects. */
+    @Benchmark
+    @OperationsPerInvocation(NUM_RECORDS)
+    public void jsonFieldAccess(Blackhole blackhole) {
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            readJson(keys[i], values[i], blackhole);
+        }
+    }
+
+    /** Parsing the JSON records and then accessing their fields by name. */
+    @Benchmark
+    @OperationsPerInvocation(NUM_RECORDS)
+    public void jsonParseAndAccess(Blackhole blackhole) {
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            readJson(new JSONObject(keyJson[i]), new JSONObject(valueJson[i]), blackhole);
+        }
+    }
+
+    /** Extracting the fields directly from the Avro binary records. */
+    @Benchmark
+    @OperationsPerInvocation(NUM_RECORDS)
+    public void compiledExtractor(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            decoder = DecoderFactory.get().binaryDecoder(keyBytes[i], decoder);
+            keyExtractor.extract(decoder, sample);
+            decoder = DecoderFactory.get().binaryDecoder(valueBytes[i], decoder);
+            valueExtractor.extract(decoder, sample);
+            blackhole.consume(sample.getUserId());
+            blackhole.consume(sample.getTime());
+            blackhole.consume(sample.getTimeReceived());
+            blackhole.consume(sample.getValue(0));
+        }
+    }
+
+    private void readJson(JSONObject key, JSONObject value, Blackhole blackhole) {
+        List<String> fieldNames = seriesSchema.getFieldNames();
+        for (int j = 0; j < fieldNames.size(); j++) {
+            valueBuffer[j] = value.optDouble(fieldNames.get(j), Double.NaN);
+        }
+        blackhole.consume(key.getString("userId"));
+        blackhole.consume(Math.round(value.getDouble(SeriesSchema.TIME_FIELD) * 1000d));
+        blackhole.consume(Math.round(value.getDouble(SeriesSchema.TIME_RECEIVED_FIELD) * 1000d));
+        blackhole.consume(valueBuffer[0]);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.benchmark;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.radarcns.prmtmonitor.data.DataChange;
+import org.radarcns.prmtmonitor.data.SampleBatch;
+import org.radarcns.prmtmonitor.data.TimeSeriesStore;
+import org.radarcns.prmtmonitor.mockproxy.Payloads;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of ingesting the records of a single poll, as the data reader does after a fetch:
+ * collecting the decoded JSON records per topic and user in a {@link SampleBatch}, and merging
+ * that batch into the store, which removes expired samples, adds the new samples and publishes a
+ * new snapshot. The store is first filled with a full decay window of samples of all topics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+    private static final int RECORDS_PER_POLL = 1000;
+    /** Number of polls of distinct records, which are reused with later times afterwards. */
+    private static final int POOL_POLLS = 50;
+    private static final long DECAY_MS = 60_000L;
+
+    @Param({"10", "100"})
+    public int users;
+
+    private String[] topics;
+    private JSONObject[] keys;
+    private JSONObject[] values;
+    private double[] times;
+    private double[] timesReceived;
+    /** Seconds that the records in the pool span. */
+    private double poolSpan;
+
+    private TimeSeriesStore store;
+    private int nextPoll;
+    private int firstRecord;
+    private SampleBatch batch;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Payloads.Record> records = Payloads.records(RECORDS_PER_POLL * POOL_POLLS, users, 1L);
+        topics = new String[records.size()];
+        keys = new JSONObject[records.size()];
+        values = new JSONObject[records.size()];
+        times = new double[records.size()];
+        timesReceived = new double[records.size()];
+        double minTime = Double.MAX_VALUE;
+        double maxTime = 0d;
+        for (int i = 0; i < records.size(); i++) {
+            Payloads.Record record = records.get(i);
+            JSONObject[] json = Payloads.toJson(record);
+            topics[i] = record.topic;
+            keys[i] = json[0];
+            values[i] = json[1];
+            times[i] = values[i].getDouble("time");
+            timesReceived[i] = values[i].getDouble("timeReceived");
+            minTime = Math.min(minTime, times[i]);
+            maxTime = Math.max(maxTime, timesReceived[i]);
+        }
+        poolSpan = Math.ceil(maxTime - minTime) + 1d;
+
+        store = new TimeSeriesStore(TimeSeriesStore.capacityFor(DECAY_MS));
+        for (Payloads.TopicPayload topic : Payloads.TOPICS) {
+            store.addTopic(topic.name, topic.valueSchema);
+        }
+        nextPoll = 0;
+
+        nextBatch();
+        long start = now;
+        while (now - start < DECAY_MS) {
+            merge();
+            nextBatch();
+        }
+    }
+
+    /**
+     * Prepare the records of the next poll. Once all records of the pool were used, they are
+     * used again with their times shifted beyond those of the previous use.
+     */
+    @Setup(Level.Invocation)
+    public void nextBatch() {
+        int poll = nextPoll++;
+        double shift = (poll / POOL_POLLS) * poolSpan;
+        firstRecord = (poll % POOL_POLLS) * RECORDS_PER_POLL;
+        batch = store.createBatch();
+        double maxTimeReceived = 0d;
+        for (int i = firstRecord; i < firstRecord + RECORDS_PER_POLL; i++) {
+            values[i].put("time", times[i] + shift);
+            values[i].put("timeReceived", timesReceived[i] + shift);
+            maxTimeReceived = Math.max(maxTimeReceived, timesReceived[i] + shift);
+            batch.add(topics[i], keys[i], values[i]);
+        }
+        now = Math.round(maxTimeReceived * 1000d);
+    }
+
+    /** Collecting the samples of decoded records per topic and user. */
+    @Benchmark
+    public SampleBatch bucket() {
+        SampleBatch newBatch = store.createBatch();
+        for (int i = firstRecord; i < firstRecord + RECORDS_PER_POLL; i++) {
+            newBatch.add(topics[i], keys[i], values[i]);
+        }
+        return newBatch;
+    }
+
+    /** Merging the samples of a poll into the store and publishing the change. */
+    @Benchmark
+    public DataChange merge() {
+        store.removeReceivedBefore(now - DECAY_MS);
+        store.addAll(batch);
+        return store.publish();
+    }
+}
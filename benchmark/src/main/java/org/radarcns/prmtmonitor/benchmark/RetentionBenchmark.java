@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.benchmark;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.radarcns.prmtmonitor.data.TimeSeriesStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single poll on the time series store: adding a fixed number of samples and removing
+ * the samples that expired since the previous poll. As with uploads from devices, samples arrive
+ * in runs per user, and the users take turns. The store is first filled with a full retention
+ * window of samples, so each poll removes about as many samples as it adds. The cost per poll
+ * should not depend on the number of users or on the retention window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetentionBenchmark {
+    private static final String TOPIC = "android_empatica_e4_acceleration";
+    private static final int SAMPLES_PER_POLL = 500;
+    private static final int SAMPLES_PER_RUN = 50;
+    private static final long POLL_INTERVAL_MS = 1_000L;
+
+    @Param({"10", "100", "1000"})
+    public int users;
+
+    @Param({"60000", "600000"})
+    public long retentionMs;
+
+    private TimeSeriesStore store;
+    private String[] userIds;
+    private double[] values;
+    private long now;
+    private int nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Schema valueSchema = SchemaBuilder.record("EmpaticaE4Acceleration").fields()
+                .requiredDouble("time")
+                .requiredDouble("timeReceived")
+                .requiredFloat("x")
+                .requiredFloat("y")
+                .requiredFloat("z")
+                .endRecord();
+
+        store = new TimeSeriesStore(Integer.MAX_VALUE);
+        store.addTopic(TOPIC, valueSchema);
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = "user-" + i;
+        }
+        values = new double[] {0.1, 0.2, 0.3};
+        now = 0L;
+        nextUser = 0;
+
+        for (long polls = retentionMs / POLL_INTERVAL_MS; polls > 0; polls--) {
+            poll();
+        }
+    }
+
+    @Benchmark
+    public int poll() {
+        now += POLL_INTERVAL_MS;
+        long sampleInterval = POLL_INTERVAL_MS / SAMPLES_PER_POLL;
+        for (int i = 0; i < SAMPLES_PER_POLL; i++) {
+            long time = now - POLL_INTERVAL_MS + i * sampleInterval;
+            store.add(TOPIC, userIds[nextUser], "source", time, time, values);
+            if ((i + 1) % SAMPLES_PER_RUN == 0) {
+                nextUser = (nextUser + 1) % users;
+            }
+        }
+        return store.removeReceivedBefore(now - retentionMs);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.radarcns.prmtmonitor.mockproxy.Payloads;
+import org.radarcns.prmtmonitor.data.SampleBatch;
+import org.radarcns.prmtmonitor.data.TimeSeriesStore;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.Okio;
+
+/**
+ * Cost of decoding a single Kafka REST Proxy records response in the JSON embedded format, as
+ * {@link RestTopicReader} does for each poll. The response contains records of all topics of the
+ * monitor, from devices of 10 users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordsDecodeBenchmark {
+    private static final int NUM_USERS = 10;
+
+    @Param({"500", "5000"})
+    public int records;
+
+    private byte[] response;
+    private TimeSeriesStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = Payloads.jsonResponse(Payloads.records(records, NUM_USERS, 1L));
+        store = new TimeSeriesStore(TimeSeriesStore.capacityFor(300_000L));
+        for (Payloads.TopicPayload topic : Payloads.TOPICS) {
+            store.addTopic(topic.name, topic.valueSchema);
+        }
+    }
+
+    /** Decoding the records to JSONObjects. */
+    @Benchmark
+    public int decode(final Blackhole blackhole) throws IOException {
+        return decode(new RecordListener<JSONObject, JSONObject>() {
+            @Override
+            public void onRecord(String topic, int partition, long offset, JSONObject key, JSONObject value) {
+                blackhole.consume(key);
+                blackhole.consume(value);
+            }
+        });
+    }
+
+    /** Decoding the records and collecting their samples, as a single fetch does. */
+    @Benchmark
+    public SampleBatch decodeToBatch() throws IOException {
+        final SampleBatch batch = store.createBatch();
+        decode(new RecordListener<JSONObject, JSONObject>() {
+            @Override
+            public void onRecord(String topic, int partition, long offset, JSONObject key, JSONObject value) {
+                batch.add(topic, key, value);
+            }
+        });
+        return batch;
+    }
+
+    private int decode(RecordListener<JSONObject, JSONObject> listener) throws IOException {
+        CountingSource source = new CountingSource(new Buffer().write(response));
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, source);
+        return JsonRecordDecoder.decode(Okio.buffer(source), limiter, listener);
+    }
+}
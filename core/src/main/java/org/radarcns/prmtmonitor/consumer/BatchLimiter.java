@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Enforces the record limit of a single poll while a records response is being decoded. Once it
+ * is reached, the remaining records in the response are skipped and the first skipped offset per
+ * partition is kept, so the consumer can seek back to it and receive those records in the next
+ * poll. The byte limit is left to the REST proxy, which applies it to the record bytes rather than
+ * to the larger JSON response, so the response is never truncated on the byte count. This class is
+ * not thread-safe.
+ */
+final class BatchLimiter {
+    private final ReadLimits limits;
+    private final CountingSource source;
+    private final Map<TopicPartition, Long> skippedOffsets;
+    private int numRecords;
+    private boolean limitReached;
+
+    BatchLimiter(ReadLimits limits, CountingSource source) {
+        this.limits = limits;
+        this.source = source;
+        this.skippedOffsets = new HashMap<>();
+        this.numRecords = 0;
+        this.limitReached = false;
+    }
+
+    /**
+     * Decode a records response body within given limits, counting the bytes read from it.
+     * @param body response body, after any decompression
+     * @param limits limits of the read
+     * @param decoder decoder of the body
+     * @return limiter with the records that were read and skipped
+     * @throws IOException if the response could not be read or is malformed
+     * @throws JSONException if the response could not be decoded
+     */
+    static BatchLimiter decode(Source body, ReadLimits limits, RecordsDecoder decoder)
+            throws IOException, JSONException {
+        CountingSource countingSource = new CountingSource(body);
+        BatchLimiter limiter = new BatchLimiter(limits, countingSource);
+        decoder.decode(Okio.buffer(countingSource), limiter);
+        return limiter;
+    }
+
+    /**
+     * Whether the next record should be skipped because the record limit was reached. Call this
+     * before decoding a record.
+     */
+    boolean isLimitReached() {
+        if (!limitReached && numRecords > 0 && isFull()) {
+            limitReached = true;
+        }
+        return limitReached;
+    }
+
+    /** Register that a record was passed on. */
+    void didRead() {
+        numRecords++;
+    }
+
+    /** Register that a record was skipped, so its partition should be rewound to its offset. */
+    void didSkip(String topic, int partition, long offset) {
+        TopicPartition topicPartition = new TopicPartition(topic, partition);
+        if (!skippedOffsets.containsKey(topicPartition)) {
+            skippedOffsets.put(topicPartition, offset);
+        }
+    }
+
+    /** First skipped offset per partition. */
+    Map<TopicPartition, Long> getSkippedOffsets() {
+        return skippedOffsets;
+    }
+
+    /**
+     * Result of the poll. The limit counts as reached if the record limit was reached, or if the
+     * response was at least as large as the byte limit, so that the proxy probably stopped at its
+     * byte limit.
+     * @param wireBytes bytes received before decompression, or -1 if the response was not
+     *                  compressed
+     * @param requestNanos time until the response headers were received
+     * @param decodeNanos time to read and decode the response body
+     */
+    ReadResult result(long wireBytes, long requestNanos, long decodeNanos) {
+        long numBytes = source.getBytesRead();
+        boolean bytesReached = limits.getMaxBytes() > 0L && numBytes >= limits.getMaxBytes();
+        return new ReadResult(numRecords, numBytes, wireBytes >= 0L ? wireBytes : numBytes,
+                limitReached || isFull() || bytesReached, requestNanos, decodeNanos);
+    }
+
+    private boolean isFull() {
+        return limits.getMaxRecords() > 0 && numRecords >= limits.getMaxRecords();
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONException;
+import org.radarcns.prmtmonitor.data.Sample;
+import org.radarcns.prmtmonitor.data.SampleExtractor;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.topic.AvroTopic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Decodes a Kafka REST Proxy records response in the binary embedded format. Keys and values are
+ * base64 encoded Kafka messages, each consisting of a magic byte, a four byte schema ID and the
+ * Avro binary encoded record. Records are decoded with the schema they were written with to the
+ * classes of their AvroTopic. Like {@link JsonRecordDecoder}, records are passed on to a listener
+ * while the response is being read, and records beyond the limits of the poll are skipped without
+ * decoding them. Records can also be decoded directly to {@link Sample}s with a
+ * {@link SampleExtractor}, without creating any records at all. This class is not thread-safe.
+ */
+class BinaryRecordDecoder {
+    private static final byte MAGIC_BYTE = 0x0;
+    private static final int HEADER_LENGTH = 5;
+    private static final JsonReader.Options RECORD_FIELDS = JsonReader.Options.of(
+            "topic", "key", "value", "partition", "offset");
+
+    private final Map<String, TopicDecoder> topicDecoders;
+    private BinaryDecoder decoder;
+
+    BinaryRecordDecoder() {
+        topicDecoders = new HashMap<>();
+        decoder = null;
+    }
+
+    /**
+     * Decode a records response.
+     * @param source response body source
+     * @param topics subscribed topics, to decode the records to
+     * @param lookup lookup of the schemas the records were written with
+     * @param limiter limits of the poll
+     * @param listener listener to pass each record to
+     * @return number of records passed on to the listener
+     * @throws IOException if the response could not be read or is malformed, or if a schema
+     *                     could not be retrieved.
+     * @throws JSONException if the listener could not process a record
+     */
+    int decode(BufferedSource source, final Iterable<AvroTopic> topics, final SchemaLookup lookup,
+            BatchLimiter limiter, final RecordListener<SpecificRecord, SpecificRecord> listener)
+            throws IOException, JSONException {
+        return decode(source, limiter, (topic, partition, offset, key, value) -> {
+            TopicDecoder topicDecoder = topicDecoder(topic, topics);
+            listener.onRecord(topic, partition, offset,
+                    topicDecoder.decode(key, false, lookup),
+                    topicDecoder.decode(value, true, lookup));
+        });
+    }
+
+    /**
+     * Decode a records response directly to samples.
+     * @param source response body source
+     * @param topics subscribed topics
+     * @param schemas schemas of the samples per topic
+     * @param lookup lookup of the schemas the records were written with
+     * @param limiter limits of the poll
+     * @param listener listener to pass each sample to
+     * @return number of records passed on to the listener
+     * @throws IOException if the response could not be read or is malformed, if a record does
+     *                     not have the required fields, or if a schema could not be retrieved.
+     */
+    int decodeSamples(BufferedSource source, final Iterable<AvroTopic> topics,
+            final Map<String, SeriesSchema> schemas, final SchemaLookup lookup,
+            BatchLimiter limiter, final SampleListener listener) throws IOException, JSONException {
+        return decode(source, limiter, (topic, partition, offset, key, value) -> {
+            if (key == null || value == null) {
+                throw new IOException("Incomplete record at offset " + offset + " of " + topic + "-" + partition);
+            }
+            TopicDecoder topicDecoder = topicDecoder(topic, topics);
+            listener.onSample(topic, partition, offset,
+                    topicDecoder.extract(key, value, schemas, lookup));
+        });
+    }
+
+    private int decode(BufferedSource source, BatchLimiter limiter, PayloadHandler handler)
+            throws IOException, JSONException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            return decode(reader, limiter, handler);
+        } catch (JsonDataException ex) {
+            // a field of an unexpected type, which Moshi reports as a runtime exception
+            throw new IOException("Malformed records response at " + reader.getPath(), ex);
+        }
+    }
+
+    private int decode(JsonReader reader, BatchLimiter limiter, PayloadHandler handler)
+            throws IOException, JSONException {
+        int numRecords = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String topic = null;
+            ByteString key = null;
+            ByteString value = null;
+            int partition = -1;
+            long offset = -1L;
+            boolean skip = limiter.isLimitReached();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(RECORD_FIELDS)) {
+                    case 0:
+                        topic = reader.nextString();
+                        break;
+                    case 1:
+                        if (skip) {
+                            reader.skipValue();
+                        } else {
+                            key = readPayload(reader);
+                        }
+                        break;
+                    case 2:
+                        if (skip) {
+                            reader.skipValue();
+                        } else {
+                            value = readPayload(reader);
+                        }
+                        break;
+                    case 3:
+                        partition = reader.nextInt();
+                        break;
+                    case 4:
+                        offset = reader.nextLong();
+                        break;
+                    default:
+                        reader.nextName();
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (skip) {
+                limiter.didSkip(topic, partition, offset);
+                continue;
+            }
+
+            handler.onPayload(topic, partition, offset, key, value);
+            limiter.didRead();
+            numRecords++;
+        }
+        reader.endArray();
+
+        return numRecords;
+    }
+
+    private TopicDecoder topicDecoder(String topic, Iterable<AvroTopic> topics) throws IOException {
+        TopicDecoder topicDecoder = topicDecoders.get(topic);
+        if (topicDecoder == null) {
+            for (AvroTopic avroTopic : topics) {
+                if (avroTopic.getName().equals(topic)) {
+                    topicDecoder = new TopicDecoder(avroTopic);
+                    topicDecoders.put(topic, topicDecoder);
+                    break;
+                }
+            }
+            if (topicDecoder == null) {
+                throw new IOException("Received record from topic " + topic
+                        + " that was not subscribed to");
+            }
+        }
+        return topicDecoder;
+    }
+
+    /** Read a base64 encoded key or value, which may be null. */
+    private static ByteString readPayload(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String encoded = reader.nextString();
+        ByteString payload = ByteString.decodeBase64(encoded);
+        if (payload == null) {
+            throw new IOException("Record payload at " + reader.getPath() + " is not base64 encoded");
+        }
+        return payload;
+    }
+
+    /** Handles the encoded key and value of a record that is within the limits. */
+    private interface PayloadHandler {
+        void onPayload(String topic, int partition, long offset, ByteString key, ByteString value)
+                throws IOException, JSONException;
+    }
+
+    /** Decoders of a single topic, per schema ID. */
+    private final class TopicDecoder {
+        private final AvroTopic topic;
+        private final Map<Integer, SpecificDatumReader<SpecificRecord>> keyReaders;
+        private final Map<Integer, SpecificDatumReader<SpecificRecord>> valueReaders;
+        private int lastKeyId;
+        private SpecificDatumReader<SpecificRecord> lastKeyReader;
+        private int lastValueId;
+        private SpecificDatumReader<SpecificRecord> lastValueReader;
+        private final Map<Integer, SampleExtractor> keyExtractors;
+        private final Map<Integer, SampleExtractor> valueExtractors;
+        private int lastKeyExtractorId;
+        private SampleExtractor lastKeyExtractor;
+        private int lastValueExtractorId;
+        private SampleExtractor lastValueExtractor;
+        private Sample sample;
+
+        TopicDecoder(AvroTopic topic) {
+            this.topic = topic;
+            this.keyReaders = new HashMap<>();
+            this.valueReaders = new HashMap<>();
+            this.keyExtractors = new HashMap<>();
+            this.valueExtractors = new HashMap<>();
+            this.sample = null;
+        }
+
+        SpecificRecord decode(ByteString payload, boolean ofValue, SchemaLookup lookup)
+                throws IOException {
+            if (payload == null) {
+                return null;
+            }
+            int schemaId = schemaId(payload);
+            SpecificDatumReader<SpecificRecord> datumReader = datumReader(schemaId, ofValue, lookup);
+            return datumReader.read(null, binaryDecoder(payload));
+        }
+
+        Sample extract(ByteString key, ByteString value, Map<String, SeriesSchema> schemas,
+                SchemaLookup lookup) throws IOException {
+            if (sample == null) {
+                SeriesSchema schema = schemas.get(topic.getName());
+                if (schema == null) {
+                    throw new IOException("No sample schema for topic " + topic.getName());
+                }
+                sample = new Sample(schema);
+            }
+            extractor(schemaId(key), false, lookup).extract(binaryDecoder(key), sample);
+            extractor(schemaId(value), true, lookup).extract(binaryDecoder(value), sample);
+            return sample;
+        }
+
+        private int schemaId(ByteString payload) throws IOException {
+            if (payload.size() < HEADER_LENGTH || payload.getByte(0) != MAGIC_BYTE) {
+                throw new IOException("Record of topic " + topic.getName()
+                        + " does not start with a schema ID");
+            }
+            return (payload.getByte(1) & 0xFF) << 24
+                    | (payload.getByte(2) & 0xFF) << 16
+                    | (payload.getByte(3) & 0xFF) << 8
+                    | (payload.getByte(4) & 0xFF);
+        }
+
+        private BinaryDecoder binaryDecoder(ByteString payload) {
+            byte[] bytes = payload.toByteArray();
+            decoder = DecoderFactory.get().binaryDecoder(
+                    bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, decoder);
+            return decoder;
+        }
+
+        private SampleExtractor extractor(int schemaId, boolean ofValue, SchemaLookup lookup)
+                throws IOException {
+            if (ofValue && lastValueExtractor != null && lastValueExtractorId == schemaId) {
+                return lastValueExtractor;
+            } else if (!ofValue && lastKeyExtractor != null && lastKeyExtractorId == schemaId) {
+                return lastKeyExtractor;
+            }
+
+            Map<Integer, SampleExtractor> extractors = ofValue ? valueExtractors : keyExtractors;
+            SampleExtractor extractor = extractors.get(schemaId);
+            if (extractor == null) {
+                Schema writerSchema = lookup.getSchema(topic.getName(), ofValue, schemaId);
+                try {
+                    if (ofValue) {
+                        extractor = SampleExtractor.forValue(writerSchema, sample.getSchema());
+                    } else {
+                        extractor = SampleExtractor.forKey(writerSchema);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Cannot extract samples of topic " + topic.getName(), ex);
+                }
+                extractors.put(schemaId, extractor);
+            }
+
+            if (ofValue) {
+                lastValueExtractorId = schemaId;
+                lastValueExtractor = extractor;
+            } else {
+                lastKeyExtractorId = schemaId;
+                lastKeyExtractor = extractor;
+            }
+            return extractor;
+        }
+
+        private SpecificDatumReader<SpecificRecord> datumReader(int schemaId, boolean ofValue,
+                SchemaLookup lookup) throws IOException {
+            if (ofValue && lastValueReader != null && lastValueId == schemaId) {
+                return lastValueReader;
+            } else if (!ofValue && lastKeyReader != null && lastKeyId == schemaId) {
+                return lastKeyReader;
+            }
+
+            Map<Integer, SpecificDatumReader<SpecificRecord>> readers = ofValue ? valueReaders : keyReaders;
+            SpecificDatumReader<SpecificRecord> datumReader = readers.get(schemaId);
+            if (datumReader == null) {
+                Schema writerSchema = lookup.getSchema(topic.getName(), ofValue, schemaId);
+                Schema readerSchema = ofValue ? topic.getValueSchema() : topic.getKeySchema();
+                datumReader = new SpecificDatumReader<>(writerSchema, readerSchema);
+                readers.put(schemaId, datumReader);
+            }
+
+            if (ofValue) {
+                lastValueId = schemaId;
+                lastValueReader = datumReader;
+            } else {
+                lastKeyId = schemaId;
+                lastKeyReader = datumReader;
+            }
+            return datumReader;
+        }
+    }
+}
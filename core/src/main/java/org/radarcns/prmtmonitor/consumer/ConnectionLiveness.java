@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+/**
+ * Times of the last successful and failed requests to the server. Readers update it with every
+ * request they make, so that a connection checker can treat successful requests as heartbeats
+ * instead of sending its own. Updates and reads do not lock, so it can be updated from the hot
+ * path of every consumer instance.
+ */
+public final class ConnectionLiveness {
+    private volatile long lastSuccess = -1L;
+    private volatile long lastFailure = -1L;
+
+    /** Register that the server responded to a request. */
+    public void didSucceed() {
+        lastSuccess = System.currentTimeMillis();
+    }
+
+    /** Register that a request to the server failed. */
+    public void didFail() {
+        lastFailure = System.currentTimeMillis();
+    }
+
+    /** Time of the last successful request in milliseconds, or -1 if there was none. */
+    public long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    /** Time of the last failed request in milliseconds, or -1 if there was none. */
+    public long getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Whether a request succeeded within given period before given time, and no request failed
+     * after it.
+     */
+    public boolean isAlive(long period, long now) {
+        long success = lastSuccess;
+        return success >= 0L && now - success < period && lastFailure < success;
+    }
+}
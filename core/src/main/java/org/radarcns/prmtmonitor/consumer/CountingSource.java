@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/** Source that counts the number of bytes read from it. */
+class CountingSource extends ForwardingSource {
+    private long bytesRead;
+
+    CountingSource(Source delegate) {
+        super(delegate);
+        bytesRead = 0L;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long numRead = super.read(sink, byteCount);
+        if (numRead != -1L) {
+            bytesRead += numRead;
+        }
+        return numRead;
+    }
+
+    /** Number of bytes read so far. */
+    long getBytesRead() {
+        return bytesRead;
+    }
+}
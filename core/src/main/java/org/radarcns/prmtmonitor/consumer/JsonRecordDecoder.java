@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+import okio.BufferedSource;
+
+/**
+ * Decodes a Kafka REST Proxy records response directly from the response stream. Each record is
+ * passed on to a {@link RecordListener} as soon as it is parsed, so neither the response body as a
+ * whole nor the full array of records is ever held in memory. Records beyond the limits of the
+ * poll are skipped without decoding their keys and values.
+ */
+final class JsonRecordDecoder {
+    private static final JsonReader.Options RECORD_FIELDS = JsonReader.Options.of(
+            "topic", "key", "value", "partition", "offset");
+
+    private JsonRecordDecoder() {
+        // utility class
+    }
+
+    /**
+     * Decode a records response.
+     * @param source response body source
+     * @param limiter limits of the poll
+     * @param listener listener to pass each record to
+     * @return number of records passed on to the listener
+     * @throws IOException if the response could not be read or is malformed
+     * @throws JSONException if the listener could not process a record
+     */
+    static int decode(BufferedSource source, BatchLimiter limiter,
+            RecordListener<JSONObject, JSONObject> listener) throws IOException, JSONException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            return decode(reader, limiter, listener);
+        } catch (JsonDataException ex) {
+            // a field of an unexpected type, which Moshi reports as a runtime exception
+            throw new IOException("Malformed records response at " + reader.getPath(), ex);
+        }
+    }
+
+    private static int decode(JsonReader reader, BatchLimiter limiter,
+            RecordListener<JSONObject, JSONObject> listener) throws IOException, JSONException {
+        int numRecords = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String topic = null;
+            JSONObject key = null;
+            JSONObject value = null;
+            int partition = -1;
+            long offset = -1L;
+            boolean skip = limiter.isLimitReached();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(RECORD_FIELDS)) {
+                    case 0:
+                        topic = reader.nextString();
+                        break;
+                    case 1:
+                        if (skip) {
+                            reader.skipValue();
+                        } else {
+                            key = readRecord(reader);
+                        }
+                        break;
+                    case 2:
+                        if (skip) {
+                            reader.skipValue();
+                        } else {
+                            value = readRecord(reader);
+                        }
+                        break;
+                    case 3:
+                        partition = reader.nextInt();
+                        break;
+                    case 4:
+                        offset = reader.nextLong();
+                        break;
+                    default:
+                        reader.nextName();
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (skip) {
+                limiter.didSkip(topic, partition, offset);
+            } else {
+                listener.onRecord(topic, partition, offset, key, value);
+                limiter.didRead();
+                numRecords++;
+            }
+        }
+        reader.endArray();
+
+        return numRecords;
+    }
+
+    /** Read a key or value record, which may be null. */
+    private static JSONObject readRecord(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return readObject(reader);
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected JSON token " + reader.peek()
+                        + " at " + reader.getPath());
+        }
+    }
+
+    /** Parse a number the same way org.json does, keeping integers integral. */
+    private static Number parseNumber(String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1
+                && number.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException ex) {
+                // fall back to a double
+            }
+        }
+        return Double.valueOf(number);
+    }
+}
@@ -39,4 +39,16 @@ public interface KafkaReader extends Closeable {
      * Whether the reader is connected to the Kafka system.
      */
     boolean isConnected() throws AuthenticationException;
+
+    /**
+     * Liveness of the connection, which all requests of this reader and its topic readers
+     * update.
+     */
+    ConnectionLiveness getLiveness();
+
+    /**
+     * Whether readers consume records in binary Avro format. If so, records should be read with
+     * {@link KafkaTopicReader#readBinary(RecordListener)}.
+     */
+    boolean hasBinaryContent();
 }
@@ -0,0 +1,195 @@
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.producer.AuthenticationException;
+import org.radarcns.topic.AvroTopic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface KafkaTopicReader extends Closeable {
+    /**
+     * Get a full list of available Kafka topics.
+     *
+     * @return JSONArray of topics available on the Kafka server
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     * @throws JSONException if the read response could not be decoded to a JSONArray
+     */
+    JSONArray topics() throws IOException, JSONException;
+
+
+    /**
+     * Get the partitions of a Kafka topic.
+     *
+     * @param topic topic name
+     * @return partition numbers of the topic
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     * @throws JSONException if the read response could not be decoded to a JSONArray
+     */
+    List<Integer> partitions(String topic) throws IOException, JSONException;
+
+
+    /**
+     * Create a consumer in given group with given instance id.
+     *
+     * @param group consumer group id
+     * @param instance consumer instance id
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void consumer(String group, String instance) throws IOException;
+
+
+    /**
+     * Subscribe the consumer to a Kafka topic.
+     *
+     * @param topics set of avro topics to subscribe to
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void subscribe(Set<AvroTopic> topics) throws IOException;
+
+
+    /**
+     * Assign specific partitions to the consumer.
+     *
+     * @param topics set of avro topics to assign partitions from
+     * @param partitions set of partitions to assign
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void assignPartitions(Set<AvroTopic> topics, Set<Integer> partitions) throws IOException;
+
+
+    /**
+     * Assign specific topic partitions to the consumer. This replaces any previous assignment.
+     *
+     * @param topics set of avro topics that the partitions belong to
+     * @param partitions topic partitions to assign
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void assignPartitions(Set<AvroTopic> topics, Collection<TopicPartition> partitions) throws IOException;
+
+
+    /**
+     * Seek to the end of the given topic/partition.
+     *
+     * @param topics set of avro topics
+     * @param partitions set of partitions
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void seekEnd(Set<AvroTopic> topics, Set<Integer> partitions) throws IOException;
+
+
+    /**
+     * Seek to the end of the given topic partitions.
+     *
+     * @param partitions topic partitions
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void seekEnd(Collection<TopicPartition> partitions) throws IOException;
+
+
+    /**
+     * Seek to given offsets of topic partitions.
+     *
+     * @param offsets offset of the next record to consume, per topic partition
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void seek(Map<TopicPartition, Long> offsets) throws IOException;
+
+
+    /**
+     * Consume messages from the subscribed Kafka topics.
+     *
+     * @return A JSONArray of the samples consumed
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     * @throws JSONException if the read response could not be decoded to a JSONArray
+     */
+    JSONArray read() throws IOException, JSONException;
+
+
+    /**
+     * Consume messages from the subscribed Kafka topics, decoding them one at a time while the
+     * response is being received. Neither the full response nor the full list of samples is kept
+     * in memory. Records beyond the given limits are not consumed, and will be returned by the
+     * next read instead.
+     *
+     * @param limits limits on the number of records and bytes to consume
+     * @param listener listener to pass each consumed record to
+     * @return the number of records and bytes consumed
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message or the response was malformed
+     * @throws JSONException if the listener could not process a record
+     */
+    ReadResult read(ReadLimits limits, RecordListener<JSONObject, JSONObject> listener) throws IOException, JSONException;
+
+
+    /**
+     * Consume binary Avro messages from the subscribed Kafka topics. Each record is decoded with
+     * the schema it was written with, as retrieved from the schema registry, to the key and value
+     * classes of its AvroTopic. Records are decoded one at a time while the response is being
+     * received. Records beyond the given limits are not consumed, and will be returned by the
+     * next read instead.
+     *
+     * @param limits limits on the number of records and bytes to consume
+     * @param listener listener to pass each consumed record to
+     * @return the number of records and bytes consumed
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message, the response was malformed or
+     *                     a schema could not be retrieved
+     * @throws JSONException if the listener could not process a record
+     */
+    ReadResult readBinary(ReadLimits limits, RecordListener<SpecificRecord, SpecificRecord> listener) throws IOException, JSONException;
+
+
+    /**
+     * Consume binary Avro messages from the subscribed Kafka topics, extracting samples directly
+     * from the binary data. No records are created. The extractors are compiled once per
+     * schema that the records were written with.
+     *
+     * @param limits limits on the number of records and bytes to consume
+     * @param schemas fields to extract, per topic
+     * @param listener listener to pass each extracted sample to
+     * @return the number of records and bytes consumed
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message, the response was malformed,
+     *                     a record did not have the required fields or a schema could not be
+     *                     retrieved
+     * @throws JSONException if the response could not be decoded
+     */
+    ReadResult readSamples(ReadLimits limits, Map<String, SeriesSchema> schemas, SampleListener listener) throws IOException, JSONException;
+
+
+    /**
+     * Closes the current consumer.
+     *
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void close() throws IOException;
+    /**
+     * Closes a specific consumer.
+     *
+     * @param group consumer group id
+     * @param instance consumer instance id
+     * @throws AuthenticationException if the client failed to authenticate itself
+     * @throws IOException if the client could not send a message
+     */
+    void close(String group, String instance) throws IOException;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+/**
+ * Limits on a single consumer poll. The byte limit and timeout are passed on to the Kafka REST
+ * proxy, and the record limit is enforced while the response is being decoded. Limits that are
+ * zero or negative are not applied.
+ */
+public final class ReadLimits {
+    /** No limits at all, leaving everything up to the REST proxy defaults. */
+    public static final ReadLimits UNLIMITED = new ReadLimits(0, 0L, 0L);
+
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long timeoutMs;
+
+    /**
+     * Poll limits.
+     * @param maxRecords maximum number of records to pass on per poll
+     * @param maxBytes maximum number of record bytes per poll, applied by the REST proxy
+     * @param timeoutMs maximum time for the REST proxy to wait for records, in milliseconds
+     */
+    public ReadLimits(int maxRecords, long maxBytes, long timeoutMs) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadLimits{maxRecords=" + maxRecords
+                + ", maxBytes=" + maxBytes
+                + ", timeoutMs=" + timeoutMs + '}';
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+/** Result of a single consumer poll. */
+public final class ReadResult {
+    /** Result of a poll that did not return any data. */
+    public static final ReadResult EMPTY = new ReadResult(0, 0L, 0L, false, 0L, 0L);
+
+    private final int numRecords;
+    private final long numBytes;
+    private final long numWireBytes;
+    private final boolean limitReached;
+    private final long requestNanos;
+    private final long decodeNanos;
+
+    ReadResult(int numRecords, long numBytes, long numWireBytes, boolean limitReached,
+            long requestNanos, long decodeNanos) {
+        this.numRecords = numRecords;
+        this.numBytes = numBytes;
+        this.numWireBytes = numWireBytes;
+        this.limitReached = limitReached;
+        this.requestNanos = requestNanos;
+        this.decodeNanos = decodeNanos;
+    }
+
+    /** Number of records that were passed on to the listener. */
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /** Number of response bytes that were read, after decompression. */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * Number of response bytes that were received, before decompression. This equals
+     * {@link #getNumBytes()} if the response was not compressed.
+     */
+    public long getNumWireBytes() {
+        return numWireBytes;
+    }
+
+    /**
+     * Whether the record or byte limit of the poll was reached. If so, more data is probably
+     * available on the server.
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    /**
+     * Time until the response headers were received, in nanoseconds, or zero if no request was
+     * made.
+     */
+    public long getRequestNanos() {
+        return requestNanos;
+    }
+
+    /** Time to read and decode the response body, in nanoseconds. */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.json.JSONException;
+
+/**
+ * Receives records one by one while a consumer response is being decoded.
+ *
+ * @param <K> record key type
+ * @param <V> record value type
+ */
+public interface RecordListener<K, V> {
+    /**
+     * A single record was decoded.
+     *
+     * @param topic topic the record was read from
+     * @param partition partition the record was read from, or -1 if unknown
+     * @param offset offset of the record in its partition, or -1 if unknown
+     * @param key record key, may be null
+     * @param value record value, may be null
+     * @throws JSONException if the record does not contain the expected data
+     */
+    void onRecord(String topic, int partition, long offset, K key, V value) throws JSONException;
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Captures the responses of the Kafka REST Proxy to a file, to replay them later with a
+ * {@link ReplayReader}. A capture is passed to {@link RestReader.Builder#capture(RecordsCapture)},
+ * after which its readers tee every records response body, as received, into the capture. The
+ * topic list, topic partitions and the schemas of binary records are captured as well, so that
+ * replaying needs no network at all.
+ *
+ * <p>A capture file starts with a four byte magic number, a version byte and a byte that is 1 if
+ * records are in the binary embedded format and 0 if they are in the Avro JSON format. It is
+ * followed by frames of a type byte, a four byte payload length, the eight byte capture time in
+ * milliseconds and the payload. Strings in payloads are UTF-8 bytes preceded by their four byte
+ * length, and all numbers are big-endian. The payloads are
+ * <ul>
+ *     <li>{@code T}: the topics response;</li>
+ *     <li>{@code P}: a topic, the number of partitions and each partition number;</li>
+ *     <li>{@code S}: a topic, a byte that is 1 for value schemas, the schema ID and the schema;</li>
+ *     <li>{@code R}: a consumer instance and the body of a records response it received.</li>
+ * </ul>
+ *
+ * Capturing stops at the first write failure, so that for example a full disk does not interrupt
+ * the monitor. This class is thread-safe.
+ */
+public class RecordsCapture implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(RecordsCapture.class);
+
+    static final int MAGIC = 0x50524d43;
+    static final byte VERSION = 1;
+    static final int HEADER_LENGTH = 6;
+    static final int FRAME_HEADER_LENGTH = 13;
+    static final byte FRAME_TOPICS = 'T';
+    static final byte FRAME_PARTITIONS = 'P';
+    static final byte FRAME_SCHEMA = 'S';
+    static final byte FRAME_RECORDS = 'R';
+
+    private final File file;
+    private final boolean binary;
+    private final BufferedSink sink;
+    private final Set<String> capturedSchemas;
+    private boolean failed;
+
+    /**
+     * Create a new capture, replacing any existing file.
+     * @param file file to capture to
+     * @param binary whether the captured records are in the binary embedded format
+     * @throws IOException if the file cannot be created
+     */
+    public RecordsCapture(File file, boolean binary) throws IOException {
+        this.file = file;
+        this.binary = binary;
+        this.capturedSchemas = new HashSet<>();
+        this.failed = false;
+        this.sink = Okio.buffer(Okio.sink(file));
+        sink.writeInt(MAGIC)
+                .writeByte(VERSION)
+                .writeByte(binary ? 1 : 0)
+                .flush();
+        logger.info("Capturing records responses to {}", file);
+    }
+
+    /** Whether the captured records are in the binary embedded format. */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /** Capture a topics response. */
+    synchronized void writeTopics(String topics) {
+        Buffer payload = new Buffer();
+        writeString(payload, topics);
+        writeFrame(FRAME_TOPICS, payload);
+    }
+
+    /** Capture the partitions of a topic. */
+    synchronized void writePartitions(String topic, List<Integer> partitions) {
+        Buffer payload = new Buffer();
+        writeString(payload, topic);
+        payload.writeInt(partitions.size());
+        for (Integer partition : partitions) {
+            payload.writeInt(partition);
+        }
+        writeFrame(FRAME_PARTITIONS, payload);
+    }
+
+    /** Capture a schema that records were written with, if it was not captured before. */
+    synchronized void writeSchema(String topic, boolean ofValue, int id, Schema schema) {
+        if (!capturedSchemas.add(topic + (ofValue ? "-value-" : "-key-") + id)) {
+            return;
+        }
+        Buffer payload = new Buffer();
+        writeString(payload, topic);
+        payload.writeByte(ofValue ? 1 : 0);
+        payload.writeInt(id);
+        writeString(payload, schema.toString());
+        writeFrame(FRAME_SCHEMA, payload);
+    }
+
+    /** Capture a records response body. The body buffer is consumed. */
+    synchronized void writeRecords(String instance, Buffer body) {
+        Buffer payload = new Buffer();
+        writeString(payload, instance);
+        payload.write(body, body.size());
+        writeFrame(FRAME_RECORDS, payload);
+    }
+
+    private void writeFrame(byte type, Buffer payload) {
+        if (failed) {
+            return;
+        }
+        try {
+            sink.writeByte(type)
+                    .writeInt((int) payload.size())
+                    .writeLong(System.currentTimeMillis())
+                    .writeAll(payload);
+            sink.flush();
+        } catch (IOException ex) {
+            failed = true;
+            logger.error("Failed to capture to {}, no longer capturing", file, ex);
+        }
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.writeInt(bytes.length);
+        buffer.write(bytes);
+    }
+
+    /**
+     * Wrap a source so that all bytes read from it are also copied to given buffer.
+     */
+    static Source tee(Source source, final Buffer copy) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long numRead = super.read(sink, byteCount);
+                if (numRead > 0L) {
+                    sink.copyTo(copy, sink.size() - numRead, numRead);
+                }
+                return numRead;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        failed = true;
+        sink.close();
+    }
+}
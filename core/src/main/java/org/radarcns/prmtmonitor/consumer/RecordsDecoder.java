@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+import okio.BufferedSource;
+
+/**
+ * Decodes the body of a records response, received from the REST proxy or replayed from a
+ * capture, passing on the records within the limits of a {@link BatchLimiter}.
+ */
+interface RecordsDecoder {
+    /**
+     * Decode a records response body.
+     * @param source response body
+     * @param limiter limits of the read
+     * @return number of records passed on
+     * @throws IOException if the response could not be read or is malformed
+     * @throws JSONException if the response could not be decoded
+     */
+    int decode(BufferedSource source, BatchLimiter limiter) throws IOException, JSONException;
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.Schema;
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Reader that replays the records responses of a {@link RecordsCapture} instead of contacting a
+ * Kafka REST Proxy. The capture file is memory-mapped, and response bodies are decoded straight
+ * from the mapped file, so that replay speed is only limited by decoding.
+ *
+ * <p>Each consumer instance replays the responses that the consumer instance with the same name
+ * received, in the order they were received. Seeking does not change what is replayed, so polls
+ * are only reproduced exactly with the same read limits as when the responses were captured. If
+ * a replay speed is given, responses are not replayed before their capture time, relative to the
+ * first response and divided by the speed. Otherwise, they are replayed as fast as they are read.
+ * This class is thread-safe.
+ */
+public class ReplayReader implements KafkaReader {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayReader.class);
+
+    private final File file;
+    private final MappedByteBuffer data;
+    private final boolean binary;
+    private final String topics;
+    private final Map<String, List<Integer>> partitions;
+    private final Map<String, Schema> schemas;
+    private final Map<String, List<Frame>> frames;
+    private final Map<String, Integer> cursors;
+    private final double speed;
+    private final long firstFrameTime;
+    private final ConnectionLiveness liveness;
+    private long replayStartTime;
+
+    /**
+     * Replay a capture file.
+     * @param file capture file written by a {@link RecordsCapture}
+     * @param speed speed relative to the capture time, or zero to replay as fast as possible
+     * @throws IOException if the file cannot be read or is not a valid capture
+     */
+    public ReplayReader(File file, double speed) throws IOException {
+        this.file = file;
+        this.speed = speed;
+        this.liveness = new ConnectionLiveness();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Capture " + file + " is too large to map");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+
+        if (data.limit() < RecordsCapture.HEADER_LENGTH
+                || data.getInt(0) != RecordsCapture.MAGIC) {
+            throw new IOException("File " + file + " is not a records capture");
+        }
+        if (data.get(4) != RecordsCapture.VERSION) {
+            throw new IOException("Unsupported capture version " + data.get(4) + " of " + file);
+        }
+        binary = data.get(5) != 0;
+
+        String capturedTopics = null;
+        partitions = new HashMap<>();
+        schemas = new HashMap<>();
+        frames = new HashMap<>();
+        cursors = new HashMap<>();
+        long firstTime = -1L;
+        int numFrames = 0;
+
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(RecordsCapture.HEADER_LENGTH);
+        while (buffer.remaining() >= RecordsCapture.FRAME_HEADER_LENGTH) {
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            long time = buffer.getLong();
+            if (length < 0 || length > buffer.remaining()) {
+                // the capture was interrupted while writing the last frame
+                logger.warn("Ignoring truncated frame at the end of capture {}", file);
+                break;
+            }
+            int end = buffer.position() + length;
+            switch (type) {
+                case RecordsCapture.FRAME_TOPICS:
+                    capturedTopics = readString(buffer);
+                    break;
+                case RecordsCapture.FRAME_PARTITIONS: {
+                    String topic = readString(buffer);
+                    int numPartitions = buffer.getInt();
+                    List<Integer> topicPartitions = new ArrayList<>(numPartitions);
+                    for (int i = 0; i < numPartitions; i++) {
+                        topicPartitions.add(buffer.getInt());
+                    }
+                    partitions.put(topic, topicPartitions);
+                    break;
+                }
+                case RecordsCapture.FRAME_SCHEMA: {
+                    String topic = readString(buffer);
+                    boolean ofValue = buffer.get() != 0;
+                    int id = buffer.getInt();
+                    schemas.put(schemaKey(topic, ofValue, id),
+                            new Schema.Parser().parse(readString(buffer)));
+                    break;
+                }
+                case RecordsCapture.FRAME_RECORDS: {
+                    String instance = readString(buffer);
+                    List<Frame> instanceFrames = frames.get(instance);
+                    if (instanceFrames == null) {
+                        instanceFrames = new ArrayList<>();
+                        frames.put(instance, instanceFrames);
+                    }
+                    instanceFrames.add(new Frame(buffer.position(), end - buffer.position(), time));
+                    if (firstTime == -1L) {
+                        firstTime = time;
+                    }
+                    numFrames++;
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown frame type " + type + " in capture " + file);
+            }
+            buffer.position(end);
+        }
+
+        topics = capturedTopics != null
+                ? capturedTopics : new JSONArray(partitions.keySet()).toString();
+        firstFrameTime = firstTime;
+        replayStartTime = -1L;
+        logger.info("Replaying {} records responses of consumer instances {} from {}",
+                numFrames, frames.keySet(), file);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String schemaKey(String topic, boolean ofValue, int id) {
+        return topic + (ofValue ? "-value-" : "-key-") + id;
+    }
+
+    @Override
+    public KafkaTopicReader reader() {
+        return new ReplayTopicReader(this);
+    }
+
+    /** A capture is always available. */
+    @Override
+    public boolean resetConnection() {
+        return true;
+    }
+
+    /** A capture is always available. */
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public ConnectionLiveness getLiveness() {
+        return liveness;
+    }
+
+    @Override
+    public boolean hasBinaryContent() {
+        return binary;
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released when the buffer is garbage collected
+    }
+
+    /** Captured topics response. */
+    String getTopics() {
+        return topics;
+    }
+
+    /** Captured partitions of a topic. */
+    List<Integer> getPartitions(String topic) {
+        List<Integer> topicPartitions = partitions.get(topic);
+        if (topicPartitions == null) {
+            logger.warn("Partitions of topic {} were not captured", topic);
+            return Collections.emptyList();
+        }
+        return topicPartitions;
+    }
+
+    /** Lookup of the captured schemas. */
+    SchemaLookup getSchemaLookup() {
+        return new SchemaLookup() {
+            @Override
+            public Schema getSchema(String topic, boolean ofValue, int id) throws IOException {
+                Schema schema = schemas.get(schemaKey(topic, ofValue, id));
+                if (schema == null) {
+                    throw new IOException("Schema " + id + " of topic " + topic
+                            + " was not captured");
+                }
+                return schema;
+            }
+        };
+    }
+
+    /**
+     * Source of the next records response body of a consumer instance. If a replay speed is set,
+     * this waits until it is time to replay the response.
+     * @return body source, or null if all responses of the consumer instance were replayed.
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    Source nextRecords(String instance) throws InterruptedIOException {
+        Frame frame;
+        long delay;
+        synchronized (this) {
+            List<Frame> instanceFrames = frames.get(instance);
+            Integer cursor = cursors.get(instance);
+            int index = cursor == null ? 0 : cursor;
+            if (instanceFrames == null || index >= instanceFrames.size()) {
+                if (instanceFrames != null && index == instanceFrames.size()) {
+                    logger.info("Replayed all records of consumer instance {} from {}",
+                            instance, file);
+                    cursors.put(instance, index + 1);
+                }
+                return null;
+            }
+            cursors.put(instance, index + 1);
+            frame = instanceFrames.get(index);
+
+            long now = System.currentTimeMillis();
+            if (replayStartTime == -1L) {
+                replayStartTime = now;
+            }
+            delay = speed > 0d
+                    ? replayStartTime + (long) ((frame.time - firstFrameTime) / speed) - now
+                    : 0L;
+        }
+        if (delay > 0L) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying");
+            }
+        }
+        ByteBuffer body = data.duplicate();
+        body.position(frame.position);
+        body.limit(frame.position + frame.length);
+        return new ByteBufferSource(body);
+    }
+
+    /** Location of a captured records response body in the capture. */
+    private static final class Frame {
+        final int position;
+        final int length;
+        final long time;
+
+        Frame(int position, int length, long time) {
+            this.position = position;
+            this.length = length;
+            this.time = time;
+        }
+    }
+
+    /** Source that reads from a byte buffer, without copying it to the heap first. */
+    private static final class ByteBufferSource implements Source {
+        private final ByteBuffer buffer;
+
+        ByteBufferSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1L;
+            }
+            int numRead = (int) Math.min(buffer.remaining(), byteCount);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + numRead);
+            sink.write(buffer);
+            buffer.limit(limit);
+            return numRead;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.topic.AvroTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Topic reader of a {@link ReplayReader}. Topic and partition requests are answered from the
+ * capture, and each read replays the next records response of the consumer instance. Assignments
+ * only determine which topics records are decoded to; seeks are ignored.
+ */
+class ReplayTopicReader implements KafkaTopicReader {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayTopicReader.class);
+
+    private final ReplayReader replay;
+    private final Set<AvroTopic> topics;
+    private final BinaryRecordDecoder binaryDecoder;
+    private String consumerInstance;
+
+    ReplayTopicReader(ReplayReader replay) {
+        this.replay = replay;
+        this.topics = new HashSet<>();
+        this.binaryDecoder = new BinaryRecordDecoder();
+        this.consumerInstance = null;
+    }
+
+    @Override
+    public JSONArray topics() throws JSONException {
+        return new JSONArray(replay.getTopics());
+    }
+
+    @Override
+    public List<Integer> partitions(String topic) {
+        return replay.getPartitions(topic);
+    }
+
+    @Override
+    public void consumer(String group, String instance) {
+        this.consumerInstance = instance;
+    }
+
+    @Override
+    public void subscribe(Set<AvroTopic> topics) {
+        this.topics.addAll(topics);
+    }
+
+    @Override
+    public void assignPartitions(Set<AvroTopic> topics, Set<Integer> partitions) {
+        this.topics.clear();
+        this.topics.addAll(topics);
+    }
+
+    @Override
+    public void assignPartitions(Set<AvroTopic> topics, Collection<TopicPartition> partitions) {
+        this.topics.clear();
+        this.topics.addAll(topics);
+    }
+
+    @Override
+    public void seekEnd(Set<AvroTopic> topics, Set<Integer> partitions) {
+        logger.debug("Ignoring seek to end in replay");
+    }
+
+    @Override
+    public void seekEnd(Collection<TopicPartition> partitions) {
+        logger.debug("Ignoring seek to end in replay");
+    }
+
+    @Override
+    public void seek(Map<TopicPartition, Long> offsets) {
+        logger.debug("Ignoring seek to {} in replay", offsets);
+    }
+
+    @Override
+    public JSONArray read() throws IOException, JSONException {
+        checkBinary(false);
+        Source source = replay.nextRecords(consumerInstance);
+        if (source == null) {
+            return new JSONArray();
+        }
+        return new JSONArray(Okio.buffer(source).readUtf8());
+    }
+
+    @Override
+    public ReadResult read(ReadLimits limits, final RecordListener<JSONObject, JSONObject> listener) throws IOException, JSONException {
+        checkBinary(false);
+        return replay(limits, (source, limiter) -> JsonRecordDecoder.decode(source, limiter, listener));
+    }
+
+    @Override
+    public ReadResult readBinary(ReadLimits limits, final RecordListener<SpecificRecord, SpecificRecord> listener) throws IOException, JSONException {
+        checkBinary(true);
+        final SchemaLookup lookup = replay.getSchemaLookup();
+        return replay(limits,
+                (source, limiter) -> binaryDecoder.decode(source, topics, lookup, limiter, listener));
+    }
+
+    @Override
+    public ReadResult readSamples(ReadLimits limits, final Map<String, SeriesSchema> schemas, final SampleListener listener) throws IOException, JSONException {
+        checkBinary(true);
+        final SchemaLookup lookup = replay.getSchemaLookup();
+        return replay(limits,
+                (source, limiter) -> binaryDecoder.decodeSamples(source, topics, schemas, lookup, limiter, listener));
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+
+    @Override
+    public void close(String group, String instance) {
+        // nothing to close
+    }
+
+    private void checkBinary(boolean binary) throws IOException {
+        if (replay.hasBinaryContent() != binary) {
+            throw new IOException("Captured records are " + (binary ? "not " : "")
+                    + "in the binary format");
+        }
+    }
+
+    /**
+     * Decode the next records response of the consumer instance. Records beyond the limits are
+     * skipped but not replayed again.
+     */
+    private ReadResult replay(ReadLimits limits, RecordsDecoder decoder) throws IOException, JSONException {
+        if (topics.isEmpty()) {
+            logger.warn("Not subscribed .");
+            return ReadResult.EMPTY;
+        }
+        Source source = replay.nextRecords(consumerInstance);
+        if (source == null) {
+            return ReadResult.EMPTY;
+        }
+        long decodeStart = System.nanoTime();
+        BatchLimiter limiter = BatchLimiter.decode(source, limits, decoder);
+        long decodeNanos = System.nanoTime() - decodeStart;
+        if (!limiter.getSkippedOffsets().isEmpty()) {
+            logger.debug("Replay skipped records from offsets {}", limiter.getSkippedOffsets());
+        }
+        return limiter.result(-1L, 0L, decodeNanos);
+    }
+}
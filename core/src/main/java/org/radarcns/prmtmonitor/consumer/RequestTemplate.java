@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.radarcns.producer.rest.RestClient;
+
+import java.net.MalformedURLException;
+import java.util.Objects;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Prebuilt URLs and headers for the requests of a single consumer instance. A template is built
+ * from a RestReader request context and stays valid until the context version changes, so
+ * repeated requests do not need to concatenate URLs, build headers or lock the reader.
+ */
+final class RequestTemplate {
+    final RestReader.RequestContext context;
+    final RestReader.RequestProperties properties;
+    final RestClient client;
+    private final String group;
+    private final String instance;
+
+    private final Headers headers;
+    private final Headers postHeaders;
+    private final Headers recordsHeaders;
+    private final HttpUrl groupUrl;
+    private final HttpUrl instanceUrl;
+    private final HttpUrl subscriptionUrl;
+    private final HttpUrl assignmentsUrl;
+    private final HttpUrl positionsUrl;
+    private final HttpUrl positionsEndUrl;
+    private final HttpUrl recordsUrl;
+
+    private Request recordsRequest;
+    private long recordsTimeoutMs;
+    private long recordsMaxBytes;
+
+    RequestTemplate(RestReader.RequestContext context, String group, String instance)
+            throws MalformedURLException {
+        this.context = context;
+        this.properties = context.properties;
+        this.client = context.client;
+        this.group = group;
+        this.instance = instance;
+
+        headers = properties.headers.newBuilder()
+                .set("Accept", properties.acceptType)
+                .build();
+        postHeaders = headers.newBuilder()
+                .set("Content-Type", properties.contentType.toString())
+                .build();
+        // Setting Accept-Encoding disables the transparent decompression of OkHttp, so that the
+        // compressed size of records responses can be measured.
+        recordsHeaders = properties.headers.newBuilder()
+                .set("Accept", properties.contentType.toString())
+                .set("Accept-Encoding", "gzip")
+                .build();
+
+        if (group != null) {
+            groupUrl = client.getRelativeUrl("consumers/" + group);
+        } else {
+            groupUrl = null;
+        }
+        if (group != null && instance != null) {
+            instanceUrl = client.getRelativeUrl("consumers/" + group + "/instances/" + instance);
+            subscriptionUrl = instanceUrl.newBuilder().addPathSegment("subscription").build();
+            assignmentsUrl = instanceUrl.newBuilder().addPathSegment("assignments").build();
+            positionsUrl = instanceUrl.newBuilder().addPathSegment("positions").build();
+            positionsEndUrl = positionsUrl.newBuilder().addPathSegment("end").build();
+            recordsUrl = instanceUrl.newBuilder().addPathSegment("records").build();
+        } else {
+            instanceUrl = null;
+            subscriptionUrl = null;
+            assignmentsUrl = null;
+            positionsUrl = null;
+            positionsEndUrl = null;
+            recordsUrl = null;
+        }
+    }
+
+    /** Whether this template was built from given context for given consumer instance. */
+    boolean isValid(RestReader.RequestContext context, String group, String instance) {
+        return this.context.version == context.version
+                && Objects.equals(this.group, group)
+                && Objects.equals(this.instance, instance);
+    }
+
+    Request get(String relativePath) throws MalformedURLException {
+        return new Request.Builder()
+                .url(client.getRelativeUrl(relativePath))
+                .headers(headers)
+                .build();
+    }
+
+    Request createConsumer(TopicRequestData data) {
+        return post(groupUrl, data);
+    }
+
+    Request subscribe(TopicRequestData data) {
+        return post(subscriptionUrl, data);
+    }
+
+    Request assign(TopicRequestData data) {
+        return post(assignmentsUrl, data);
+    }
+
+    Request seek(TopicRequestData data) {
+        return post(positionsUrl, data);
+    }
+
+    Request seekEnd(TopicRequestData data) {
+        return post(positionsEndUrl, data);
+    }
+
+    Request deleteConsumer() {
+        return new Request.Builder()
+                .url(instanceUrl)
+                .headers(headers)
+                .delete()
+                .build();
+    }
+
+    /**
+     * Request for records with given limits. The request is reused as long as the limits stay
+     * the same.
+     */
+    Request records(ReadLimits limits) {
+        if (recordsRequest == null
+                || recordsTimeoutMs != limits.getTimeoutMs()
+                || recordsMaxBytes != limits.getMaxBytes()) {
+            HttpUrl.Builder urlBuilder = recordsUrl.newBuilder();
+            if (limits.getTimeoutMs() > 0L) {
+                urlBuilder.addQueryParameter("timeout", Long.toString(limits.getTimeoutMs()));
+            }
+            if (limits.getMaxBytes() > 0L) {
+                urlBuilder.addQueryParameter("max_bytes", Long.toString(limits.getMaxBytes()));
+            }
+            recordsRequest = new Request.Builder()
+                    .url(urlBuilder.build())
+                    .headers(recordsHeaders)
+                    .build();
+            recordsTimeoutMs = limits.getTimeoutMs();
+            recordsMaxBytes = limits.getMaxBytes();
+        }
+        return recordsRequest;
+    }
+
+    private Request post(HttpUrl url, TopicRequestData data) {
+        return new Request.Builder()
+                .url(url)
+                .headers(postHeaders)
+                .post(new TopicRequestBody(data, properties.contentType))
+                .build();
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.radarcns.prmtmonitor.consumer;
 
+import org.apache.avro.Schema;
 import org.radarcns.config.ServerConfig;
 import org.radarcns.producer.AuthenticationException;
 import org.radarcns.producer.rest.ConnectionState;
@@ -27,12 +28,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
 import okhttp3.Headers;
 import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -41,9 +45,11 @@ import static org.radarcns.producer.rest.RestClient.DEFAULT_TIMEOUT;
 import static org.radarcns.producer.rest.RestClient.responseBody;
 
 /**
- * RestReader reads records from the Kafka REST Proxy. It does so using an Avro JSON encoding. A new
- * reader must be constructed with {@link #reader()} per AvroTopic. This implementation is
- * blocking and unbuffered, so flush, clear and close do not do anything.
+ * RestReader reads records from the Kafka REST Proxy. It does so using an Avro JSON encoding, or,
+ * if it has binary content, using the binary embedded format with Avro binary encoded records
+ * that are decoded with schemas from the schema registry. A new reader must be constructed with
+ * {@link #reader()} per AvroTopic. This implementation is blocking and unbuffered, so flush, clear
+ * and close do not do anything.
  */
 public class RestReader implements KafkaReader {
     private static final Logger logger = LoggerFactory.getLogger(RestReader.class);
@@ -54,16 +60,35 @@ public class RestReader implements KafkaReader {
             "application/vnd.kafka.v1+json, application/vnd.kafka+json, application/json";
     public static final MediaType KAFKA_REST_BINARY_ENCODING =
             MediaType.parse("application/vnd.radarbase.avro.v1+binary");
+    public static final MediaType KAFKA_REST_BINARY_CONSUMER_ENCODING =
+            MediaType.parse("application/vnd.kafka.binary.v2+json");
     public static final MediaType KAFKA_REST_AVRO_ENCODING =
             MediaType.parse("application/vnd.kafka.avro.v2+json; charset=utf-8");
     public static final MediaType KAFKA_REST_AVRO_LEGACY_ENCODING =
             MediaType.parse("application/vnd.kafka.avro.v1+json; charset=utf-8");
+    /** Idle connections kept open in HTTP/2 mode, in case the server falls back to HTTP/1.1. */
+    private static final int HTTP2_MAX_IDLE_CONNECTIONS = 5;
+    /** Keep-alive of idle connections in HTTP/2 mode, well over the interval between polls. */
+    private static final long HTTP2_KEEP_ALIVE_MINUTES = 10L;
+    /** Interval of HTTP/2 pings, to detect broken connections before a poll hangs on them. */
+    private static final long HTTP2_PING_INTERVAL_SECONDS = 30L;
+    /**
+     * Connections of all HTTP/2 clients. It is shared between readers, so that they still use a
+     * single multiplexed connection, and has its own keep-alive.
+     */
+    private static final ConnectionPool HTTP2_CONNECTION_POOL = new ConnectionPool(
+            HTTP2_MAX_IDLE_CONNECTIONS, HTTP2_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+
     private RequestProperties requestProperties;
 
     private Request.Builder isConnectedRequest;
     private SchemaRetriever schemaRetriever;
     private RestClient httpClient;
     private final ConnectionState state;
+    private final ConnectionLiveness liveness;
+    private final RecordsCapture capture;
+    private volatile RequestContext context;
+    private int contextVersion;
 
     /**
      * Construct a RestReader.
@@ -72,13 +97,43 @@ public class RestReader implements KafkaReader {
         this.schemaRetriever = Objects.requireNonNull(builder.retriever);
         this.requestProperties = new RequestProperties(
                 KAFKA_REST_ACCEPT_ENCODING,
-                builder.binary ? KAFKA_REST_BINARY_ENCODING : KAFKA_REST_AVRO_ENCODING,
+                builder.binary ? KAFKA_REST_BINARY_CONSUMER_ENCODING : KAFKA_REST_AVRO_ENCODING,
                 builder.additionalHeaders.build(),
                 builder.binary);
         this.state = builder.state;
-        setRestClient(Objects.requireNonNull(builder.client).newBuilder()
-                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
-                .build());
+        this.liveness = new ConnectionLiveness();
+        this.capture = builder.capture;
+        RestClient client = Objects.requireNonNull(builder.client);
+        if (builder.http2) {
+            setRestClient(createHttp2Client(client));
+        } else {
+            setRestClient(client.newBuilder()
+                    .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                    .build());
+        }
+    }
+
+    /**
+     * Client that prefers HTTP/2, so that all consumer instances, heartbeats and metadata
+     * requests share a single multiplexed connection. It keeps all other settings of the given
+     * client, but uses the HTTP/2 connection pool with a long keep-alive, and pings, since its
+     * connections are used for long-lived polling. If the server does not negotiate HTTP/2, for
+     * example over plain HTTP, requests use HTTP/1.1 instead.
+     */
+    private static RestClient createHttp2Client(RestClient client) {
+        RestClient http2Client = client.newBuilder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .build();
+        // RestClient.Builder does not set these, so set them on the derived OkHttpClient, which
+        // keeps its interceptors, like gzip compression
+        OkHttpClient httpClient = http2Client.getHttpClient().newBuilder()
+                .connectionPool(HTTP2_CONNECTION_POOL)
+                .pingInterval(HTTP2_PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .build();
+        return new RestClient.Builder(httpClient)
+                .server(http2Client.getServer())
+                .timeout(http2Client.getTimeout(), TimeUnit.SECONDS)
+                .build();
     }
 
 
@@ -92,6 +147,7 @@ public class RestReader implements KafkaReader {
         if (connectionTimeout != httpClient.getTimeout()) {
             httpClient = httpClient.newBuilder().timeout(connectionTimeout, unit).build();
             state.setTimeout(connectionTimeout, unit);
+            updateContext();
         }
     }
 
@@ -120,16 +176,28 @@ public class RestReader implements KafkaReader {
         }
         httpClient = newClient;
         state.reset();
+        updateContext();
+    }
+
+    /**
+     * Publish the current client and request properties as a new request context version. This
+     * must be called with the lock held after every change that affects requests.
+     */
+    private void updateContext() {
+        context = new RequestContext(++contextVersion, httpClient, requestProperties,
+                createSchemaLookup(schemaRetriever),
+                isConnectedRequest.headers(requestProperties.headers).build());
     }
 
     /** Set the schema retriever. */
     public final synchronized void setSchemaRetriever(SchemaRetriever retriever) {
         this.schemaRetriever = retriever;
+        updateContext();
     }
 
     /** Get the current REST client. */
-    public synchronized RestClient getRestClient() {
-        return httpClient;
+    public RestClient getRestClient() {
+        return context.client;
     }
 
     /** Get the schema retriever. */
@@ -137,14 +205,36 @@ public class RestReader implements KafkaReader {
         return this.schemaRetriever;
     }
 
-    /** Get a request to check the connection status. */
-    private synchronized Request getIsConnectedRequest() {
-        return isConnectedRequest.headers(requestProperties.headers).build();
+    /**
+     * Get a lookup of the schemas that binary records were written with. If the reader has a
+     * capture, retrieved schemas are captured as well.
+     */
+    SchemaLookup getSchemaLookup() {
+        return context.schemaLookup;
+    }
+
+    private SchemaLookup createSchemaLookup(final SchemaRetriever retriever) {
+        return new SchemaLookup() {
+            @Override
+            public Schema getSchema(String topic, boolean ofValue, int id) throws IOException {
+                Schema schema = retriever.getBySubjectAndId(topic, ofValue, id).getSchema();
+                if (capture != null) {
+                    capture.writeSchema(topic, ofValue, id, schema);
+                }
+                return schema;
+            }
+        };
+    }
+
+    /** Capture to tee responses into, or null if responses are not captured. */
+    RecordsCapture getCapture() {
+        return capture;
     }
 
     /** Set the compression of the REST client. */
     public synchronized void setCompression(boolean useCompression) {
         httpClient = httpClient.newBuilder().gzipCompression(useCompression).build();
+        updateContext();
     }
 
     /** Get the headers used in requests. */
@@ -158,6 +248,17 @@ public class RestReader implements KafkaReader {
                 requestProperties.contentType, additionalHeaders,
                 requestProperties.binary);
         this.state.reset();
+        updateContext();
+    }
+
+    @Override
+    public synchronized boolean hasBinaryContent() {
+        return requestProperties.binary;
+    }
+
+    @Override
+    public ConnectionLiveness getLiveness() {
+        return liveness;
     }
 
     @Override
@@ -168,15 +269,16 @@ public class RestReader implements KafkaReader {
     /**
      * Get the current request properties.
      */
-    public synchronized RequestProperties getRequestProperties() {
-        return requestProperties;
+    public RequestProperties getRequestProperties() {
+        return context.properties;
     }
 
     /**
-     * Get the current request context.
+     * Get the current request context. This does not lock the reader, so it can be called for
+     * every request.
      */
-    public synchronized RequestContext getRequestContext() {
-        return new RequestContext(httpClient, requestProperties);
+    RequestContext getRequestContext() {
+        return context;
     }
 
     @Override
@@ -184,21 +286,27 @@ public class RestReader implements KafkaReader {
         if (state.getState() == State.CONNECTED) {
             return true;
         }
-        try (Response response = httpClient.request(getIsConnectedRequest())) {
+        RequestContext context = this.context;
+        try (Response response = context.client.request(context.isConnectedRequest)) {
             if (response.isSuccessful()) {
                 state.didConnect();
+                liveness.didSucceed();
+                logger.debug("Connected to {} over {}", context.client, response.protocol());
             } else if (response.code() == 401) {
                 state.wasUnauthorized();
+                liveness.didFail();
             } else {
                 state.didDisconnect();
+                liveness.didFail();
                 String bodyString = responseBody(response);
                 logger.warn("Failed to make heartbeat request to {} (HTTP status code {}): {}",
-                        httpClient, response.code(), bodyString);
+                        context.client, response.code(), bodyString);
             }
         } catch (IOException ex) {
             // no stack trace is needed
             state.didDisconnect();
-            logger.warn("Failed to make heartbeat request to {}: {}", httpClient, ex.toString());
+            liveness.didFail();
+            logger.warn("Failed to make heartbeat request to {}: {}", context.client, ex.toString());
         }
 
         if (state.getState() == State.UNAUTHORIZED) {
@@ -240,6 +348,7 @@ public class RestReader implements KafkaReader {
         this.requestProperties = new RequestProperties(acceptEncoding,
                 contentEncoding,
                 requestProperties.headers, binary);
+        updateContext();
     }
 
     public static class Builder {
@@ -248,6 +357,8 @@ public class RestReader implements KafkaReader {
         private RestClient client;
         private Headers.Builder additionalHeaders = new Headers.Builder();
         private boolean binary = false;
+        private RecordsCapture capture = null;
+        private boolean http2 = false;
 
         public Builder schemaRetriever(SchemaRetriever schemaRetriever) {
             this.retriever = schemaRetriever;
@@ -279,8 +390,30 @@ public class RestReader implements KafkaReader {
             return this;
         }
 
+        /**
+         * Tee all responses of the readers into given capture, to replay them later with a
+         * {@link ReplayReader}.
+         */
+        public Builder capture(RecordsCapture capture) {
+            this.capture = capture;
+            return this;
+        }
+
+        /**
+         * Prefer HTTP/2 to share one connection between all requests, falling back to HTTP/1.1
+         * if the server does not support it. By default, only HTTP/1.1 is used.
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
         /** Build a new RestReader. */
         public RestReader build() {
+            if (capture != null && capture.isBinary() != binary) {
+                throw new IllegalArgumentException(
+                        "Capture content does not match the reader content");
+            }
             if (state == null) {
                 state = new ConnectionState(DEFAULT_TIMEOUT, TimeUnit.SECONDS);
             }
@@ -290,13 +423,24 @@ public class RestReader implements KafkaReader {
     }
 
 
+    /**
+     * Immutable snapshot of the settings that requests are made with. Each change of the settings
+     * results in a context with a higher version.
+     */
     static final class RequestContext {
+        final int version;
         final RequestProperties properties;
         final RestClient client;
+        final SchemaLookup schemaLookup;
+        final Request isConnectedRequest;
 
-        RequestContext(RestClient client, RequestProperties properties) {
+        RequestContext(int version, RestClient client, RequestProperties properties,
+                SchemaLookup schemaLookup, Request isConnectedRequest) {
+            this.version = version;
             this.properties = properties;
             this.client = client;
+            this.schemaLookup = schemaLookup;
+            this.isConnectedRequest = isConnectedRequest;
         }
     }
 
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.producer.AuthenticationException;
+import org.radarcns.producer.rest.ConnectionState;
+import org.radarcns.producer.rest.RestClient;
+import org.radarcns.topic.AvroTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Source;
+
+import static org.radarcns.prmtmonitor.consumer.RestReader.KAFKA_REST_ACCEPT_ENCODING;
+import static org.radarcns.prmtmonitor.consumer.TopicRequestBody.topicRequestContent;
+import static org.radarcns.producer.rest.RestClient.responseBody;
+
+class RestTopicReader implements KafkaTopicReader {
+    private static final Logger logger = LoggerFactory.getLogger(RestTopicReader.class);
+    private static final int LOG_CONTENT_LENGTH = 1024;
+
+    private HashSet<AvroTopic> topics;
+    private final RestReader reader;
+    private final ConnectionState state;
+    private final ConnectionLiveness liveness;
+    private String consumer_group;
+    private String consumer_instance;
+
+    private boolean has_consumer;
+
+    private final BinaryRecordDecoder binaryDecoder;
+    private RequestTemplate requestTemplate;
+    // Offsets of skipped records that could not be sought back to after their batch was read.
+    private final Map<TopicPartition, Long> pendingSeek;
+
+    // Request data that stays the same across reconnects, serialized only once.
+    private String consumerDataKey;
+    private TopicRequestData consumerData;
+    private Set<AvroTopic> subscriptionTopics;
+    private TopicRequestData subscriptionData;
+    private Set<TopicPartition> requestPartitions;
+    private TopicRequestData partitionsData;
+
+    RestTopicReader(RestReader reader, ConnectionState state) {
+        this.topics = new HashSet<>();
+        this.reader = reader;
+        this.state = state;
+        this.liveness = reader.getLiveness();
+        this.has_consumer = false;
+        this.binaryDecoder = new BinaryRecordDecoder();
+        this.pendingSeek = new HashMap<>();
+    }
+
+
+    @Override
+    public JSONArray topics() throws IOException, JSONException {
+        logger.info("Getting list of topics");
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.get("topics");
+        String response = handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        JSONArray topics = new JSONArray(response);
+        RecordsCapture capture = reader.getCapture();
+        if (capture != null) {
+            capture.writeTopics(response);
+        }
+        return topics;
+    }
+
+
+    // curl -k -H "Accept: application/vnd.kafka.v2+json"
+    // "https://nz1200.ukl.uni-freiburg.de/kafka/topics/android_phone_acceleration/partitions"
+    @Override
+    public List<Integer> partitions(String topic) throws IOException, JSONException {
+        logger.info("Getting partitions of topic {}", topic);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.get("topics/" + topic + "/partitions");
+        String response = handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        JSONArray jsonPartitions = new JSONArray(response);
+        List<Integer> partitions = new ArrayList<>(jsonPartitions.length());
+        for (int i = 0; i < jsonPartitions.length(); i++) {
+            partitions.add(jsonPartitions.getJSONObject(i).getInt("partition"));
+        }
+        RecordsCapture capture = reader.getCapture();
+        if (capture != null) {
+            capture.writePartitions(topic, partitions);
+        }
+        return partitions;
+    }
+
+
+    @Override
+    public void consumer(String group, String instance) throws IOException {
+        this.consumer_group = group;
+        this.consumer_instance = instance;
+
+        logger.info("Creating consumer {}.{}", consumer_group, consumer_instance);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.createConsumer(getConsumerData(template.properties.binary));
+        handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        this.has_consumer = true;
+    }
+
+
+    @Override
+    public void subscribe(Set<AvroTopic> topics) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (topics.isEmpty()) {
+            logger.warn("No topics given to subscribe to.");
+            return;
+        }
+
+        logger.info("Subscribing to topics {}", topics);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.subscribe(getSubscriptionData(topics));
+        handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        this.topics.addAll(topics);
+    }
+
+    // curl -k -X POST -H "Content-Type: application/vnd.kafka.v2+json"
+    // --data '{"partitions":[{"topic":"android_phone_acceleration","partition":0},{"topic":"android_phone_acceleration","partition":1},{"topic":"android_phone_acceleration","partition":2}]}'
+    // "https://nz1200.ukl.uni-freiburg.de/kafka/consumers/test_group/instances/test_instance/assignments"
+    @Override
+    public void assignPartitions(Set<AvroTopic> topics, Set<Integer> partitions) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (topics.isEmpty()) {
+            logger.warn("No topics given to subscribe to.");
+            return;
+        }
+
+        logger.info("Assigning partitions to topics {}", topics);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.assign(getPartitionsData(topics, partitions));
+        handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        this.topics.addAll(topics);
+    }
+
+
+    // curl -k -X POST -H "Content-Type: application/vnd.kafka.v2+json"
+    // --data '{"partitions":[{"topic":"android_phone_acceleration","partition":0},{"topic":"android_phone_acceleration","partition":1},{"topic":"android_phone_acceleration","partition":2}]}'
+    // "https://nz1200.ukl.uni-freiburg.de/kafka/consumers/test_group/instances/test_instance/positions/end"
+    @Override
+    public void seekEnd(Set<AvroTopic> topics, Set<Integer> partitions) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (topics.isEmpty()) {
+            logger.warn("No topics given.");
+            return;
+        }
+
+        logger.info("Seeking to the end for topics {}", topics);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.seekEnd(getPartitionsData(topics, partitions));
+        handleRequest(template.client, request);
+        pendingSeek.keySet().removeAll(requestPartitions);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+    }
+
+
+    @Override
+    public void assignPartitions(Set<AvroTopic> topics, Collection<TopicPartition> partitions) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (partitions.isEmpty()) {
+            logger.warn("No partitions given to assign.");
+            return;
+        }
+
+        logger.info("Assigning partitions {}", partitions);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.assign(getPartitionsData(partitions));
+        handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        // the assignment replaces any previous assignment
+        this.topics.clear();
+        this.topics.addAll(topics);
+    }
+
+
+    @Override
+    public void seekEnd(Collection<TopicPartition> partitions) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (partitions.isEmpty()) {
+            logger.warn("No partitions given.");
+            return;
+        }
+
+        logger.info("Seeking to the end for partitions {}", partitions);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.seekEnd(getPartitionsData(partitions));
+        handleRequest(template.client, request);
+        pendingSeek.keySet().removeAll(requestPartitions);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+    }
+
+
+    @Override
+    public void seek(Map<TopicPartition, Long> offsets) throws IOException {
+        if (!has_consumer) {
+            throw new IOException("Consumer has not been created for this reader!");
+        }
+
+        if (offsets.isEmpty()) {
+            logger.warn("No offsets given.");
+            return;
+        }
+
+        logger.info("Seeking to offsets {}", offsets);
+
+        RequestTemplate template = getTemplate();
+
+        seek(template, offsets);
+        pendingSeek.keySet().removeAll(offsets.keySet());
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+    }
+
+
+    @Override
+    public JSONArray read() throws IOException, JSONException {
+        logger.info("Reading");
+
+        if (this.topics.isEmpty()) {
+            logger.warn("Not subscribed .");
+            return new JSONArray();
+        }
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.records(ReadLimits.UNLIMITED);
+        String response = handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        return new JSONArray(response);
+    }
+
+
+    @Override
+    public ReadResult read(ReadLimits limits, final RecordListener<JSONObject, JSONObject> listener) throws IOException, JSONException {
+        logger.info("Reading");
+
+        if (this.topics.isEmpty()) {
+            logger.warn("Not subscribed .");
+            return ReadResult.EMPTY;
+        }
+
+        RequestTemplate template = getTemplate();
+
+        ReadResult result = handleRecordsRequest(template, limits,
+                (source, limiter) -> JsonRecordDecoder.decode(source, limiter, listener));
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public ReadResult readBinary(ReadLimits limits, final RecordListener<SpecificRecord, SpecificRecord> listener) throws IOException, JSONException {
+        logger.info("Reading binary");
+
+        if (this.topics.isEmpty()) {
+            logger.warn("Not subscribed .");
+            return ReadResult.EMPTY;
+        }
+
+        RequestTemplate template = getTemplate();
+        final SchemaLookup schemaLookup = template.context.schemaLookup;
+
+        if (!template.properties.binary) {
+            throw new IOException("Consumer " + consumer_group + "." + consumer_instance
+                    + " does not have binary content");
+        }
+
+        ReadResult result = handleRecordsRequest(template, limits,
+                (source, limiter) -> binaryDecoder.decode(source, topics, schemaLookup, limiter, listener));
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public ReadResult readSamples(ReadLimits limits, final Map<String, SeriesSchema> schemas, final SampleListener listener) throws IOException, JSONException {
+        logger.info("Reading samples");
+
+        if (this.topics.isEmpty()) {
+            logger.warn("Not subscribed .");
+            return ReadResult.EMPTY;
+        }
+
+        RequestTemplate template = getTemplate();
+        final SchemaLookup schemaLookup = template.context.schemaLookup;
+
+        if (!template.properties.binary) {
+            throw new IOException("Consumer " + consumer_group + "." + consumer_instance
+                    + " does not have binary content");
+        }
+
+        ReadResult result = handleRecordsRequest(template, limits,
+                (source, limiter) -> binaryDecoder.decodeSamples(source, topics, schemas, schemaLookup, limiter, listener));
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public void close(String group, String instance) throws IOException {
+        this.consumer_group = group;
+        this.consumer_instance = instance;
+        close();
+    }
+    @Override
+    public void close() throws IOException {
+        if (consumer_group == null || consumer_instance == null){
+            throw new IOException("Missing group or instance name for consumer, cannot close.");
+        }
+
+        logger.info("Closing consumer {}.{}", consumer_group, consumer_instance);
+
+        RequestTemplate template = getTemplate();
+
+        Request request = template.deleteConsumer();
+        handleRequest(template.client, request);
+
+        if (state.getState() == ConnectionState.State.UNAUTHORIZED) {
+            throw new AuthenticationException("Request unauthorized");
+        }
+
+        this.has_consumer = false;
+    }
+
+
+
+    /**
+     * Get the request template of the current consumer instance. It is only rebuilt if the
+     * consumer instance or the settings of the reader changed.
+     */
+    private RequestTemplate getTemplate() throws IOException {
+        RestReader.RequestContext context = reader.getRequestContext();
+        if (requestTemplate == null
+                || !requestTemplate.isValid(context, consumer_group, consumer_instance)) {
+            requestTemplate = new RequestTemplate(context, consumer_group, consumer_instance);
+        }
+        return requestTemplate;
+    }
+
+
+    private String handleRequest(RestClient restClient, Request request) throws IOException {
+        try (Response response = restClient.request(request)) {
+            String stringRes = handleStatus(request, response);
+
+            if (stringRes == null) stringRes = responseBody(response);
+            logger.trace("REST response: {}", (stringRes != null && stringRes.length() > 200) ? stringRes.substring(0, 200)+"..." : stringRes);
+            return stringRes;
+        } catch (IOException ex) {
+            logFailure(request, null, ex);
+        }
+        return null;
+    }
+
+
+    /**
+     * Make a records request and decode the response body while it is being received. The body
+     * is only decoded if the request was successful. If the limits were reached before the end of
+     * the response, the consumer is rewound to the first record that was skipped. If that fails,
+     * the decoded records are still returned and the rewind is retried before the next request,
+     * since the proxy has already moved past them. A gzip
+     * compressed body is decompressed while it is decoded. If the reader has a capture, the
+     * decompressed body is captured as it is decoded.
+     */
+    private ReadResult handleRecordsRequest(RequestTemplate template, ReadLimits limits,
+            RecordsDecoder decoder) throws IOException, JSONException {
+        if (!pendingSeek.isEmpty()) {
+            // nothing was read yet, so a failure here does not lose any records
+            seek(template, pendingSeek);
+            pendingSeek.clear();
+        }
+        Request request = template.records(limits);
+        BatchLimiter limiter;
+        long wireBytes = -1L;
+        long requestNanos;
+        long decodeNanos;
+        long requestStart = System.nanoTime();
+        try (Response response = template.client.request(request)) {
+            long decodeStart = System.nanoTime();
+            requestNanos = decodeStart - requestStart;
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                handleStatus(request, response);
+                return ReadResult.EMPTY;
+            }
+
+            didConnect();
+            RecordsCapture capture = reader.getCapture();
+            Source bodySource = body.source();
+            CountingSource wireSource = null;
+            String encoding = response.header("Content-Encoding");
+            if (encoding != null && !encoding.equalsIgnoreCase("identity")) {
+                if (!encoding.equalsIgnoreCase("gzip")) {
+                    throw new IOException("Unsupported content encoding " + encoding);
+                }
+                wireSource = new CountingSource(bodySource);
+                bodySource = new GzipSource(wireSource);
+            }
+            Buffer captured = null;
+            if (capture != null) {
+                captured = new Buffer();
+                bodySource = RecordsCapture.tee(bodySource, captured);
+            }
+            limiter = BatchLimiter.decode(bodySource, limits, decoder);
+            decodeNanos = System.nanoTime() - decodeStart;
+            if (wireSource != null) {
+                wireBytes = wireSource.getBytesRead();
+            }
+            if (capture != null) {
+                capture.writeRecords(consumer_instance, captured);
+            }
+        } catch (IOException ex) {
+            logFailure(request, null, ex);
+            return ReadResult.EMPTY;
+        }
+
+        if (!limiter.getSkippedOffsets().isEmpty()) {
+            try {
+                seek(template, limiter.getSkippedOffsets());
+            } catch (IOException ex) {
+                logger.warn("Failed to seek back to skipped records, retrying before next read: {}",
+                        ex.toString());
+                pendingSeek.putAll(limiter.getSkippedOffsets());
+            }
+        }
+        return limiter.result(wireBytes, requestNanos, decodeNanos);
+    }
+
+
+    // curl -k -X POST -H "Content-Type: application/vnd.kafka.v2+json"
+    // --data '{"offsets":[{"topic":"android_phone_acceleration","partition":0,"offset":1234}]}'
+    // "https://nz1200.ukl.uni-freiburg.de/kafka/consumers/test_group/instances/test_instance/positions"
+    private void seek(RequestTemplate template, Map<TopicPartition, Long> offsets)
+            throws IOException {
+        logger.debug("Seeking to offsets {}", offsets);
+
+        Request request = template.seek(TopicRequestData.offsets(offsets));
+        handleRequest(template.client, request);
+    }
+
+
+    /** Register that the server responded, which also counts as a heartbeat. */
+    private void didConnect() {
+        state.didConnect();
+        liveness.didSucceed();
+    }
+
+
+    /**
+     * Update the connection state based on the response status.
+     * @return the response body if it had to be read to determine the status, null otherwise.
+     */
+    private String handleStatus(Request request, Response response) throws IOException {
+        String stringRes = null;
+
+        if (response.isSuccessful()) {
+            didConnect();
+        } else if (response.code() == 401 || response.code() == 403) {
+            state.wasUnauthorized();
+            liveness.didFail();
+        } else if (response.code() == 415
+                && Objects.equals(request.header("Accept"), KAFKA_REST_ACCEPT_ENCODING)) {
+            didConnect();
+            logger.error("Latest Avro encoding is not supported.");
+        } else if (response.code() == 409) {
+            stringRes = responseBody(response);
+            if (stringRes != null && stringRes.contains("40902")) {
+                didConnect();
+                logger.warn("REST Status: Consumer already exists. Response: {}", stringRes);
+            }
+        } else if (response.code() == 404) {
+            stringRes = responseBody(response);
+            if (stringRes != null && stringRes.contains("40403")) {
+                didConnect();
+                logger.warn("REST Status: Consumer does not exist. Response: {}", stringRes);
+            }
+        } else {
+            logFailure(request, response, null);
+        }
+
+        return stringRes;
+    }
+
+
+    @SuppressWarnings("ConstantConditions")
+    private void logFailure(Request request, Response response, Exception ex)
+            throws IOException {
+        state.didDisconnect();
+        liveness.didFail();
+        String content = response == null ? null : responseBody(response);
+        int code = response == null ? -1 : response.code();
+        String requestContent = topicRequestContent(request);
+        if (requestContent != null) {
+            requestContent = requestContent.substring(0,
+                    Math.min(requestContent.length(), LOG_CONTENT_LENGTH));
+        }
+        logger.error("FAILED to transmit message: {} -> {}...",
+                content, requestContent);
+        throw new IOException("Failed to submit (HTTP status code " + code
+                + "): " + content, ex);
+    }
+
+    public boolean hasConsumer() {
+        return has_consumer;
+    }
+
+    public void setGroupAndInstance(String group, String instance) {
+        this.consumer_group = group;
+        this.consumer_instance = instance;
+    }
+
+
+
+    private TopicRequestData getConsumerData(boolean binary) throws IOException {
+        String key = consumer_instance + (binary ? "/binary" : "/avro");
+        if (consumerData == null || !key.equals(consumerDataKey)) {
+            consumerData = TopicRequestData.consumer(consumer_instance, binary);
+            consumerDataKey = key;
+        }
+        return consumerData;
+    }
+
+    private TopicRequestData getSubscriptionData(Set<AvroTopic> topics) throws IOException {
+        if (subscriptionData == null || !topics.equals(subscriptionTopics)) {
+            subscriptionData = TopicRequestData.subscription(topics);
+            subscriptionTopics = new HashSet<>(topics);
+        }
+        return subscriptionData;
+    }
+
+    private TopicRequestData getPartitionsData(Set<AvroTopic> topics, Set<Integer> partitions) throws IOException {
+        List<TopicPartition> topicPartitions = new ArrayList<>(topics.size() * partitions.size());
+        for (AvroTopic t : topics) {
+            for (Integer p : partitions) {
+                topicPartitions.add(new TopicPartition(t.getName(), p));
+            }
+        }
+        return getPartitionsData(topicPartitions);
+    }
+
+    private TopicRequestData getPartitionsData(Collection<TopicPartition> partitions) throws IOException {
+        Set<TopicPartition> partitionSet = new HashSet<>(partitions);
+        if (partitionsData == null || !partitionSet.equals(requestPartitions)) {
+            partitionsData = TopicRequestData.partitions(partitions);
+            requestPartitions = partitionSet;
+        }
+        return partitionsData;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.radarcns.prmtmonitor.data.Sample;
+
+/**
+ * Receives samples one by one while a consumer response is being decoded.
+ */
+public interface SampleListener {
+    /**
+     * A single record was decoded to a sample.
+     *
+     * @param topic topic the record was read from
+     * @param partition partition the record was read from
+     * @param offset offset of the record in its partition
+     * @param sample sample of the record; it is reused after this call returns
+     */
+    void onSample(String topic, int partition, long offset, Sample sample);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+
+/** Looks up the schemas that binary records were written with, by their schema registry ID. */
+interface SchemaLookup {
+    /**
+     * Get the schema with given ID.
+     * @param topic topic that the record was read from
+     * @param ofValue whether the schema is of a record value, rather than of a record key
+     * @param id schema registry ID
+     * @throws IOException if the schema could not be retrieved
+     */
+    Schema getSchema(String topic, boolean ofValue, int id) throws IOException;
+}
@@ -16,9 +16,7 @@
 
 package org.radarcns.prmtmonitor.consumer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 
 import okhttp3.MediaType;
 import okhttp3.Request;
@@ -26,13 +24,14 @@ import okhttp3.RequestBody;
 import okio.BufferedSink;
 
 /**
- * TopicRequestData in a RequestBody.
+ * TopicRequestData in a RequestBody. The serialized data is written as-is, so the body has a
+ * known length and can be retried without serializing it again.
  */
 class TopicRequestBody extends RequestBody {
     protected final TopicRequestData data;
     private final MediaType mediaType;
 
-    TopicRequestBody(TopicRequestData requestData, MediaType mediaType) throws IOException {
+    TopicRequestBody(TopicRequestData requestData, MediaType mediaType) {
         this.data = requestData;
         this.mediaType = mediaType;
     }
@@ -42,25 +41,25 @@ class TopicRequestBody extends RequestBody {
         return mediaType;
     }
 
+    @Override
+    public long contentLength() {
+        return data.content().size();
+    }
+
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
-        try (OutputStream out = sink.outputStream()) {
-            data.writeToStream(out);
-        }
+        sink.write(data.content());
     }
 
-    String content() throws IOException {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            data.writeToStream(out);
-            return out.toString();
-        }
+    String content() {
+        return data.content().utf8();
     }
 
-    public static String topicRequestContent(Request request) throws IOException {
-        TopicRequestBody body = (TopicRequestBody) request.body();
-        if (body == null) {
+    public static String topicRequestContent(Request request) {
+        RequestBody body = request.body();
+        if (!(body instanceof TopicRequestBody)) {
             return null;
         }
-        return body.content();
+        return ((TopicRequestBody) body).content();
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import com.squareup.moshi.JsonWriter;
+
+import org.radarcns.topic.AvroTopic;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Request data to submit to the Kafka REST proxy. The JSON is serialized once when it is
+ * created, so the same data can be sent any number of times, without copying it again.
+ */
+final class TopicRequestData {
+    private final ByteString content;
+
+    private TopicRequestData(ByteString content) {
+        this.content = content;
+    }
+
+    /** Serialized JSON content. */
+    ByteString content() {
+        return content;
+    }
+
+    /** Data to create a consumer instance that starts at the latest offsets. */
+    static TopicRequestData consumer(String instance, boolean binary) throws IOException {
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = JsonWriter.of(buffer)) {
+            writer.beginObject();
+            writer.name("name").value(instance);
+            writer.name("format").value(binary ? "binary" : "avro");
+            writer.name("auto.offset.reset").value("latest");
+            writer.endObject();
+        }
+        return new TopicRequestData(buffer.readByteString());
+    }
+
+    /** Data to subscribe to topics. */
+    static TopicRequestData subscription(Collection<AvroTopic> topics) throws IOException {
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = JsonWriter.of(buffer)) {
+            writer.beginObject();
+            writer.name("topics").beginArray();
+            for (AvroTopic topic : topics) {
+                writer.value(topic.getName());
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return new TopicRequestData(buffer.readByteString());
+    }
+
+    /** Data to assign partitions, or to seek to their end. */
+    static TopicRequestData partitions(Collection<TopicPartition> partitions) throws IOException {
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = JsonWriter.of(buffer)) {
+            writer.beginObject();
+            writer.name("partitions").beginArray();
+            for (TopicPartition partition : partitions) {
+                writer.beginObject();
+                writer.name("topic").value(partition.getTopic());
+                writer.name("partition").value(partition.getPartition());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return new TopicRequestData(buffer.readByteString());
+    }
+
+    /** Data to seek to given offsets. */
+    static TopicRequestData offsets(Map<TopicPartition, Long> offsets) throws IOException {
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = JsonWriter.of(buffer)) {
+            writer.beginObject();
+            writer.name("offsets").beginArray();
+            for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+                writer.beginObject();
+                writer.name("topic").value(offset.getKey().getTopic());
+                writer.name("partition").value(offset.getKey().getPartition());
+                writer.name("offset").value(offset.getValue().longValue());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return new TopicRequestData(buffer.readByteString());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes between two consecutive snapshots of a {@link TimeSeriesStore}: which series of which
+ * users changed, which samples were appended to each of them, and how many were evicted.
+ */
+public final class DataChange {
+    private final long previousVersion;
+    private final StoreSnapshot snapshot;
+    private final Map<String, Map<String, SeriesDelta>> deltas;
+
+    /**
+     * Changes since a previous snapshot.
+     * @param previousVersion version of the previous snapshot
+     * @param snapshot snapshot after the changes
+     * @param deltas deltas per topic, per user
+     */
+    DataChange(long previousVersion, StoreSnapshot snapshot, Map<String, Map<String, SeriesDelta>> deltas) {
+        this.previousVersion = previousVersion;
+        this.snapshot = snapshot;
+        this.deltas = deltas;
+    }
+
+    /** Version of the snapshot before the changes. */
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    /** Snapshot after the changes. */
+    public StoreSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** Users with changed series. */
+    public Set<String> getUsers() {
+        return Collections.unmodifiableSet(deltas.keySet());
+    }
+
+    /** Deltas of the changed series of given user, per topic. */
+    public Map<String, SeriesDelta> getDeltas(String userId) {
+        Map<String, SeriesDelta> userDeltas = deltas.get(userId);
+        return userDeltas == null ? Collections.<String, SeriesDelta>emptyMap() : Collections.unmodifiableMap(userDeltas);
+    }
+
+    /** Delta of a series, or null if it did not change. */
+    public SeriesDelta getDelta(String userId, String topic) {
+        return getDeltas(userId).get(topic);
+    }
+
+    /**
+     * Samples appended to and evicted from a single series, identified by its user ID and topic.
+     */
+    public static final class SeriesDelta {
+        private final String userId;
+        private final String topic;
+        private int appended;
+        private int evicted;
+        private long firstAppendedTime;
+        private long lastAppendedTime;
+        private int appendedStart;
+        private int appendedEnd;
+
+        SeriesDelta(String userId, String topic) {
+            this.userId = userId;
+            this.topic = topic;
+            appended = 0;
+            evicted = 0;
+            firstAppendedTime = -1L;
+            lastAppendedTime = -1L;
+            appendedStart = 0;
+            appendedEnd = 0;
+        }
+
+        void didAppend(long timeMs) {
+            if (appended == 0) {
+                firstAppendedTime = timeMs;
+            }
+            lastAppendedTime = timeMs;
+            appended++;
+        }
+
+        void didEvict(int count) {
+            evicted += count;
+        }
+
+        /** Set the range of appended samples in a published series of given size. */
+        void didPublish(int size) {
+            appendedEnd = size;
+            appendedStart = Math.max(0, size - appended);
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        /** Number of samples appended to the end of the series. */
+        public int getAppended() {
+            return appended;
+        }
+
+        /**
+         * Number of samples evicted from the start of the series, because they expired or because
+         * the series was full. This includes appended samples that were evicted again before the
+         * snapshot was published.
+         */
+        public int getEvicted() {
+            return evicted;
+        }
+
+        /**
+         * Index in the series of the snapshot of the first appended sample. Appended samples that
+         * were evicted again before the snapshot was published are not part of the range.
+         */
+        public int getAppendedStart() {
+            return appendedStart;
+        }
+
+        /** Index in the series of the snapshot after the last appended sample. */
+        public int getAppendedEnd() {
+            return appendedEnd;
+        }
+
+        /** Time of the first appended sample in milliseconds, or -1 if none was appended. */
+        public long getFirstAppendedTime() {
+            return firstAppendedTime;
+        }
+
+        /** Time of the last appended sample in milliseconds, or -1 if none was appended. */
+        public long getLastAppendedTime() {
+            return lastAppendedTime;
+        }
+    }
+}
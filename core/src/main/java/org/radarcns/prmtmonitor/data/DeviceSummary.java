@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+/**
+ * Latest state of a single device of a single user. The summary is updated in constant time for
+ * each sample that is added to or removed from the {@link TimeSeriesStore}, so it can be read
+ * without going through the samples themselves.
+ *
+ * The status of the device, i.e. the last time received, source ID and sample rate, is taken from
+ * its status topic only (see {@link #statusTopicOf(String)}), so that slow topics like the
+ * battery level do not mix in. The battery level is taken from any topic of the device that has
+ * one, and the number of samples is over all its topics.
+ *
+ * Summaries are modified only by their store, while holding its lock. Summaries that are part of
+ * a {@link StoreSnapshot} are copies that are never modified.
+ */
+public final class DeviceSummary {
+    /** Period over which the sample rate is measured. */
+    private static final long RATE_WINDOW_MS = 10_000L;
+    /** Weight of the last measured period in the sample rate. */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final String device;
+    private long lastTimeReceived;
+    private String lastSourceId;
+    private float lastBatteryLevel;
+    private int numSamples;
+    private int numStatusSamples;
+    private double sampleRate;
+    private long rateWindowStart;
+    private int rateWindowCount;
+
+    DeviceSummary(String device) {
+        this.device = device;
+        this.lastTimeReceived = -1L;
+        this.lastSourceId = null;
+        this.lastBatteryLevel = Float.NaN;
+        this.numSamples = 0;
+        this.numStatusSamples = 0;
+        this.sampleRate = Double.NaN;
+        this.rateWindowStart = -1L;
+        this.rateWindowCount = 0;
+    }
+
+    private DeviceSummary(DeviceSummary other) {
+        this.device = other.device;
+        this.lastTimeReceived = other.lastTimeReceived;
+        this.lastSourceId = other.lastSourceId;
+        this.lastBatteryLevel = other.lastBatteryLevel;
+        this.numSamples = other.numSamples;
+        this.numStatusSamples = other.numStatusSamples;
+        this.sampleRate = other.sampleRate;
+        this.rateWindowStart = other.rateWindowStart;
+        this.rateWindowCount = other.rateWindowCount;
+    }
+
+    /**
+     * Device that a topic belongs to. Topic names start with the device name, followed by the
+     * measured quantity, e.g. {@code android_empatica_e4_battery_level}. The device name ends with
+     * the first part that contains a digit, as in {@code android_empatica_e4}, or otherwise
+     * consists of the first two parts, as in {@code android_phone}.
+     */
+    public static String deviceOf(String topic) {
+        String[] parts = topic.split("_");
+        int length = Math.min(2, parts.length);
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (containsDigit(parts[i])) {
+                length = i + 1;
+                break;
+            }
+        }
+        StringBuilder builder = new StringBuilder(parts[0]);
+        for (int i = 1; i < length; i++) {
+            builder.append('_').append(parts[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Topic that the status of a device is taken from: its acceleration, which devices send
+     * continuously while they are worn, as in {@code android_empatica_e4_acceleration}.
+     */
+    public static String statusTopicOf(String device) {
+        return device + "_acceleration";
+    }
+
+    private static boolean containsDigit(String part) {
+        for (int i = 0; i < part.length(); i++) {
+            if (Character.isDigit(part.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the summary with an added sample.
+     * @param timeReceivedMs time the sample was received by the source, in milliseconds
+     * @param sourceId source ID of the sample
+     * @param batteryLevel battery level in the sample, or NaN if it has none
+     * @param ofStatus whether the sample is of the status topic of the device
+     */
+    void add(long timeReceivedMs, String sourceId, double batteryLevel, boolean ofStatus) {
+        if (!Double.isNaN(batteryLevel)) {
+            lastBatteryLevel = (float) batteryLevel;
+        }
+        numSamples++;
+        if (!ofStatus) {
+            return;
+        }
+        if (timeReceivedMs > lastTimeReceived) {
+            lastTimeReceived = timeReceivedMs;
+        }
+        lastSourceId = sourceId;
+        numStatusSamples++;
+
+        if (rateWindowStart == -1L) {
+            rateWindowStart = timeReceivedMs;
+        } else if (timeReceivedMs - rateWindowStart >= RATE_WINDOW_MS) {
+            double windowRate = rateWindowCount * 1000d / (timeReceivedMs - rateWindowStart);
+            sampleRate = Double.isNaN(sampleRate) ? windowRate
+                    : RATE_SMOOTHING * windowRate + (1d - RATE_SMOOTHING) * sampleRate;
+            rateWindowStart = timeReceivedMs;
+            rateWindowCount = 0;
+        }
+        rateWindowCount++;
+    }
+
+    /**
+     * Update the summary with removed samples.
+     * @param count number of samples removed
+     * @param ofStatus whether the samples are of the status topic of the device
+     */
+    void remove(int count, boolean ofStatus) {
+        numSamples = Math.max(0, numSamples - count);
+        if (ofStatus) {
+            numStatusSamples = Math.max(0, numStatusSamples - count);
+        }
+    }
+
+    DeviceSummary copy() {
+        return new DeviceSummary(this);
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * Latest time a sample of the status topic was received by the source, in milliseconds, or -1
+     * if none was.
+     */
+    public long getLastTimeReceived() {
+        return lastTimeReceived;
+    }
+
+    /** Source ID of the most recent sample of the status topic, or null if none was added. */
+    public String getLastSourceId() {
+        return lastSourceId;
+    }
+
+    /** Most recent battery level, between 0 and 1, or NaN if it is unknown. */
+    public float getLastBatteryLevel() {
+        return lastBatteryLevel;
+    }
+
+    /** Number of samples currently stored, over all topics of the device. */
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * Whether samples of the status topic are currently stored, i.e. whether the device sent any
+     * within the decay window.
+     */
+    public boolean isConnected() {
+        return numStatusSamples > 0;
+    }
+
+    /**
+     * Number of samples of the status topic per second that were received by the source, as of
+     * its most recent sample, or NaN if too few samples were added yet.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+/**
+ * A single sample of a topic, as extracted from its key and value. Instances are reused for
+ * subsequent samples, so they should not be held on to. This class is not thread-safe.
+ */
+public final class Sample {
+    private final SeriesSchema schema;
+    String userId;
+    String sourceId;
+    long timeMs;
+    long timeReceivedMs;
+    final double[] values;
+
+    public Sample(SeriesSchema schema) {
+        this.schema = schema;
+        this.values = new double[schema.size()];
+    }
+
+    public SeriesSchema getSchema() {
+        return schema;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    /** Sample time in milliseconds. */
+    public long getTime() {
+        return timeMs;
+    }
+
+    /** Time the sample was received by the source, in milliseconds. */
+    public long getTimeReceived() {
+        return timeReceivedMs;
+    }
+
+    /** Value of a field by its index in the schema, or NaN if the record did not have it. */
+    public double getValue(int field) {
+        return values[field];
+    }
+}
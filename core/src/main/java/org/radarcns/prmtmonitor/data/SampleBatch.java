@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Samples that were read in a single poll, kept in primitive columns per topic until they are
+ * added to a {@link TimeSeriesStore}. Create batches with {@link TimeSeriesStore#createBatch()}.
+ * This class is not thread-safe.
+ */
+public final class SampleBatch {
+    private final TimeSeriesStore store;
+    private final Map<String, TopicSamples> topics;
+    /** Samples of the last topic that was added to, since records arrive in runs per topic. */
+    private TopicSamples lastTopic;
+    private int size;
+
+    SampleBatch(TimeSeriesStore store) {
+        this.store = store;
+        this.topics = new HashMap<>();
+        this.lastTopic = null;
+        this.size = 0;
+    }
+
+    /**
+     * Add a sample.
+     * @param topic topic of the sample
+     * @param sample sample, with the schema of the topic
+     */
+    public void add(String topic, Sample sample) {
+        TopicSamples samples = topicSamples(topic, sample.getSchema());
+        samples.add(sample.userId, sample.sourceId, sample.timeMs, sample.timeReceivedMs, sample.values);
+        size++;
+    }
+
+    /**
+     * Add a sample from its JSON key and value. Samples of topics that are not registered with
+     * the store are ignored.
+     * @param topic topic of the sample
+     * @param key observation key, with userId and sourceId
+     * @param value value record, with time and timeReceived in seconds
+     * @return whether the sample was added
+     * @throws JSONException if the key or value do not have the required fields
+     */
+    public boolean add(String topic, JSONObject key, JSONObject value) throws JSONException {
+        TopicSamples samples = topicSamples(topic, null);
+        if (samples == null) {
+            return false;
+        }
+        SeriesSchema schema = samples.schema;
+        double[] values = samples.valueBuffer;
+        for (int i = 0; i < schema.size(); i++) {
+            values[i] = value.optDouble(schema.getFieldNames().get(i), Double.NaN);
+        }
+        samples.add(key.getString("userId"), key.optString("sourceId", null),
+                Math.round(value.getDouble(SeriesSchema.TIME_FIELD) * 1000d),
+                Math.round(value.getDouble(SeriesSchema.TIME_RECEIVED_FIELD) * 1000d),
+                values);
+        size++;
+        return true;
+    }
+
+    /** Total number of samples. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Number of samples per topic. */
+    public Map<String, Integer> getTopicSizes() {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (TopicSamples samples : topics.values()) {
+            sizes.put(samples.topic, samples.size);
+        }
+        return sizes;
+    }
+
+    Collection<TopicSamples> getTopicSamples() {
+        return topics.values();
+    }
+
+    /**
+     * Samples of given topic.
+     * @param schema schema of the topic, or null to look it up in the store
+     * @return samples, or null if the schema is not known
+     */
+    private TopicSamples topicSamples(String topic, SeriesSchema schema) {
+        if (lastTopic != null && lastTopic.topic.equals(topic)) {
+            return lastTopic;
+        }
+        TopicSamples samples = topics.get(topic);
+        if (samples == null) {
+            if (schema == null) {
+                schema = store.getSchema(topic);
+                if (schema == null) {
+                    return null;
+                }
+            }
+            samples = new TopicSamples(topic, schema);
+            topics.put(topic, samples);
+        }
+        lastTopic = samples;
+        return samples;
+    }
+
+    /** Columns of the samples of a single topic. */
+    static final class TopicSamples {
+        private static final int INITIAL_CAPACITY = 16;
+
+        final String topic;
+        final SeriesSchema schema;
+        int size;
+        String[] userIds;
+        String[] sourceIds;
+        long[] times;
+        long[] timesReceived;
+        /** Values of sample {@code i} start at {@code i * schema.size()}. */
+        double[] values;
+        final double[] valueBuffer;
+
+        TopicSamples(String topic, SeriesSchema schema) {
+            this.topic = topic;
+            this.schema = schema;
+            this.size = 0;
+            this.userIds = new String[INITIAL_CAPACITY];
+            this.sourceIds = new String[INITIAL_CAPACITY];
+            this.times = new long[INITIAL_CAPACITY];
+            this.timesReceived = new long[INITIAL_CAPACITY];
+            this.values = new double[INITIAL_CAPACITY * schema.size()];
+            this.valueBuffer = new double[schema.size()];
+        }
+
+        void add(String userId, String sourceId, long timeMs, long timeReceivedMs, double[] sampleValues) {
+            if (size == times.length) {
+                int newLength = times.length * 2;
+                userIds = Arrays.copyOf(userIds, newLength);
+                sourceIds = Arrays.copyOf(sourceIds, newLength);
+                times = Arrays.copyOf(times, newLength);
+                timesReceived = Arrays.copyOf(timesReceived, newLength);
+                values = Arrays.copyOf(values, newLength * schema.size());
+            }
+            userIds[size] = userId;
+            sourceIds[size] = sourceId;
+            times[size] = timeMs;
+            timesReceived[size] = timeReceivedMs;
+            System.arraycopy(sampleValues, 0, values, size * schema.size(), schema.size());
+            size++;
+        }
+    }
+}
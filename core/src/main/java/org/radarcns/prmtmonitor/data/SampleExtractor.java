@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the fields of a {@link Sample} directly from Avro binary data. The extractor is compiled
+ * once from the schema that the data was written with: each field of that schema gets a reader
+ * that decodes it straight into its slot of the sample, or skips it. Extracting a record then
+ * needs no field name lookups and no boxing of values. This class is not thread-safe.
+ */
+public final class SampleExtractor {
+    private static final int SKIP = Integer.MIN_VALUE;
+    private static final int USER_ID = -1;
+    private static final int SOURCE_ID = -2;
+    private static final int TIME = -3;
+    private static final int TIME_RECEIVED = -4;
+
+    private final FieldReader[] readers;
+    /** Value slots that the writer schema does not have. */
+    private final int[] missingValues;
+
+    private SampleExtractor(FieldReader[] readers, int[] missingValues) {
+        this.readers = readers;
+        this.missingValues = missingValues;
+    }
+
+    /**
+     * Compile an extractor of the userId and sourceId of an observation key.
+     * @param writerSchema schema the key was written with
+     */
+    public static SampleExtractor forKey(Schema writerSchema) {
+        List<Schema.Field> fields = writerSchema.getFields();
+        FieldReader[] readers = new FieldReader[fields.size()];
+        for (int i = 0; i < readers.length; i++) {
+            Schema.Field field = fields.get(i);
+            int target;
+            if (field.name().equals("userId")) {
+                target = USER_ID;
+            } else if (field.name().equals("sourceId")) {
+                target = SOURCE_ID;
+            } else {
+                target = SKIP;
+            }
+            readers[i] = compile(field.schema(), target);
+        }
+        return new SampleExtractor(readers, new int[0]);
+    }
+
+    /**
+     * Compile an extractor of the time, time received and numeric fields of a value.
+     * @param writerSchema schema the value was written with
+     * @param seriesSchema fields to extract
+     * @throws IllegalArgumentException if the writer schema has no time or time received.
+     */
+    public static SampleExtractor forValue(Schema writerSchema, SeriesSchema seriesSchema) {
+        if (writerSchema.getField(SeriesSchema.TIME_FIELD) == null
+                || writerSchema.getField(SeriesSchema.TIME_RECEIVED_FIELD) == null) {
+            throw new IllegalArgumentException("Value schema " + writerSchema.getFullName()
+                    + " does not have a time and a time received");
+        }
+        boolean[] present = new boolean[seriesSchema.size()];
+        List<Schema.Field> fields = writerSchema.getFields();
+        FieldReader[] readers = new FieldReader[fields.size()];
+        for (int i = 0; i < readers.length; i++) {
+            Schema.Field field = fields.get(i);
+            int target;
+            if (field.name().equals(SeriesSchema.TIME_FIELD)) {
+                target = TIME;
+            } else if (field.name().equals(SeriesSchema.TIME_RECEIVED_FIELD)) {
+                target = TIME_RECEIVED;
+            } else {
+                target = seriesSchema.indexOf(field.name());
+                if (target == -1) {
+                    target = SKIP;
+                } else {
+                    present[target] = true;
+                }
+            }
+            readers[i] = compile(field.schema(), target);
+        }
+        int[] missing = new int[present.length];
+        int numMissing = 0;
+        for (int i = 0; i < present.length; i++) {
+            if (!present[i]) {
+                missing[numMissing++] = i;
+            }
+        }
+        return new SampleExtractor(readers, Arrays.copyOf(missing, numMissing));
+    }
+
+    /**
+     * Read a record into given sample.
+     * @param decoder decoder positioned at the start of the record
+     * @param sample sample to update
+     * @throws IOException if the record could not be decoded
+     */
+    public void extract(Decoder decoder, Sample sample) throws IOException {
+        for (int missing : missingValues) {
+            sample.values[missing] = Double.NaN;
+        }
+        for (FieldReader reader : readers) {
+            reader.read(decoder, sample);
+        }
+    }
+
+    /** Reader of a field with given writer schema into given target slot. */
+    private static FieldReader compile(Schema schema, final int target) {
+        switch (schema.getType()) {
+            case UNION:
+                List<Schema> types = schema.getTypes();
+                final FieldReader[] branches = new FieldReader[types.size()];
+                for (int i = 0; i < branches.length; i++) {
+                    branches[i] = compile(types.get(i), target);
+                }
+                return (decoder, sample) -> branches[decoder.readIndex()].read(decoder, sample);
+            case NULL:
+                return (decoder, sample) -> {
+                    decoder.readNull();
+                    if (target == USER_ID || target == SOURCE_ID) {
+                        setString(sample, target, null);
+                    } else if (target != SKIP) {
+                        setNumber(sample, target, Double.NaN);
+                    }
+                };
+            case DOUBLE:
+                if (isNumeric(target)) {
+                    return (decoder, sample) -> setNumber(sample, target, decoder.readDouble());
+                }
+                break;
+            case FLOAT:
+                if (isNumeric(target)) {
+                    return (decoder, sample) -> setNumber(sample, target, decoder.readFloat());
+                }
+                break;
+            case LONG:
+                if (isNumeric(target)) {
+                    return (decoder, sample) -> setNumber(sample, target, decoder.readLong());
+                }
+                break;
+            case INT:
+                if (isNumeric(target)) {
+                    return (decoder, sample) -> setNumber(sample, target, decoder.readInt());
+                }
+                break;
+            case STRING:
+                if (target == USER_ID || target == SOURCE_ID) {
+                    final StringReader stringReader = new StringReader();
+                    return (decoder, sample) -> setString(sample, target, stringReader.read(decoder));
+                }
+                break;
+            default:
+                break;
+        }
+        return compileSkip(schema);
+    }
+
+    /** Reader that skips a value with given writer schema. */
+    private static FieldReader compileSkip(final Schema schema) {
+        switch (schema.getType()) {
+            case NULL:
+                return (decoder, sample) -> decoder.readNull();
+            case BOOLEAN:
+                return (decoder, sample) -> decoder.readBoolean();
+            case INT:
+                return (decoder, sample) -> decoder.readInt();
+            case LONG:
+                return (decoder, sample) -> decoder.readLong();
+            case FLOAT:
+                return (decoder, sample) -> decoder.readFloat();
+            case DOUBLE:
+                return (decoder, sample) -> decoder.readDouble();
+            case STRING:
+                return (decoder, sample) -> decoder.skipString();
+            case BYTES:
+                return (decoder, sample) -> decoder.skipBytes();
+            case FIXED:
+                final int fixedSize = schema.getFixedSize();
+                return (decoder, sample) -> decoder.skipFixed(fixedSize);
+            case ENUM:
+                return (decoder, sample) -> decoder.readEnum();
+            case UNION:
+                return compile(schema, SKIP);
+            case RECORD: {
+                List<FieldReader> fieldReaders = new ArrayList<>();
+                for (Schema.Field field : schema.getFields()) {
+                    fieldReaders.add(compileSkip(field.schema()));
+                }
+                final FieldReader[] readers = fieldReaders.toArray(new FieldReader[0]);
+                return (decoder, sample) -> {
+                    for (FieldReader reader : readers) {
+                        reader.read(decoder, sample);
+                    }
+                };
+            }
+            case ARRAY: {
+                final FieldReader elementReader = compileSkip(schema.getElementType());
+                return (decoder, sample) -> {
+                    for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+                        for (long i = 0; i < n; i++) {
+                            elementReader.read(decoder, sample);
+                        }
+                    }
+                };
+            }
+            case MAP: {
+                final FieldReader valueReader = compileSkip(schema.getValueType());
+                return (decoder, sample) -> {
+                    for (long n = decoder.readMapStart(); n != 0; n = decoder.mapNext()) {
+                        for (long i = 0; i < n; i++) {
+                            decoder.skipString();
+                            valueReader.read(decoder, sample);
+                        }
+                    }
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Cannot read Avro type " + schema.getType());
+        }
+    }
+
+    private static boolean isNumeric(int target) {
+        return target >= 0 || target == TIME || target == TIME_RECEIVED;
+    }
+
+    private static void setNumber(Sample sample, int target, double value) {
+        if (target >= 0) {
+            sample.values[target] = value;
+        } else if (target == TIME) {
+            sample.timeMs = Math.round(value * 1000d);
+        } else if (target == TIME_RECEIVED) {
+            sample.timeReceivedMs = Math.round(value * 1000d);
+        }
+    }
+
+    private static void setString(Sample sample, int target, String value) {
+        if (target == USER_ID) {
+            sample.userId = value;
+        } else {
+            sample.sourceId = value;
+        }
+    }
+
+    private interface FieldReader {
+        void read(Decoder decoder, Sample sample) throws IOException;
+    }
+
+    /**
+     * Reads strings into a reused buffer. Subsequent records mostly have the same user and source
+     * IDs, so the previous string is returned if the bytes did not change.
+     */
+    private static final class StringReader {
+        private Utf8 buffer;
+        private byte[] lastBytes;
+        private String lastString;
+
+        StringReader() {
+            buffer = new Utf8();
+            lastBytes = null;
+            lastString = null;
+        }
+
+        String read(Decoder decoder) throws IOException {
+            buffer = decoder.readString(buffer);
+            int length = buffer.getByteLength();
+            byte[] bytes = buffer.getBytes();
+            if (lastBytes == null || !equalBytes(bytes, length, lastBytes)) {
+                lastBytes = Arrays.copyOf(bytes, length);
+                lastString = buffer.toString();
+            }
+            return lastString;
+        }
+
+        private static boolean equalBytes(byte[] bytes, int length, byte[] other) {
+            if (other.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != other[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
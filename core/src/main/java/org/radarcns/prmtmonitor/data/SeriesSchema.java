@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Numeric value fields of a topic, as derived from its Avro value schema. Float and int fields
+ * are stored as floats, double and long fields as doubles. The time and timeReceived fields are
+ * stored separately as millisecond timestamps, and non-numeric fields are not stored at all.
+ */
+public final class SeriesSchema {
+    public static final String TIME_FIELD = "time";
+    public static final String TIME_RECEIVED_FIELD = "timeReceived";
+    public static final String BATTERY_LEVEL_FIELD = "batteryLevel";
+
+    private final List<String> fieldNames;
+    private final boolean[] isDouble;
+    private final int[] columnIndex;
+    private final int numFloatColumns;
+    private final int numDoubleColumns;
+    private final int batteryLevelIndex;
+
+    /** Derive the numeric fields from given value schema. */
+    public SeriesSchema(Schema valueSchema) {
+        List<String> names = new ArrayList<>();
+        List<Boolean> doubles = new ArrayList<>();
+        for (Schema.Field field : valueSchema.getFields()) {
+            String name = field.name();
+            if (name.equals(TIME_FIELD) || name.equals(TIME_RECEIVED_FIELD)) {
+                continue;
+            }
+            switch (field.schema().getType()) {
+                case FLOAT:
+                case INT:
+                    names.add(name);
+                    doubles.add(false);
+                    break;
+                case DOUBLE:
+                case LONG:
+                    names.add(name);
+                    doubles.add(true);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        fieldNames = Collections.unmodifiableList(names);
+        isDouble = new boolean[names.size()];
+        columnIndex = new int[names.size()];
+        int floats = 0;
+        int doubleCount = 0;
+        for (int i = 0; i < isDouble.length; i++) {
+            isDouble[i] = doubles.get(i);
+            columnIndex[i] = isDouble[i] ? doubleCount++ : floats++;
+        }
+        numFloatColumns = floats;
+        numDoubleColumns = doubleCount;
+        batteryLevelIndex = names.indexOf(BATTERY_LEVEL_FIELD);
+    }
+
+    /** Names of the numeric value fields, in schema order. */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /** Index of a field in {@link #getFieldNames()}, or -1 if it is not stored. */
+    public int indexOf(String fieldName) {
+        return fieldNames.indexOf(fieldName);
+    }
+
+    public int size() {
+        return fieldNames.size();
+    }
+
+    boolean isDouble(int field) {
+        return isDouble[field];
+    }
+
+    /** Index of a field within the float or double columns. */
+    int columnIndex(int field) {
+        return columnIndex[field];
+    }
+
+    /** Index of the battery level field, or -1 if there is none. */
+    int getBatteryLevelIndex() {
+        return batteryLevelIndex;
+    }
+
+    int getNumFloatColumns() {
+        return numFloatColumns;
+    }
+
+    int getNumDoubleColumns() {
+        return numDoubleColumns;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of a {@link TimeSeriesStore} at a given version. Snapshots can be read from any
+ * thread without locking. Series that did not change between two snapshots are the same object
+ * in both, so readers can skip any work on them by comparing references or versions.
+ */
+public final class StoreSnapshot {
+    public static final StoreSnapshot EMPTY = new StoreSnapshot(0L,
+            Collections.<String, Map<String, TimeSeries>>emptyMap(),
+            Collections.<String, Map<String, DeviceSummary>>emptyMap());
+
+    private final long version;
+    final Map<String, Map<String, TimeSeries>> series;
+    final Map<String, Map<String, DeviceSummary>> summaries;
+
+    /**
+     * Snapshot with given series.
+     * @param version store version
+     * @param series unmodifiable series per topic, per user
+     * @param summaries unmodifiable summaries per device, per user
+     */
+    StoreSnapshot(long version, Map<String, Map<String, TimeSeries>> series,
+            Map<String, Map<String, DeviceSummary>> summaries) {
+        this.version = version;
+        this.series = series;
+        this.summaries = summaries;
+    }
+
+    /** Version of the store; a snapshot with the same version has the same contents. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** IDs of all users that samples were received from. */
+    public Set<String> getUsers() {
+        return Collections.unmodifiableSet(series.keySet());
+    }
+
+    /** Topics that samples of given user were received from. */
+    public Set<String> getTopics(String userId) {
+        return getSeries(userId).keySet();
+    }
+
+    /** Series per topic of a given user. */
+    public Map<String, TimeSeries> getSeries(String userId) {
+        Map<String, TimeSeries> userSeries = series.get(userId);
+        return userSeries == null ? Collections.<String, TimeSeries>emptyMap() : userSeries;
+    }
+
+    /** Series of a topic of a user, or null if no samples were received. */
+    public TimeSeries getSeries(String userId, String topic) {
+        return getSeries(userId).get(topic);
+    }
+
+    /** Summaries per device of a given user. */
+    public Map<String, DeviceSummary> getDeviceSummaries(String userId) {
+        Map<String, DeviceSummary> userSummaries = summaries.get(userId);
+        return userSummaries == null ? Collections.<String, DeviceSummary>emptyMap() : userSummaries;
+    }
+
+    /**
+     * Summary of a device of a user, or null if no samples were received.
+     * @see DeviceSummary#deviceOf(String)
+     */
+    public DeviceSummary getDeviceSummary(String userId, String device) {
+        return getDeviceSummaries(userId).get(device);
+    }
+}
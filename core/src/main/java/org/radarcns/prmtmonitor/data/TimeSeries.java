@@ -0,0 +1,321 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import java.util.Arrays;
+
+/**
+ * Samples of a single topic of a single user, stored in primitive columns of fixed-size chunks.
+ * Chunks are added as samples are added, up to a fixed capacity, after which the oldest samples
+ * are removed. Samples are kept in the order they were added, and are removed in that same order:
+ * a sample is only removed once it and all samples added before it have expired. The time
+ * received of the oldest sample therefore acts as a watermark for the whole series, so expired
+ * samples can be removed without looking at any others. This class is thread-safe.
+ *
+ * Samples are only ever written once, at the end of the series, so a chunk is never modified
+ * after it is full. Series that are part of a {@link StoreSnapshot} are views that share the full
+ * chunks with the series they were made of, and only have their own copy of the partially filled
+ * chunk at the end. Views are never modified.
+ */
+public final class TimeSeries {
+    /** Maximum number of samples per chunk. */
+    static final int CHUNK_SIZE = 128;
+
+    private final SeriesSchema schema;
+    private final int capacity;
+    private final int chunkSize;
+
+    /** Chunks from oldest to newest. Only the last chunk may be partially filled. */
+    private Chunk[] chunks;
+    private int numChunks;
+    /** Index of the oldest sample in the first chunk. */
+    private int head;
+    private int size;
+    private String lastSourceId;
+    /** Number of modifications made to the series. */
+    private long version;
+    /** Whether the series is in the retention queue of its store. Guarded by the store. */
+    boolean isQueued;
+
+    TimeSeries(SeriesSchema schema, int capacity) {
+        this.schema = schema;
+        this.capacity = Math.max(1, capacity);
+        this.chunkSize = Math.min(CHUNK_SIZE, this.capacity);
+
+        // grown as chunks are added, so a large capacity costs nothing until it is used
+        chunks = new Chunk[Math.min(this.capacity / chunkSize + 2, 4)];
+        numChunks = 0;
+        head = 0;
+        size = 0;
+        lastSourceId = null;
+        version = 0L;
+        isQueued = false;
+    }
+
+    /** View of given series. Must be called while holding the lock of the series. */
+    private TimeSeries(TimeSeries other) {
+        this.schema = other.schema;
+        this.capacity = other.capacity;
+        this.chunkSize = other.chunkSize;
+
+        numChunks = other.numChunks;
+        chunks = Arrays.copyOf(other.chunks, numChunks);
+        if (numChunks > 0) {
+            // the last chunk will still be written to by the other series, unless it is full
+            int tailSize = other.head + other.size - (numChunks - 1) * chunkSize;
+            if (tailSize < chunkSize) {
+                chunks[numChunks - 1] = chunks[numChunks - 1].copyOf(tailSize);
+            }
+        }
+        head = other.head;
+        size = other.size;
+        lastSourceId = other.lastSourceId;
+        version = other.version;
+        isQueued = false;
+    }
+
+    public SeriesSchema getSchema() {
+        return schema;
+    }
+
+    /** Maximum number of samples kept. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Number of samples currently kept. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Approximate number of bytes of the sample columns, including unused capacity. Views count
+     * the chunks they share with other series as well.
+     */
+    public synchronized long getAllocatedBytes() {
+        long numSamples = 0L;
+        for (int i = 0; i < numChunks; i++) {
+            numSamples += chunks[i].time.length;
+        }
+        return numSamples * (2 * 8 + 4 * schema.getNumFloatColumns() + 8 * schema.getNumDoubleColumns());
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of modifications made to the series. A view of the series has the same version as
+     * the series had when the view was made.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * View of the current samples, that will not change when this series changes. This only
+     * copies the samples of the last chunk, if it is not full.
+     */
+    synchronized TimeSeries view() {
+        return new TimeSeries(this);
+    }
+
+    /**
+     * Add a sample, removing the oldest sample if the series is at capacity.
+     * @param timeMs sample time in milliseconds
+     * @param timeReceivedMs time the sample was received by the source, in milliseconds
+     * @param sourceId source ID of the sample
+     * @param values values per field of the schema
+     * @param offset index in values of the first field
+     * @return whether the oldest sample was removed
+     */
+    synchronized boolean add(long timeMs, long timeReceivedMs, String sourceId, double[] values, int offset) {
+        boolean overwritten = false;
+        if (size == capacity) {
+            removeFirst(1);
+            overwritten = true;
+        }
+        int position = head + size;
+        if (position == numChunks * chunkSize) {
+            addChunk();
+        }
+        Chunk chunk = chunks[position / chunkSize];
+        int index = position % chunkSize;
+        chunk.time[index] = timeMs;
+        chunk.timeReceived[index] = timeReceivedMs;
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.isDouble(i)) {
+                chunk.doubleColumns[schema.columnIndex(i)][index] = values[offset + i];
+            } else {
+                chunk.floatColumns[schema.columnIndex(i)][index] = (float) values[offset + i];
+            }
+        }
+        size++;
+        lastSourceId = sourceId;
+        version++;
+        return overwritten;
+    }
+
+    /**
+     * Remove samples from the start of the series that were received before given time. This
+     * stops at the first sample that was received later, even if samples after it were received
+     * before the given time.
+     * @return number of samples removed
+     */
+    synchronized int removeReceivedBefore(long timeReceivedMs) {
+        int removed = 0;
+        while (removed < size && timeReceived(removed) < timeReceivedMs) {
+            removed++;
+        }
+        if (removed > 0) {
+            removeFirst(removed);
+            version++;
+        }
+        return removed;
+    }
+
+    /** Time the oldest sample was received, in milliseconds, or -1 if there is none. */
+    synchronized long getHeadTimeReceived() {
+        return size == 0 ? -1L : timeReceived(0);
+    }
+
+    /** Time the most recent sample was received, in milliseconds, or -1 if there is none. */
+    public synchronized long getLastTimeReceived() {
+        return size == 0 ? -1L : timeReceived(size - 1);
+    }
+
+    /** Time of the most recent sample, in milliseconds, or -1 if there is none. */
+    public synchronized long getLastTime() {
+        if (size == 0) {
+            return -1L;
+        }
+        int position = head + size - 1;
+        return chunks[position / chunkSize].time[position % chunkSize];
+    }
+
+    /** Source ID of the most recent sample, or null if there is none. */
+    public synchronized String getLastSourceId() {
+        return lastSourceId;
+    }
+
+    /**
+     * Value of a field in the most recent sample.
+     * @return value, or NaN if the series is empty or the field is not stored
+     */
+    public synchronized double getLastValue(String fieldName) {
+        int field = schema.indexOf(fieldName);
+        if (size == 0 || field == -1) {
+            return Double.NaN;
+        }
+        return value(field, size - 1);
+    }
+
+    /**
+     * Copy of all values of a field, from oldest to newest.
+     * @return values, or an empty array if the field is not stored
+     */
+    public synchronized double[] getValues(String fieldName) {
+        int field = schema.indexOf(fieldName);
+        if (field == -1) {
+            return new double[0];
+        }
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = value(field, i);
+        }
+        return result;
+    }
+
+    /** Copy of the times received of all samples in milliseconds, from oldest to newest. */
+    public synchronized long[] getTimesReceived() {
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = timeReceived(i);
+        }
+        return result;
+    }
+
+    private long timeReceived(int i) {
+        int position = head + i;
+        return chunks[position / chunkSize].timeReceived[position % chunkSize];
+    }
+
+    private double value(int field, int i) {
+        int position = head + i;
+        Chunk chunk = chunks[position / chunkSize];
+        if (schema.isDouble(field)) {
+            return chunk.doubleColumns[schema.columnIndex(field)][position % chunkSize];
+        } else {
+            return chunk.floatColumns[schema.columnIndex(field)][position % chunkSize];
+        }
+    }
+
+    private void addChunk() {
+        if (numChunks == chunks.length) {
+            chunks = Arrays.copyOf(chunks, numChunks * 2);
+        }
+        chunks[numChunks++] = new Chunk(schema, chunkSize);
+    }
+
+    /**
+     * Remove the oldest samples, dropping the chunks that no longer contain any. Chunks are not
+     * modified, since views may share them.
+     */
+    private void removeFirst(int count) {
+        head += count;
+        size -= count;
+        int numRemoved = size == 0 ? numChunks : head / chunkSize;
+        if (numRemoved > 0) {
+            System.arraycopy(chunks, numRemoved, chunks, 0, numChunks - numRemoved);
+            Arrays.fill(chunks, numChunks - numRemoved, numChunks, null);
+            numChunks -= numRemoved;
+            head = size == 0 ? 0 : head - numRemoved * chunkSize;
+        }
+    }
+
+    /** Samples of a consecutive range of positions in a series. */
+    private static final class Chunk {
+        private final long[] time;
+        private final long[] timeReceived;
+        private final float[][] floatColumns;
+        private final double[][] doubleColumns;
+
+        private Chunk(SeriesSchema schema, int length) {
+            time = new long[length];
+            timeReceived = new long[length];
+            floatColumns = new float[schema.getNumFloatColumns()][length];
+            doubleColumns = new double[schema.getNumDoubleColumns()][length];
+        }
+
+        private Chunk(Chunk other, int length) {
+            time = Arrays.copyOf(other.time, length);
+            timeReceived = Arrays.copyOf(other.timeReceived, length);
+            floatColumns = new float[other.floatColumns.length][];
+            for (int i = 0; i < floatColumns.length; i++) {
+                floatColumns[i] = Arrays.copyOf(other.floatColumns[i], length);
+            }
+            doubleColumns = new double[other.doubleColumns.length][];
+            for (int i = 0; i < doubleColumns.length; i++) {
+                doubleColumns[i] = Arrays.copyOf(other.doubleColumns[i], length);
+            }
+        }
+
+        /** Copy of the first samples of the chunk. */
+        private Chunk copyOf(int length) {
+            return new Chunk(this, length);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Stores the consumed samples of each topic of each user in a {@link TimeSeries}. Only the
+ * numeric fields of registered topics are kept, in primitive columns, instead of the full JSON
+ * records. Next to the samples, a {@link DeviceSummary} is kept per user and device. This class is
+ * thread-safe.
+ *
+ * All non-empty series are kept in a queue ordered by the time their oldest sample was received.
+ * Removing expired samples only visits the series at the front of that queue, so its cost is
+ * proportional to the number of expired samples rather than to the total number of samples or
+ * series.
+ *
+ * Readers get the samples through a {@link StoreSnapshot}, which is published by
+ * {@link #publish()}. Publishing only makes views of the series that changed since the previous
+ * snapshot, and reading a snapshot requires no locking. Each publication also describes its
+ * {@link DataChange} from the previous snapshot.
+ */
+public class TimeSeriesStore {
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    /**
+     * Highest sample rate in Hz that series hold a full decay window of by default. It is well
+     * above the rates of the supported devices, like the 64 Hz blood volume pulse of the E4.
+     */
+    public static final double MAX_SAMPLE_RATE = 256d;
+
+    /** Registered schemas. The map is replaced on change, so it can be read without locking. */
+    private volatile Map<String, SeriesSchema> schemas;
+    private final Map<String, Map<String, TimeSeries>> series;
+    /** Device of each registered topic. */
+    private final Map<String, String> topicDevices;
+    /** Registered topics that the status of their device is taken from. */
+    private final Set<String> statusTopics;
+    private final Map<String, Map<String, DeviceSummary>> summaries;
+    private final PriorityQueue<RetentionEntry> retentionQueue;
+    /** Changes per topic and user since the last published snapshot. */
+    private Map<String, Map<String, DataChange.SeriesDelta>> pendingDeltas;
+    private long version;
+    private volatile StoreSnapshot snapshot;
+    private int capacity;
+
+    public TimeSeriesStore(int capacity) {
+        this.schemas = Collections.emptyMap();
+        this.series = new HashMap<>();
+        this.topicDevices = new HashMap<>();
+        this.statusTopics = new HashSet<>();
+        this.summaries = new HashMap<>();
+        this.retentionQueue = new PriorityQueue<>();
+        this.pendingDeltas = new HashMap<>();
+        this.version = 0L;
+        this.snapshot = StoreSnapshot.EMPTY;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Default maximum number of samples per user and topic for a decay window: the whole window
+     * at {@link #MAX_SAMPLE_RATE}. Series grow a chunk at a time, so they only take memory for the
+     * samples received within the window, and the capacity only bounds faster topics.
+     * @param windowMs decay window in milliseconds
+     */
+    public static int capacityFor(long windowMs) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(windowMs * MAX_SAMPLE_RATE / 1000d));
+    }
+
+    /**
+     * Set the maximum number of samples per user and topic. This only applies to series that are
+     * created afterwards.
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Register a topic, so that its samples will be stored.
+     * @param topic topic name
+     * @param valueSchema Avro schema of the topic values
+     */
+    public synchronized void addTopic(String topic, Schema valueSchema) {
+        if (!schemas.containsKey(topic)) {
+            SeriesSchema schema = new SeriesSchema(valueSchema);
+            Map<String, SeriesSchema> newSchemas = new HashMap<>(schemas);
+            newSchemas.put(topic, schema);
+            schemas = Collections.unmodifiableMap(newSchemas);
+            String device = DeviceSummary.deviceOf(topic);
+            topicDevices.put(topic, device);
+            if (topic.equals(DeviceSummary.statusTopicOf(device))) {
+                statusTopics.add(topic);
+            }
+        }
+    }
+
+    /**
+     * Schema of a registered topic, or null if the topic is not registered. This does not lock
+     * the store.
+     */
+    public SeriesSchema getSchema(String topic) {
+        return schemas.get(topic);
+    }
+
+    /**
+     * Unmodifiable schemas of all registered topics, by topic name. This does not lock the store.
+     */
+    public Map<String, SeriesSchema> getSchemas() {
+        return schemas;
+    }
+
+    /** Create an empty batch of samples of the topics of this store. */
+    public SampleBatch createBatch() {
+        return new SampleBatch(this);
+    }
+
+    /**
+     * Add all samples of a batch. Samples of unregistered topics are ignored.
+     * @return number of samples added
+     */
+    public synchronized int addAll(SampleBatch batch) {
+        int numAdded = 0;
+        for (SampleBatch.TopicSamples samples : batch.getTopicSamples()) {
+            if (!schemas.containsKey(samples.topic)) {
+                continue;
+            }
+            int width = samples.schema.size();
+            boolean ofStatus = statusTopics.contains(samples.topic);
+            String userId = null;
+            TimeSeries topicSeries = null;
+            DeviceSummary summary = null;
+            DataChange.SeriesDelta delta = null;
+            for (int i = 0; i < samples.size; i++) {
+                // consecutive samples mostly belong to the same user
+                if (userId == null || !userId.equals(samples.userIds[i])) {
+                    userId = samples.userIds[i];
+                    topicSeries = getOrCreate(userId, samples.topic, samples.schema);
+                    summary = getOrCreateSummary(userId, samples.topic);
+                    delta = pendingDelta(userId, samples.topic);
+                }
+                add(topicSeries, summary, delta, ofStatus, userId, samples.topic, samples.times[i],
+                        samples.timesReceived[i], samples.sourceIds[i], samples.values, i * width);
+                numAdded++;
+            }
+        }
+        return numAdded;
+    }
+
+    /**
+     * Add a sample of a topic. Samples of unregistered topics are ignored.
+     * @param topic topic name
+     * @param userId user ID of the sample
+     * @param sourceId source ID of the sample
+     * @param timeMs sample time in milliseconds
+     * @param timeReceivedMs time the sample was received by the source, in milliseconds
+     * @param values values per field of the topic's {@link SeriesSchema}
+     * @return whether the sample was added
+     */
+    public synchronized boolean add(String topic, String userId, String sourceId, long timeMs, long timeReceivedMs, double[] values) {
+        SeriesSchema schema = schemas.get(topic);
+        if (schema == null) {
+            return false;
+        }
+        add(getOrCreate(userId, topic, schema), getOrCreateSummary(userId, topic),
+                pendingDelta(userId, topic), statusTopics.contains(topic), userId, topic, timeMs,
+                timeReceivedMs, sourceId, values, 0);
+        return true;
+    }
+
+    private void add(TimeSeries topicSeries, DeviceSummary summary, DataChange.SeriesDelta delta,
+            boolean ofStatus, String userId, String topic, long timeMs, long timeReceivedMs, String sourceId,
+            double[] values, int offset) {
+        boolean overwritten = topicSeries.add(timeMs, timeReceivedMs, sourceId, values, offset);
+        int batteryLevelIndex = topicSeries.getSchema().getBatteryLevelIndex();
+        summary.add(timeReceivedMs, sourceId,
+                batteryLevelIndex == -1 ? Double.NaN : values[offset + batteryLevelIndex],
+                ofStatus);
+        delta.didAppend(timeMs);
+        if (overwritten) {
+            summary.remove(1, ofStatus);
+            delta.didEvict(1);
+        }
+        version++;
+        if (!topicSeries.isQueued) {
+            retentionQueue.add(new RetentionEntry(topicSeries.getHeadTimeReceived(), userId, topic, topicSeries));
+            topicSeries.isQueued = true;
+        }
+    }
+
+    /**
+     * Remove all samples received before given time, in the order they were added.
+     * @param timeReceivedMs time in milliseconds
+     * @return number of samples removed
+     */
+    public synchronized int removeReceivedBefore(long timeReceivedMs) {
+        int totalRemoved = 0;
+        int numSeries = 0;
+        while (!retentionQueue.isEmpty() && retentionQueue.peek().headTimeReceived < timeReceivedMs) {
+            RetentionEntry entry = retentionQueue.poll();
+            TimeSeries topicSeries = entry.series;
+            // the head may have moved since the entry was queued, if old samples were overwritten
+            int removed = topicSeries.removeReceivedBefore(timeReceivedMs);
+            if (removed > 0) {
+                totalRemoved += removed;
+                getOrCreateSummary(entry.userId, entry.topic)
+                        .remove(removed, statusTopics.contains(entry.topic));
+                pendingDelta(entry.userId, entry.topic).didEvict(removed);
+                version++;
+                numSeries++;
+            }
+            long headTimeReceived = topicSeries.getHeadTimeReceived();
+            if (headTimeReceived == -1L) {
+                topicSeries.isQueued = false;
+            } else {
+                retentionQueue.add(new RetentionEntry(headTimeReceived, entry.userId, entry.topic, topicSeries));
+            }
+        }
+        if (totalRemoved > 0) {
+            logger.info("Decayed {} samples from {} series", totalRemoved, numSeries);
+        }
+        return totalRemoved;
+    }
+
+    /**
+     * Publish a snapshot of the current samples. Series and summaries that did not change since
+     * the previous snapshot are shared with it. Changed series are published as views, that
+     * share their full chunks with the series, so the cost of publishing does not depend on the
+     * number of samples kept.
+     * @return changes from the previous snapshot to the published snapshot, or null if nothing
+     *         changed and no snapshot was published
+     */
+    public synchronized DataChange publish() {
+        StoreSnapshot previous = snapshot;
+        if (previous.getVersion() == version) {
+            return null;
+        }
+        Map<String, Map<String, TimeSeries>> users = new HashMap<>(previous.series);
+        Map<String, Map<String, DeviceSummary>> userSummaries = new HashMap<>(previous.summaries);
+        for (Map.Entry<String, Map<String, DataChange.SeriesDelta>> user : pendingDeltas.entrySet()) {
+            String userId = user.getKey();
+            Map<String, TimeSeries> currentSeries = series.get(userId);
+            Map<String, DeviceSummary> currentSummaries = summaries.get(userId);
+            Map<String, TimeSeries> userSeries = new HashMap<>(previous.getSeries(userId));
+            Map<String, DeviceSummary> deviceSummaries = new HashMap<>(previous.getDeviceSummaries(userId));
+            for (Map.Entry<String, DataChange.SeriesDelta> topicDelta : user.getValue().entrySet()) {
+                String topic = topicDelta.getKey();
+                TimeSeries view = currentSeries.get(topic).view();
+                topicDelta.getValue().didPublish(view.size());
+                userSeries.put(topic, view);
+                String device = topicDevices.get(topic);
+                deviceSummaries.put(device, currentSummaries.get(device).copy());
+            }
+            users.put(userId, Collections.unmodifiableMap(userSeries));
+            userSummaries.put(userId, Collections.unmodifiableMap(deviceSummaries));
+        }
+        snapshot = new StoreSnapshot(version, users, userSummaries);
+        DataChange change = new DataChange(previous.getVersion(), snapshot, pendingDeltas);
+        pendingDeltas = new HashMap<>();
+        return change;
+    }
+
+    /** Number of users that samples are kept of. */
+    public synchronized int getNumUsers() {
+        return series.size();
+    }
+
+    /** Number of samples currently kept, over all users and topics. */
+    public synchronized long getNumSamples() {
+        long numSamples = 0L;
+        for (Map<String, TimeSeries> userSeries : series.values()) {
+            for (TimeSeries topicSeries : userSeries.values()) {
+                numSamples += topicSeries.size();
+            }
+        }
+        return numSamples;
+    }
+
+    /**
+     * Approximate number of bytes of the sample columns of all series, excluding snapshots and
+     * object overhead.
+     */
+    public synchronized long getAllocatedBytes() {
+        long numBytes = 0L;
+        for (Map<String, TimeSeries> userSeries : series.values()) {
+            for (TimeSeries topicSeries : userSeries.values()) {
+                numBytes += topicSeries.getAllocatedBytes();
+            }
+        }
+        return numBytes;
+    }
+
+    /**
+     * Latest published snapshot. This does not block, but it does not include any changes made
+     * after the last call to {@link #publish()}.
+     */
+    public StoreSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private TimeSeries getOrCreate(String userId, String topic, SeriesSchema schema) {
+        Map<String, TimeSeries> userSeries = series.get(userId);
+        if (userSeries == null) {
+            userSeries = new HashMap<>();
+            series.put(userId, userSeries);
+        }
+        TimeSeries topicSeries = userSeries.get(topic);
+        if (topicSeries == null) {
+            topicSeries = new TimeSeries(schema, capacity);
+            userSeries.put(topic, topicSeries);
+        }
+        return topicSeries;
+    }
+
+    private DataChange.SeriesDelta pendingDelta(String userId, String topic) {
+        Map<String, DataChange.SeriesDelta> userDeltas = pendingDeltas.get(userId);
+        if (userDeltas == null) {
+            userDeltas = new HashMap<>();
+            pendingDeltas.put(userId, userDeltas);
+        }
+        DataChange.SeriesDelta delta = userDeltas.get(topic);
+        if (delta == null) {
+            delta = new DataChange.SeriesDelta(userId, topic);
+            userDeltas.put(topic, delta);
+        }
+        return delta;
+    }
+
+    private DeviceSummary getOrCreateSummary(String userId, String topic) {
+        Map<String, DeviceSummary> userSummaries = summaries.get(userId);
+        if (userSummaries == null) {
+            userSummaries = new HashMap<>();
+            summaries.put(userId, userSummaries);
+        }
+        String device = topicDevices.get(topic);
+        DeviceSummary summary = userSummaries.get(device);
+        if (summary == null) {
+            summary = new DeviceSummary(device);
+            userSummaries.put(device, summary);
+        }
+        return summary;
+    }
+
+    /** Series in the retention queue, ordered by the time its oldest sample was received. */
+    private static final class RetentionEntry implements Comparable<RetentionEntry> {
+        private final long headTimeReceived;
+        private final String userId;
+        private final String topic;
+        private final TimeSeries series;
+
+        RetentionEntry(long headTimeReceived, String userId, String topic, TimeSeries series) {
+            this.headTimeReceived = headTimeReceived;
+            this.userId = userId;
+            this.topic = topic;
+            this.series = series;
+        }
+
+        @Override
+        public int compareTo(RetentionEntry other) {
+            return Long.compare(headTimeReceived, other.headTimeReceived);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.kafka;
+
+import org.radarcns.prmtmonitor.data.DataChange;
+
+/** Listener for changes in the consumed data. */
+public interface DataChangeListener {
+    /**
+     * Called on the data reader thread after each poll that added or evicted samples. Listeners
+     * should not do any lengthy work in this call.
+     *
+     * @param change changed series, and the snapshot after the change
+     */
+    void onDataChanged(DataChange change);
+}
@@ -16,8 +16,7 @@
 
 package org.radarcns.prmtmonitor.kafka;
 
-import android.os.Handler;
-
+import org.radarcns.prmtmonitor.consumer.ConnectionLiveness;
 import org.radarcns.prmtmonitor.consumer.KafkaReader;
 import org.radarcns.producer.AuthenticationException;
 import org.slf4j.Logger;
@@ -33,7 +32,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * present, and a exponential back-off mechanism if the connection is severed. If the connection is
  * assessed to be present through another mechanism, {@link #didConnect()} should be called,
  * conversely, if it is assessed to be severed, {@link #didDisconnect(IOException)} should be
- * called.
+ * called. Successful requests of the reader count as heartbeats, so a heartbeat request is only
+ * made if the reader did not make a successful request within the heartbeat interval.
  */
 class KafkaConnectionChecker implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(KafkaConnectionChecker.class);
@@ -41,18 +41,20 @@ class KafkaConnectionChecker implements Runnable {
     private static final int INCREMENTAL_BACKOFF_MILLISECONDS = 60_000;
     private static final int MAX_BACKOFF_MILLISECONDS = 14_400_000; // 4 hours
     private final KafkaReader reader;
+    private final ConnectionLiveness liveness;
     private final ServerStatusListener listener;
     private final AtomicBoolean isConnected;
     private final Random random;
-    private final Handler mHandler;
+    private final TaskExecutor mHandler;
     private final long heartbeatInterval;
     private long lastConnection;
     private int retries;
     private boolean isPosted;
 
-    KafkaConnectionChecker(KafkaReader reader, Handler handler, ServerStatusListener listener,
+    KafkaConnectionChecker(KafkaReader reader, TaskExecutor handler, ServerStatusListener listener,
                            long heartbeatSecondsInterval) {
         this.reader = reader;
+        this.liveness = reader.getLiveness();
         this.mHandler = handler;
         isConnected = new AtomicBoolean(false);
         lastConnection = -1L;
@@ -80,6 +82,9 @@ class KafkaConnectionChecker implements Runnable {
                 } else {
                     retry();
                 }
+            } else if (liveness.isAlive(heartbeatInterval, System.currentTimeMillis())) {
+                // recent requests succeeded, so no heartbeat request is needed
+                post(heartbeatInterval);
             } else if (System.currentTimeMillis() - lastConnection > 15_000L) {
                 if (reader.isConnected()) {
                     didConnect();
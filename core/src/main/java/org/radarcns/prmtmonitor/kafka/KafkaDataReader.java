@@ -0,0 +1,946 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.kafka;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.radarcns.kafka.ObservationKey;
+import org.radarcns.passive.biovotion.BiovotionVsm1BatteryLevel;
+import org.radarcns.passive.biovotion.BiovotionVsm1PpgRaw;
+import org.radarcns.passive.empatica.EmpaticaE4Acceleration;
+import org.radarcns.passive.empatica.EmpaticaE4BatteryLevel;
+import org.radarcns.passive.empatica.EmpaticaE4BloodVolumePulse;
+import org.radarcns.passive.empatica.EmpaticaE4ElectroDermalActivity;
+import org.radarcns.passive.phone.PhoneAcceleration;
+import org.radarcns.passive.phone.PhoneBatteryLevel;
+import org.radarcns.prmtmonitor.data.DataChange;
+import org.radarcns.prmtmonitor.data.DeviceSummary;
+import org.radarcns.prmtmonitor.data.Sample;
+import org.radarcns.prmtmonitor.data.SampleBatch;
+import org.radarcns.prmtmonitor.data.StoreSnapshot;
+import org.radarcns.prmtmonitor.data.TimeSeries;
+import org.radarcns.prmtmonitor.data.TimeSeriesStore;
+import org.radarcns.prmtmonitor.metrics.Gauge;
+import org.radarcns.prmtmonitor.metrics.MonitorMetrics;
+import org.radarcns.prmtmonitor.consumer.KafkaReader;
+import org.radarcns.prmtmonitor.consumer.KafkaTopicReader;
+import org.radarcns.prmtmonitor.consumer.ReadLimits;
+import org.radarcns.prmtmonitor.consumer.ReadResult;
+import org.radarcns.prmtmonitor.consumer.TopicPartition;
+import org.radarcns.prmtmonitor.consumer.RecordListener;
+import org.radarcns.prmtmonitor.consumer.SampleListener;
+import org.radarcns.producer.AuthenticationException;
+import org.radarcns.topic.AvroTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Separate thread to read from the database and send it to the Kafka server. It cleans the
+ * database.
+ *
+ * It uses a set of timers to addMeasurement data and clean the databases.
+ */
+public class KafkaDataReader<V> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaDataReader.class);
+
+    /** Maximum number of fetched batches per consumer that may wait to be merged. */
+    private static final int MAX_PENDING_BATCHES = 2;
+    /** Time to wait for pending merges before fetching again while catching up. */
+    private static final long CATCH_UP_MERGE_WAIT_MS = 200L;
+    /** Minimum time between saving offset checkpoints. */
+    private static final long CHECKPOINT_INTERVAL_MS = 10_000L;
+
+    /** Where to start reading newly assigned partitions. */
+    public enum ResumePolicy {
+        /** Resume from the last checkpoint, or from the end if there is none. */
+        CHECKPOINT,
+        /** Start from the end, only reading new records. */
+        END,
+        /**
+         * Resume from the checkpoint of the data decay time ago, so the dashboard is filled up
+         * right away, or from the end if there is no checkpoint within the decay time.
+         */
+        DECAY_WINDOW
+    }
+
+    private final ServerStatusListener listener;
+    private final KafkaReader reader;
+    /** Topic reader for metadata requests, which does not have a consumer. */
+    private KafkaTopicReader metadataReader;
+    private final List<ConsumerInstance> consumers;
+    private int nextConsumer;
+    private HashSet<AvroTopic> subscribedTopics;
+    private ArrayList<String> availableTopics;
+    private final KafkaConnectionChecker connection;
+    private final AtomicInteger getLimit;
+    private final AtomicLong getByteLimit;
+    private final AtomicLong getTimeout;
+    private final TaskExecutor.Factory executorFactory;
+    private final TaskExecutor mHandler;
+    private final boolean pipelined;
+    private final AtomicInteger pendingBatches;
+    private final int maxPendingBatches;
+    /**
+     * Guards the consumer state and the checkpoint settings, so that fetch threads never wait for
+     * a merge into the store.
+     */
+    private final Object stateLock;
+    private ServerStatusListener.ConsumerState consumerState;
+    private OffsetCheckpointStore checkpointStore;
+    private ResumePolicy resumePolicy;
+
+    private final TimeSeriesStore store;
+    private final List<DataChangeListener> dataChangeListeners;
+    private final MonitorMetrics metrics;
+
+    private Runnable subscribeFuture;
+    /** Upload rate in milliseconds. */
+    private long downloadRate;
+
+    private String consumerGroup;
+    private String consumerInstance;
+
+    private boolean persistentData;
+    private int dataDecayMs;
+
+    public static final String CONFIG_CONSUMER_GROUP = "consumer_group";
+    public static final String CONFIG_CONSUMER_INSTANCE = "consumer_instance";
+    public static final String CONFIG_CONSUMER_RATE = "consumer_download_rate";
+    public static final String CONFIG_CONSUMER_PERSISTENT = "consumer_persistent_data";
+    public static final String CONFIG_CONSUMER_DECAY = "consumer_data_decay_ms";
+    public static final String CONFIG_CONSUMER_BINARY = "consumer_binary_content";
+    public static final String CONFIG_CONSUMER_PIPELINED = "consumer_pipelined_fetch";
+    public static final String CONFIG_CONSUMER_MAX_RECORDS = "consumer_max_records";
+    public static final String CONFIG_CONSUMER_MAX_BYTES = "consumer_max_bytes";
+    public static final String CONFIG_CONSUMER_TIMEOUT = "consumer_request_timeout_ms";
+    public static final String CONFIG_CONSUMER_POOL_SIZE = "consumer_pool_size";
+    public static final String CONFIG_CONSUMER_RESUME = "consumer_resume_policy";
+    public static final String CONFIG_CONSUMER_SERIES_CAPACITY = "consumer_series_capacity";
+    public static final String CONFIG_CONSUMER_HTTP2 = "consumer_http2";
+    public static final String CONFIG_METRICS_PORT = "metrics_server_port";
+
+    /**
+     * Data reader. If pipelined, records are fetched from the server on a separate thread, so
+     * that the next request is already sent while the previous batch is being merged. With a pool
+     * size larger than one, the partitions of all topics are spread over that many consumer
+     * instances, each fetching on its own thread. This implies pipelined fetching. All threads are
+     * created by given executor factory.
+     */
+    public KafkaDataReader(ServerStatusListener listener, KafkaReader reader,
+            TaskExecutor.Factory executorFactory, String consumerGroup, String consumerInstance, int getLimit, long downloadRate, boolean persistentData, int dataDecayMs, boolean pipelined, int poolSize) {
+        this.metrics = new MonitorMetrics();
+        this.listener = new MetricsStatusListener(listener);
+        this.reader = reader;
+        this.metadataReader = null;
+        this.subscribedTopics = new HashSet<>();
+        this.availableTopics = new ArrayList<>();
+        this.getLimit = new AtomicInteger(getLimit);
+        this.getByteLimit = new AtomicLong(0L);
+        this.getTimeout = new AtomicLong(0L);
+
+        this.consumerGroup = consumerGroup;
+        this.consumerInstance = consumerInstance;
+
+        this.persistentData = persistentData;
+        this.dataDecayMs = dataDecayMs;
+
+        this.executorFactory = executorFactory;
+        mHandler = executorFactory.create("data-reader");
+
+        poolSize = Math.max(1, poolSize);
+        this.pipelined = pipelined || poolSize > 1;
+        this.pendingBatches = new AtomicInteger(0);
+        this.maxPendingBatches = MAX_PENDING_BATCHES * poolSize;
+        this.stateLock = new Object();
+        this.consumerState = null;
+        this.nextConsumer = 0;
+        this.checkpointStore = null;
+        this.resumePolicy = ResumePolicy.END;
+        this.store = new TimeSeriesStore(TimeSeriesStore.capacityFor(dataDecayMs));
+        this.dataChangeListeners = new CopyOnWriteArrayList<>();
+        registerGauges();
+
+        List<ConsumerInstance> consumerList = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            String instanceName = poolSize == 1 ? consumerInstance : consumerInstance + "-" + i;
+            consumerList.add(new ConsumerInstance(instanceName, this.pipelined));
+        }
+        consumers = Collections.unmodifiableList(consumerList);
+
+        logger.info("Started data read executor (pipelined: {}, consumers: {})", this.pipelined, poolSize);
+
+        connection = new KafkaConnectionChecker(reader, mHandler, this.listener, downloadRate * 5);
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (KafkaDataReader.this.reader.isConnected()) {
+                        KafkaDataReader.this.listener.updateServerStatus(ServerStatusListener.Status.CONNECTED);
+                        connection.didConnect();
+                    } else {
+                        KafkaDataReader.this.listener.updateServerStatus(ServerStatusListener.Status.DISCONNECTED);
+                        connection.didDisconnect(null);
+                    }
+                } catch (AuthenticationException ex) {
+                    connection.didDisconnect(ex);
+                }
+            }
+        });
+
+        synchronized (this) {
+            subscribeFuture = null;
+            setDownloadRate(downloadRate);
+        }
+        logger.info("Remote Config: Upload rate is '{}' sec per upload", downloadRate);
+    }
+
+    /** Set download rate in seconds. */
+    public final synchronized void setDownloadRate(long period) {
+        long newDownloadRate = period * 1000L;
+        if (this.downloadRate == newDownloadRate) {
+            return;
+        }
+        this.downloadRate = newDownloadRate;
+        for (ConsumerInstance consumer : consumers) {
+            consumer.schedule();
+        }
+    }
+
+    /** Upload rate in seconds. */
+    private synchronized long getDownloadRate() {
+        return this.downloadRate / 1000L;
+    }
+
+    /**
+     * Set the maximum number of records read in a single poll. After a full batch, the next batch
+     * is read immediately instead of after the download rate. Zero or less means no limit.
+     */
+    public void setGetLimit(int limit) {
+        getLimit.set(limit);
+    }
+
+    /**
+     * Set the maximum number of record bytes that the REST proxy returns in a single poll. Zero
+     * or less means the REST proxy default.
+     */
+    public void setGetByteLimit(long bytes) {
+        getByteLimit.set(bytes);
+    }
+
+    /**
+     * Set the maximum time in milliseconds that the REST proxy waits for records in a single
+     * poll. Zero or less means the REST proxy default.
+     */
+    public void setGetTimeout(long timeoutMs) {
+        getTimeout.set(timeoutMs);
+    }
+
+    /**
+     * Store consumed offsets in given checkpoint store, and resume from them according to given
+     * policy. This only affects topics that are added afterwards.
+     * @param store checkpoint store, or null to not store any offsets
+     * @param policy where to start reading newly assigned partitions
+     */
+    public void setOffsetCheckpoints(OffsetCheckpointStore store, ResumePolicy policy) {
+        synchronized (stateLock) {
+            this.checkpointStore = store;
+            this.resumePolicy = store != null ? policy : ResumePolicy.END;
+        }
+    }
+
+    /**
+     * Close the submitter eventually. This does not flush any caches.
+     */
+    @Override
+    public synchronized void close() {
+        for (ConsumerInstance consumer : consumers) {
+            consumer.close();
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mHandler.removeCallbacks(subscribeFuture);
+
+                OffsetCheckpointStore store = getCheckpointStore();
+                if (store != null) {
+                    store.save();
+                }
+
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        logger.warn("failed to close reader", e);
+                    }
+                }
+
+                subscribedTopics.clear();
+            }
+        });
+        mHandler.quitSafely();
+    }
+
+    /**
+     * Subscribe to given topics eventually. The partitions of each topic are retrieved from the
+     * server and spread over the consumer instances.
+     */
+    public void addTopics(final Set<AvroTopic> newTopics) throws IOException {
+        if (subscribeFuture != null) {
+            mHandler.removeCallbacks(subscribeFuture);
+        }
+        subscribeFuture = new Runnable() {
+            @Override
+            public void run() {
+                if (connection.isConnected()) {
+                    try {
+                        if (metadataReader == null) {
+                            metadataReader = reader.reader();
+
+                            availableTopics = filterTopics(metadataReader.topics());
+                            logger.info("{} topics available on server", availableTopics.size());
+                        }
+                        if (checkAvailableTopics(newTopics)) {
+                            for (AvroTopic topic : newTopics) {
+                                store.addTopic(topic.getName(), topic.getValueSchema());
+                            }
+                            assignPartitions(newTopics);
+                            subscribedTopics.addAll(newTopics);
+                        }
+                    } catch (IOException ex) {
+                        logger.error("Error trying ot subscribe to topics: ", ex);
+                    } catch (JSONException ex) {
+                        logger.error("Failed to convert a response to JSON!", ex);
+                    }
+                } else {
+                    mHandler.postDelayed(this, downloadRate);
+                }
+            }
+        };
+        mHandler.postDelayed(subscribeFuture, downloadRate);
+    }
+
+    /** Spread the partitions of given topics round-robin over the consumer instances. */
+    private void assignPartitions(Set<AvroTopic> newTopics) throws IOException, JSONException {
+        List<Set<AvroTopic>> topicAssignment = new ArrayList<>(consumers.size());
+        List<Set<TopicPartition>> partitionAssignment = new ArrayList<>(consumers.size());
+        for (int i = 0; i < consumers.size(); i++) {
+            topicAssignment.add(new HashSet<AvroTopic>());
+            partitionAssignment.add(new HashSet<TopicPartition>());
+        }
+
+        int numPartitions = 0;
+        for (AvroTopic topic : newTopics) {
+            List<Integer> partitions = metadataReader.partitions(topic.getName());
+            logger.info("Topic {} has {} partitions", topic.getName(), partitions.size());
+            for (Integer partition : partitions) {
+                int consumerIndex = nextConsumer;
+                nextConsumer = (nextConsumer + 1) % consumers.size();
+                topicAssignment.get(consumerIndex).add(topic);
+                partitionAssignment.get(consumerIndex).add(new TopicPartition(topic.getName(), partition));
+                numPartitions++;
+            }
+        }
+        logger.info("Spreading {} partitions over {} consumers", numPartitions, consumers.size());
+
+        for (int i = 0; i < consumers.size(); i++) {
+            if (!partitionAssignment.get(i).isEmpty()) {
+                consumers.get(i).assign(topicAssignment.get(i), partitionAssignment.get(i));
+            }
+        }
+    }
+
+    /**
+     * Check the connection status eventually.
+     */
+    public void checkConnection() {
+        connection.check();
+    }
+
+    /**
+     * Update whether the consumer is catching up, based on whether the last poll of any consumer
+     * instance reached its limits, and report any change to the listener.
+     * @param consumer consumer instance that made the poll
+     * @param result result of the last poll, or null if it failed
+     * @return whether the batch was full, so the next batch should be fetched immediately
+     */
+    private boolean updateConsumerState(ConsumerInstance consumer, ReadResult result) {
+        synchronized (stateLock) {
+            consumer.isFull = result != null && result.isLimitReached();
+            int numRecords = result != null ? result.getNumRecords() : 0;
+
+            boolean anyFull = false;
+            for (ConsumerInstance c : consumers) {
+                anyFull |= c.isFull;
+            }
+
+            ServerStatusListener.ConsumerState newState = anyFull
+                    ? ServerStatusListener.ConsumerState.CATCHING_UP
+                    : ServerStatusListener.ConsumerState.LIVE;
+            if (newState != consumerState) {
+                logger.info("Consumer state changed to {} after {} read {} records", newState, consumer.name, numRecords);
+                consumerState = newState;
+                listener.updateConsumerState(newState);
+            }
+            return consumer.isFull;
+        }
+    }
+
+    private OffsetCheckpointStore getCheckpointStore() {
+        synchronized (stateLock) {
+            return checkpointStore;
+        }
+    }
+
+    /**
+     * Offset to start reading a newly assigned partition from, according to the resume policy.
+     * @return offset of the next record to read, or null to read from the end
+     */
+    private Long resumeOffset(TopicPartition partition) {
+        synchronized (stateLock) {
+            switch (resumePolicy) {
+                case CHECKPOINT:
+                    return checkpointStore.getOffset(partition);
+                case DECAY_WINDOW:
+                    return checkpointStore.getOffsetAt(partition, System.currentTimeMillis() - dataDecayMs);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /** Store the offsets of the next records to read, after their records have been merged. */
+    private void commitOffsets(Map<TopicPartition, Long> offsets) {
+        OffsetCheckpointStore store = getCheckpointStore();
+        if (store != null && !offsets.isEmpty()) {
+            store.commit(offsets, System.currentTimeMillis());
+            store.saveIfDue(CHECKPOINT_INTERVAL_MS);
+        }
+    }
+
+    private boolean isCatchingUp() {
+        synchronized (stateLock) {
+            return consumerState == ServerStatusListener.ConsumerState.CATCHING_UP;
+        }
+    }
+
+    /**
+     * A consumer instance of the pool. It has its own topic reader and partition assignment, and
+     * polls the server in its own loop. In pipelined mode, it fetches on its own thread.
+     */
+    private final class ConsumerInstance {
+        private final String name;
+        private final TaskExecutor fetchHandler;
+        private final boolean ownThread;
+        private final Set<AvroTopic> topics;
+        private final Set<TopicPartition> partitions;
+        private KafkaTopicReader topicReader;
+        private Runnable downloadFuture;
+        /** Whether the last poll was full. Guarded by the state lock of the enclosing reader. */
+        private boolean isFull;
+
+        ConsumerInstance(String name, boolean ownThread) {
+            this.name = name;
+            this.topics = new HashSet<>();
+            this.partitions = new HashSet<>();
+            this.topicReader = null;
+            this.downloadFuture = null;
+            this.isFull = false;
+
+            this.ownThread = ownThread;
+            if (ownThread) {
+                fetchHandler = executorFactory.create("data-fetcher-" + name);
+            } else {
+                fetchHandler = mHandler;
+            }
+        }
+
+        /** Restart the download loop at the current download rate. */
+        void schedule() {
+            if (downloadFuture != null) {
+                fetchHandler.removeCallbacks(downloadFuture);
+            }
+            downloadFuture = new Runnable() {
+                @Override
+                public void run() {
+                    long nextDownload = downloadRate;
+                    if (!connection.isConnected()){
+                        checkConnection();
+                    } else if (topicReader != null && !partitions.isEmpty()) {
+                        if (pipelined) {
+                            nextDownload = prefetch();
+                        } else {
+                            nextDownload = read();
+                        }
+                    }
+                    fetchHandler.postDelayed(this, nextDownload);
+                }
+            };
+            fetchHandler.postDelayed(downloadFuture, downloadRate);
+        }
+
+        /**
+         * Add partitions to the assignment of this consumer eventually, and start reading them
+         * from their end. The consumer is created on first use.
+         */
+        void assign(final Set<AvroTopic> newTopics, final Set<TopicPartition> newPartitions) {
+            fetchHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (topicReader == null) {
+                            KafkaTopicReader newReader = reader.reader();
+                            newReader.close(consumerGroup, name);
+                            newReader.consumer(consumerGroup, name);
+                            topicReader = newReader;
+                        }
+                        Set<AvroTopic> assignedTopics = new HashSet<>(topics);
+                        assignedTopics.addAll(newTopics);
+                        Set<TopicPartition> assignedPartitions = new HashSet<>(partitions);
+                        assignedPartitions.addAll(newPartitions);
+
+                        // an assignment replaces any previous assignment
+                        topicReader.assignPartitions(assignedTopics, assignedPartitions);
+                        resume(newPartitions);
+
+                        topics.addAll(newTopics);
+                        partitions.addAll(newPartitions);
+                        logger.info("Consumer {} reads partitions {}", name, partitions);
+                    } catch (IOException ex) {
+                        logger.error("Error trying to assign partitions to consumer {}: ", name, ex);
+                    }
+                }
+            });
+        }
+
+        /** Seek newly assigned partitions to their resume offset, or to their end. */
+        private void resume(Set<TopicPartition> newPartitions) throws IOException {
+            Map<TopicPartition, Long> offsets = new HashMap<>();
+            Set<TopicPartition> endPartitions = new HashSet<>();
+            for (TopicPartition partition : newPartitions) {
+                Long offset = resumeOffset(partition);
+                if (offset != null) {
+                    offsets.put(partition, offset);
+                } else {
+                    endPartitions.add(partition);
+                }
+            }
+            if (!endPartitions.isEmpty()) {
+                topicReader.seekEnd(endPartitions);
+            }
+            if (!offsets.isEmpty()) {
+                logger.info("Consumer {} resumes partitions from offsets {}", name, offsets);
+                topicReader.seek(offsets);
+            }
+        }
+
+        /** Close the consumer eventually, and stop its thread. */
+        void close() {
+            fetchHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    fetchHandler.removeCallbacks(downloadFuture);
+
+                    if (topicReader != null) {
+                        try {
+                            topicReader.close();
+                        } catch (IOException e) {
+                            logger.warn("failed to close topicReader", e);
+                        }
+                    }
+
+                    partitions.clear();
+                    topics.clear();
+                }
+            });
+            if (ownThread) {
+                fetchHandler.quitSafely();
+            }
+        }
+
+        /**
+         * Fetch a batch of records and merge it into the connection data right away.
+         * @return delay until the next fetch, in milliseconds
+         */
+        long read() {
+            SampleBatch batch = store.createBatch();
+            Map<TopicPartition, Long> offsets = new HashMap<>();
+            ReadResult result = fetch(batch, offsets);
+            if (result != null) {
+                merge(batch);
+                commitOffsets(offsets);
+            }
+            return updateConsumerState(this, result) ? 0L : downloadRate;
+        }
+
+        /**
+         * Fetch a batch of records on the fetch thread and hand it over to the data-reader thread
+         * to be merged, so that the next request can be sent while the batch is being merged. The
+         * next fetch is scheduled at a fixed rate from the start of this one, or immediately if
+         * this one returned a full batch. If too many batches are still waiting to be merged, no
+         * request is sent until the merge has caught up.
+         * @return delay until the next fetch, in milliseconds
+         */
+        long prefetch() {
+            if (pendingBatches.get() >= maxPendingBatches) {
+                logger.debug("Merging lags behind fetching; postponing next fetch of {}", name);
+                if (isCatchingUp()) {
+                    return Math.min(CATCH_UP_MERGE_WAIT_MS, downloadRate);
+                } else {
+                    return downloadRate;
+                }
+            }
+            long fetchStart = System.currentTimeMillis();
+            final SampleBatch batch = store.createBatch();
+            final Map<TopicPartition, Long> offsets = new HashMap<>();
+            ReadResult result = fetch(batch, offsets);
+            if (result != null) {
+                pendingBatches.incrementAndGet();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            merge(batch);
+                            commitOffsets(offsets);
+                        } finally {
+                            pendingBatches.decrementAndGet();
+                        }
+                    }
+                });
+            }
+            if (updateConsumerState(this, result)) {
+                return 0L;
+            }
+            return Math.max(0L, downloadRate - (System.currentTimeMillis() - fetchStart));
+        }
+
+        /**
+         * Fetch a batch of records from the assigned partitions, as samples per topic, within the
+         * configured limits. This only accesses the topic reader, so it does not hold any locks on
+         * the connection data.
+         * @param batch batch to add the samples to
+         * @param offsets map to add the offset of the next record to read per partition to
+         * @return result of the poll, or null if the records could not be read
+         */
+        private ReadResult fetch(final SampleBatch batch, final Map<TopicPartition, Long> offsets) {
+            ReadLimits limits = new ReadLimits(getLimit.get(), getByteLimit.get(), getTimeout.get());
+            try {
+                ReadResult result;
+                // process the new data per topic, while it is being received
+                if (reader.hasBinaryContent()) {
+                    result = topicReader.readSamples(limits, store.getSchemas(), new SampleListener() {
+                        @Override
+                        public void onSample(String topic, int partition, long offset, Sample sample) {
+                            batch.add(topic, sample);
+                            offsets.put(new TopicPartition(topic, partition), offset + 1);
+                        }
+                    });
+                } else {
+                    result = topicReader.read(limits, new RecordListener<JSONObject, JSONObject>() {
+                        @Override
+                        public void onRecord(String topic, int partition, long offset, JSONObject key, JSONObject value) throws JSONException {
+                            if (topic == null || key == null || value == null) {
+                                throw new JSONException("Incomplete record at offset " + offset + " of " + topic + "-" + partition);
+                            }
+                            batch.add(topic, key, value);
+                            offsets.put(new TopicPartition(topic, partition), offset + 1);
+                        }
+                    });
+                }
+                recordPoll(result, batch);
+                return result;
+            } catch (IOException ex) {
+                logger.error("Failed to read!", ex);
+            } catch (JSONException ex) {
+                logger.error("Failed to convert a response to JSON!", ex);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Merge a fetched batch of samples into the time series store. Only the store is locked, so
+     * fetches and their consumer state updates continue while a batch is merged.
+     */
+    private void merge(SampleBatch batch) {
+        // status update; map by user ID --> connections
+        for (Map.Entry<String, Integer> topicSize : batch.getTopicSizes().entrySet()) {
+            listener.updateRecordsRead(topicSize.getKey(), topicSize.getValue());
+            logger.info("Number of values read from topic {}: {}", topicSize.getKey(), topicSize.getValue());
+        }
+
+        synchronized (store) {
+            if (!persistentData) {
+                long decayStart = System.nanoTime();
+                store.removeReceivedBefore(System.currentTimeMillis() - dataDecayMs);
+                metrics.recordLatency(MonitorMetrics.LATENCY_DECAY, System.nanoTime() - decayStart);
+            }
+            long ingestStart = System.nanoTime();
+            store.addAll(batch);
+            metrics.recordLatency(MonitorMetrics.LATENCY_INGEST, System.nanoTime() - ingestStart);
+        }
+
+        DataChange change = store.publish();
+        if (change != null) {
+            for (DataChangeListener dataChangeListener : dataChangeListeners) {
+                dataChangeListener.onDataChanged(change);
+            }
+        }
+    }
+
+    /**
+     * Record the metrics of a successful poll. The response bytes are attributed to topics in
+     * proportion to the number of records read from them.
+     */
+    private void recordPoll(ReadResult result, SampleBatch batch) {
+        if (result.getRequestNanos() > 0L) {
+            metrics.recordLatency(MonitorMetrics.LATENCY_HTTP, result.getRequestNanos());
+        }
+        metrics.recordLatency(MonitorMetrics.LATENCY_DECODE, result.getDecodeNanos());
+        int numRecords = result.getNumRecords();
+        if (numRecords == 0) {
+            return;
+        }
+        for (Map.Entry<String, Integer> topicSize : batch.getTopicSizes().entrySet()) {
+            int topicRecords = topicSize.getValue();
+            metrics.markRead(topicSize.getKey(), topicRecords,
+                    result.getNumBytes() * topicRecords / numRecords,
+                    result.getNumWireBytes() * topicRecords / numRecords);
+        }
+    }
+
+    private void registerGauges() {
+        metrics.registerGauge("pending_batches", new Gauge() {
+            @Override
+            public long getValue() {
+                return pendingBatches.get();
+            }
+        });
+        metrics.registerGauge("participants", new Gauge() {
+            @Override
+            public long getValue() {
+                return store.getNumUsers();
+            }
+        });
+        metrics.registerGauge("retained_samples", new Gauge() {
+            @Override
+            public long getValue() {
+                return store.getNumSamples();
+            }
+        });
+        metrics.registerGauge("sample_bytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return store.getAllocatedBytes();
+            }
+        });
+        metrics.registerGauge("sample_bytes_avg_per_participant", new Gauge() {
+            @Override
+            public long getValue() {
+                int numUsers = store.getNumUsers();
+                return numUsers > 0 ? store.getAllocatedBytes() / numUsers : 0L;
+            }
+        });
+    }
+
+    /**
+     * Passes on status updates, while keeping track of the server status, the consumer state and
+     * the number of reconnects in the metrics.
+     */
+    private final class MetricsStatusListener implements ServerStatusListener {
+        private final ServerStatusListener listener;
+        private Status lastStatus;
+
+        MetricsStatusListener(ServerStatusListener listener) {
+            this.listener = listener;
+            this.lastStatus = null;
+        }
+
+        @Override
+        public void updateServerStatus(Status status) {
+            synchronized (this) {
+                if (status == Status.CONNECTED && lastStatus != null
+                        && lastStatus != Status.CONNECTED && lastStatus != Status.CONNECTING) {
+                    metrics.incrementCounter("reconnects");
+                }
+                lastStatus = status;
+            }
+            metrics.setState("server_status", status.name());
+            listener.updateServerStatus(status);
+        }
+
+        @Override
+        public void updateConsumerState(ConsumerState state) {
+            metrics.setState("consumer_state", state.name());
+            listener.updateConsumerState(state);
+        }
+
+        @Override
+        public void updateRecordsRead(String topicName, int numberOfRecords) {
+            listener.updateRecordsRead(topicName, numberOfRecords);
+        }
+    }
+
+    /** Metrics of reading and storing the data. */
+    public MonitorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the maximum number of samples kept per user and topic, as an explicit bound on memory.
+     * With a capacity of zero or less, series hold the whole decay window of any topic sampled at
+     * up to {@link TimeSeriesStore#MAX_SAMPLE_RATE} Hz. This only applies to users and topics that
+     * no samples were received from yet.
+     */
+    public void setSeriesCapacity(int capacity) {
+        store.setCapacity(capacity > 0 ? capacity : TimeSeriesStore.capacityFor(dataDecayMs));
+    }
+
+    /**
+     * Add a listener to be notified of the changes in each poll. Listeners should be removed again
+     * with {@link #removeDataChangeListener(DataChangeListener)}.
+     */
+    public void addDataChangeListener(DataChangeListener dataChangeListener) {
+        dataChangeListeners.add(dataChangeListener);
+    }
+
+    public void removeDataChangeListener(DataChangeListener dataChangeListener) {
+        dataChangeListeners.remove(dataChangeListener);
+    }
+
+    /** Store with the samples per user and topic. */
+    public TimeSeriesStore getStore() {
+        return store;
+    }
+
+    /**
+     * Latest snapshot of the samples per user and topic. This is updated after each poll and can
+     * be read without locking. If the version of the snapshot did not change, neither did the
+     * samples.
+     */
+    public StoreSnapshot getSnapshot() {
+        return store.getSnapshot();
+    }
+
+    public HashSet<String> getConnections() {
+        return new HashSet<>(getSnapshot().getUsers());
+    }
+    public HashSet<String> getTopics(String userId) {
+        return new HashSet<>(getSnapshot().getTopics(userId));
+    }
+    public Map<String, TimeSeries> getTopicData(String userId) {
+        return getSnapshot().getSeries(userId);
+    }
+    public TimeSeries getData(String userId, String topic) {
+        return getSnapshot().getSeries(userId, topic);
+    }
+    public Map<String, DeviceSummary> getDeviceSummaries(String userId) {
+        return getSnapshot().getDeviceSummaries(userId);
+    }
+
+
+
+    /** Immediately read from given topics, without any error recovery. */
+    private void doImmediateRead(Set<AvroTopic> topics) throws IOException {
+        for (ConsumerInstance consumer : consumers) {
+            if (consumer.topicReader != null) {
+                consumer.read();
+            }
+        }
+    }
+
+    public <V extends SpecificRecord> AvroTopic<ObservationKey, V> createTopic(String name, Class<V> valueClass) {
+        try {
+            Method method = valueClass.getMethod("getClassSchema");
+            Schema valueSchema = (Schema) method.invoke(null);
+            return new AvroTopic<>(
+                    name, ObservationKey.getClassSchema(), valueSchema, ObservationKey.class, valueClass);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            logger.error("Error creating topic " + name, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Topics of all devices that the monitor displays. */
+    public Set<AvroTopic> createMonitorTopics() {
+        Set<AvroTopic> topics = new HashSet<>();
+        topics.add(createTopic("android_phone_acceleration", PhoneAcceleration.class));
+        topics.add(createTopic("android_phone_battery_level", PhoneBatteryLevel.class));
+        topics.add(createTopic("android_empatica_e4_acceleration", EmpaticaE4Acceleration.class));
+        topics.add(createTopic("android_empatica_e4_battery_level", EmpaticaE4BatteryLevel.class));
+        topics.add(createTopic("android_empatica_e4_blood_volume_pulse", EmpaticaE4BloodVolumePulse.class));
+        topics.add(createTopic("android_empatica_e4_electrodermal_activity", EmpaticaE4ElectroDermalActivity.class));
+        topics.add(createTopic("android_biovotion_vsm1_acceleration", PhoneAcceleration.class));
+        topics.add(createTopic("android_biovotion_vsm1_battery_level", BiovotionVsm1BatteryLevel.class));
+        topics.add(createTopic("android_biovotion_vsm1_ppg_raw", BiovotionVsm1PpgRaw.class));
+        return topics;
+    }
+
+
+    /**
+     * Topic Helpers
+     */
+
+    private ArrayList<String> filterTopics(JSONArray topics) throws JSONException {
+        ArrayList<String> filteredTopics = new ArrayList<>();
+        for (int i = 0; i < topics.length(); i++) {
+            filteredTopics.add(topics.getString(i));
+        }
+        for (Iterator<String> iterator = filteredTopics.iterator(); iterator.hasNext(); ) {
+            String topic = iterator.next();
+            if (topic.contains("_1") || topic.contains("org.radarcns.stream") || topic.equals("_schemas"))
+                iterator.remove();
+        }
+        return filteredTopics;
+    }
+
+    public ArrayList<String> getAvailableTopics() {
+        return availableTopics;
+    }
+
+    public boolean checkAvailableTopics(String topic) {
+        return availableTopics.contains(topic);
+    }
+    public boolean checkAvailableTopics(Set<AvroTopic> topics) {
+        boolean isAvailable = true;
+        for (AvroTopic t : topics) {
+            if (!availableTopics.contains(t.getName()))
+                isAvailable = false;
+        }
+        return isAvailable;
+    }
+}
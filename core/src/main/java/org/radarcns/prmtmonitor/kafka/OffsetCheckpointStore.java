@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.kafka;
+
+import org.radarcns.prmtmonitor.consumer.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores consumer offsets per topic partition in a file, so that a restarted consumer can resume
+ * where it left off. Next to the latest offset, a history of offsets covering a configured time
+ * span is kept, to look up approximately which offset was consumed at a given time in the past.
+ *
+ * The file contains one tab-separated line per history entry: topic, partition, commit time in
+ * milliseconds and the offset of the next record to consume. It is written to a temporary file
+ * first and then renamed, so a crash while saving does not corrupt the previous checkpoint.
+ */
+public class OffsetCheckpointStore {
+    private static final Logger logger = LoggerFactory.getLogger(OffsetCheckpointStore.class);
+
+    /** Minimum time between two history entries of a single partition. */
+    private static final long HISTORY_RESOLUTION_MS = 10_000L;
+
+    private final File file;
+    private final long historyMs;
+    private final Map<TopicPartition, List<long[]>> history;
+    private boolean isLoaded;
+    private boolean isDirty;
+    private long lastSave;
+
+    /**
+     * Checkpoint store.
+     * @param file file to store the checkpoints in
+     * @param historyMs time span of offset history to keep, in milliseconds
+     */
+    public OffsetCheckpointStore(File file, long historyMs) {
+        this.file = file;
+        this.historyMs = historyMs;
+        this.history = new HashMap<>();
+        this.isLoaded = false;
+        this.isDirty = false;
+        this.lastSave = 0L;
+    }
+
+    /**
+     * Store the offsets of the next records to consume.
+     * @param offsets offset per topic partition
+     * @param time time that the offsets were committed, in milliseconds
+     */
+    public synchronized void commit(Map<TopicPartition, Long> offsets, long time) {
+        ensureLoaded();
+        for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+            addEntry(offset.getKey(), time, offset.getValue());
+        }
+        if (!offsets.isEmpty()) {
+            isDirty = true;
+        }
+    }
+
+    /**
+     * Latest committed offset of a topic partition.
+     * @return offset of the next record to consume, or null if no offset was committed
+     */
+    public synchronized Long getOffset(TopicPartition partition) {
+        ensureLoaded();
+        List<long[]> entries = history.get(partition);
+        if (entries == null) {
+            return null;
+        }
+        return entries.get(entries.size() - 1)[1];
+    }
+
+    /**
+     * Offset of a topic partition as committed at given time. This is the latest offset committed
+     * at or before that time, or the earliest offset still known if all offsets were committed
+     * after it. If even the latest offset was committed before that time, the consumer was not
+     * running since, and all records after that offset may be older than that time, so no offset
+     * is returned.
+     * @param time time in milliseconds
+     * @return offset of the next record to consume, or null if no offset was committed at or
+     *         after given time
+     */
+    public synchronized Long getOffsetAt(TopicPartition partition, long time) {
+        ensureLoaded();
+        List<long[]> entries = history.get(partition);
+        if (entries == null || entries.get(entries.size() - 1)[0] < time) {
+            return null;
+        }
+        long offset = entries.get(0)[1];
+        for (long[] entry : entries) {
+            if (entry[0] > time) {
+                break;
+            }
+            offset = entry[1];
+        }
+        return offset;
+    }
+
+    /**
+     * Save the checkpoints if they changed and were last saved at least given time ago.
+     * @param intervalMs minimum time between saves, in milliseconds
+     */
+    public synchronized void saveIfDue(long intervalMs) {
+        if (isDirty && System.currentTimeMillis() - lastSave >= intervalMs) {
+            save();
+        }
+    }
+
+    /** Save the checkpoints if they changed. Failures are logged. */
+    public synchronized void save() {
+        if (!isDirty) {
+            return;
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8)) {
+            for (Map.Entry<TopicPartition, List<long[]>> partition : history.entrySet()) {
+                for (long[] entry : partition.getValue()) {
+                    writer.write(partition.getKey().getTopic());
+                    writer.write('\t');
+                    writer.write(Integer.toString(partition.getKey().getPartition()));
+                    writer.write('\t');
+                    writer.write(Long.toString(entry[0]));
+                    writer.write('\t');
+                    writer.write(Long.toString(entry[1]));
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Failed to write offset checkpoints to {}", tmpFile, ex);
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            logger.error("Failed to replace offset checkpoints {}", file);
+            return;
+        }
+        isDirty = false;
+        lastSave = System.currentTimeMillis();
+    }
+
+    private void addEntry(TopicPartition partition, long time, long offset) {
+        List<long[]> entries = history.get(partition);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            history.put(partition, entries);
+        }
+        int size = entries.size();
+        // the last entry always holds the latest offset, until it is far enough from the previous
+        if (size >= 2 && time - entries.get(size - 2)[0] < HISTORY_RESOLUTION_MS) {
+            entries.set(size - 1, new long[] {time, offset});
+        } else {
+            entries.add(new long[] {time, offset});
+        }
+        // keep a single entry before the history window
+        while (entries.size() > 2 && entries.get(1)[0] <= time - historyMs) {
+            entries.remove(0);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+        isLoaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    logger.warn("Skipping malformed offset checkpoint '{}'", line);
+                    continue;
+                }
+                addEntry(new TopicPartition(fields[0], Integer.parseInt(fields[1])),
+                        Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+            }
+            logger.info("Loaded offset checkpoints of {} partitions", history.size());
+        } catch (IOException | NumberFormatException ex) {
+            logger.error("Failed to read offset checkpoints from {}", file, ex);
+            history.clear();
+        }
+    }
+}
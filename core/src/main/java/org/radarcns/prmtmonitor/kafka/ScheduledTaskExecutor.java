@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task executor for a plain JVM, backed by a single-threaded scheduled executor.
+ */
+public class ScheduledTaskExecutor implements TaskExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledTaskExecutor.class);
+
+    /** Creates a scheduled task executor per name. */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public TaskExecutor create(String name) {
+            return new ScheduledTaskExecutor(name);
+        }
+    };
+
+    private final String name;
+    private final ScheduledThreadPoolExecutor executor;
+    /** Pending posts of each task. */
+    private final Map<Runnable, List<PostedTask>> posted;
+
+    public ScheduledTaskExecutor(final String name) {
+        this.name = name;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name);
+            }
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.posted = new IdentityHashMap<>();
+    }
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0L);
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMs) {
+        PostedTask postedTask = new PostedTask(task);
+        try {
+            postedTask.future = executor.schedule(postedTask, Math.max(0L, delayMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Executor {} has quit; not running task {}", name, task);
+            return;
+        }
+        List<PostedTask> taskPosts = posted.get(task);
+        if (taskPosts == null) {
+            taskPosts = new ArrayList<>(1);
+            posted.put(task, taskPosts);
+        }
+        taskPosts.add(postedTask);
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        List<PostedTask> taskPosts = posted.remove(task);
+        if (taskPosts != null) {
+            for (PostedTask postedTask : taskPosts) {
+                postedTask.future.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void quitSafely() {
+        // like a Handler looper quitting safely, run the tasks that are already due, including
+        // posted cleanup, but discard the tasks that are delayed to a later time
+        for (List<PostedTask> taskPosts : posted.values()) {
+            for (PostedTask postedTask : taskPosts) {
+                if (postedTask.future.getDelay(TimeUnit.MILLISECONDS) > 0L) {
+                    postedTask.future.cancel(false);
+                }
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Wait until the tasks that were still due when quitting have finished.
+     * @return whether they finished within given timeout
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private synchronized void didStart(PostedTask postedTask) {
+        List<PostedTask> taskPosts = posted.get(postedTask.task);
+        if (taskPosts != null && taskPosts.remove(postedTask) && taskPosts.isEmpty()) {
+            posted.remove(postedTask.task);
+        }
+    }
+
+    /** A single post of a task. */
+    private final class PostedTask implements Runnable {
+        private final Runnable task;
+        /** Guarded by the enclosing executor. */
+        private ScheduledFuture<?> future;
+
+        PostedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            didStart(this);
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.error("Task {} failed on executor {}", task, name, ex);
+            }
+        }
+    }
+}
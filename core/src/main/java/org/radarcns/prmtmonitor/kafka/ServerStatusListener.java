@@ -21,7 +21,14 @@ public interface ServerStatusListener {
         CONNECTING, CONNECTED, DISCONNECTED, UPLOADING, DISABLED, READY, UPLOADING_FAILED, UNAUTHORIZED
     }
 
+    /** Whether the consumer is keeping up with new data or still reading a backlog. */
+    enum ConsumerState {
+        LIVE, CATCHING_UP
+    }
+
     void updateServerStatus(Status status);
 
+    void updateConsumerState(ConsumerState state);
+
     void updateRecordsRead(String topicName, int numberOfRecords);
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.kafka;
+
+/**
+ * Runs tasks one at a time on a single thread, possibly after a delay. This has the semantics of
+ * an Android Handler with its own looper thread, so the data reader can run both on Android and
+ * on a plain JVM.
+ */
+public interface TaskExecutor {
+    /** Run given task as soon as possible. */
+    void post(Runnable task);
+
+    /** Run given task after given delay in milliseconds. */
+    void postDelayed(Runnable task, long delayMs);
+
+    /** Remove all pending posts of given task. A task that is already running is not stopped. */
+    void removeCallbacks(Runnable task);
+
+    /**
+     * Stop the executor. Tasks that are already due are still run, but delayed tasks are
+     * discarded, and no new tasks are accepted.
+     */
+    void quitSafely();
+
+    /** Creates executors, each with its own thread. */
+    interface Factory {
+        /**
+         * Create a new executor and start its thread.
+         * @param name thread name
+         */
+        TaskExecutor create(String name);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed, exponentially growing buckets. Bucket {@code i} counts durations
+ * of at most 2<sup>i</sup> microseconds, up to about two minutes. Recording a duration only
+ * increments a few atomic counters, so it can be done on every poll without any locking.
+ * Percentiles are estimated as the upper bound of the bucket they fall into, so they are
+ * accurate to within a factor two.
+ */
+public final class Histogram {
+    static final int NUM_BUCKETS = 28;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sumMicros;
+    private final AtomicLong maxMicros;
+
+    public Histogram() {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+        count = new AtomicLong(0L);
+        sumMicros = new AtomicLong(0L);
+        maxMicros = new AtomicLong(0L);
+    }
+
+    /** Record a duration in nanoseconds. */
+    public void record(long durationNanos) {
+        long micros = Math.max(0L, durationNanos / 1000L);
+        buckets.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    private static int bucket(long micros) {
+        if (micros <= 1L) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros - 1L), NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Summary of all durations recorded so far. Concurrent updates may or may not be included.
+     */
+    public MetricsSnapshot.Latency summarize() {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long max = maxMicros.get();
+        return new MetricsSnapshot.Latency(total,
+                total > 0L ? sumMicros.get() / 1000d / total : 0d,
+                percentile(counts, total, 0.5, max),
+                percentile(counts, total, 0.9, max),
+                percentile(counts, total, 0.99, max),
+                max / 1000d);
+    }
+
+    /** Upper bound of the bucket containing given quantile, in milliseconds. */
+    private static double percentile(long[] counts, long total, double quantile, long maxMicros) {
+        if (total == 0L) {
+            return 0d;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long cumulative = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return Math.min(1L << i, maxMicros) / 1000d;
+            }
+        }
+        return maxMicros / 1000d;
+    }
+}
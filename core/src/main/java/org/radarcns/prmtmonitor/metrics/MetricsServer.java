@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP server that serves {@link MonitorMetrics} in the Prometheus text format on
+ * {@code GET /metrics}. It serves one request at a time on a single thread, which suffices for
+ * periodic scrapes and keeps the footprint small on a tablet. The formatted metrics are reused
+ * for all scrapes within a second of each other.
+ */
+public class MetricsServer implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+
+    private static final long REFRESH_INTERVAL_MS = 1000L;
+    private static final int SOCKET_TIMEOUT_MS = 5000;
+    private static final int MAX_REQUEST_LINE = 1024;
+    private static final byte[] NOT_FOUND = ("HTTP/1.1 404 Not Found\r\n"
+            + "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] METHOD_NOT_ALLOWED = ("HTTP/1.1 405 Method Not Allowed\r\n"
+            + "Allow: GET, HEAD\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final MonitorMetrics metrics;
+    private final InetSocketAddress address;
+    private final PrometheusFormatter formatter;
+    private final byte[] requestLine;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean isClosed;
+    private Thread thread;
+    private long lastFormatTime;
+
+    /**
+     * Metrics server.
+     * @param metrics metrics to serve
+     * @param address address to listen on
+     */
+    public MetricsServer(MonitorMetrics metrics, InetSocketAddress address) {
+        this.metrics = metrics;
+        this.address = address;
+        this.formatter = new PrometheusFormatter();
+        this.requestLine = new byte[MAX_REQUEST_LINE];
+        this.serverSocket = null;
+        this.isClosed = false;
+        this.lastFormatTime = -1L;
+    }
+
+    /** Start listening on a background thread. */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this, "metrics-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop listening. */
+    public synchronized void stop() {
+        isClosed = true;
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                logger.warn("Failed to close metrics server", ex);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(true);
+            socket.bind(address);
+            serverSocket = socket;
+            if (isClosed) {
+                return;
+            }
+            logger.info("Serving metrics on {}", socket.getLocalSocketAddress());
+            while (!isClosed) {
+                try (Socket client = socket.accept()) {
+                    client.setSoTimeout(SOCKET_TIMEOUT_MS);
+                    handle(client);
+                } catch (SocketException ex) {
+                    if (!isClosed) {
+                        logger.warn("Metrics request failed: {}", ex.toString());
+                    }
+                } catch (IOException ex) {
+                    logger.warn("Metrics request failed: {}", ex.toString());
+                }
+            }
+        } catch (IOException ex) {
+            if (!isClosed) {
+                logger.error("Cannot serve metrics on {}", address, ex);
+            }
+        }
+    }
+
+    private void handle(Socket client) throws IOException {
+        int length = readRequestLine(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        boolean isHead = startsWith(length, "HEAD ");
+        if (!isHead && !startsWith(length, "GET ")) {
+            out.write(METHOD_NOT_ALLOWED);
+        } else if (!startsWith(length, isHead ? "HEAD /metrics " : "GET /metrics ")) {
+            out.write(NOT_FOUND);
+        } else {
+            long now = System.currentTimeMillis();
+            if (lastFormatTime == -1L || now - lastFormatTime >= REFRESH_INTERVAL_MS) {
+                formatter.format(metrics.snapshot());
+                lastFormatTime = now;
+            }
+            out.write(("HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: text/plain; version=0.0.4\r\n"
+                    + "Content-Length: " + formatter.getLength() + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            if (!isHead) {
+                out.write(formatter.getBytes(), 0, formatter.getLength());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read the request line into the reusable buffer and skip the request headers.
+     * @return length of the request line
+     */
+    private int readRequestLine(InputStream in) throws IOException {
+        int length = 0;
+        int lineLength = 0;
+        boolean isFirstLine = true;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                if (lineLength == 0) {
+                    break;
+                }
+                isFirstLine = false;
+                lineLength = 0;
+            } else if (c != '\r') {
+                if (isFirstLine && length < requestLine.length) {
+                    requestLine[length++] = (byte) c;
+                }
+                lineLength++;
+            }
+        }
+        return length;
+    }
+
+    private boolean startsWith(int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (requestLine[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** Immutable summary of the {@link MonitorMetrics} at a single point in time. */
+public final class MetricsSnapshot {
+    private final long timeMs;
+    private final Map<String, TopicRate> topics;
+    private final Map<String, Latency> latencies;
+    private final Map<String, Long> gauges;
+    private final Map<String, Long> counters;
+    private final Map<String, String> states;
+
+    MetricsSnapshot(long timeMs, Map<String, TopicRate> topics, Map<String, Latency> latencies,
+            Map<String, Long> gauges, Map<String, Long> counters, Map<String, String> states) {
+        this.timeMs = timeMs;
+        this.topics = Collections.unmodifiableMap(topics);
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.counters = Collections.unmodifiableMap(counters);
+        this.states = Collections.unmodifiableMap(states);
+    }
+
+    /** Time that the snapshot was taken, in milliseconds. */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    /** Read rates per topic. */
+    public Map<String, TopicRate> getTopics() {
+        return topics;
+    }
+
+    /** Latency per phase, see the {@code LATENCY_*} constants of {@link MonitorMetrics}. */
+    public Map<String, Latency> getLatencies() {
+        return latencies;
+    }
+
+    /** Value per gauge. */
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    /** Number of events per counter. */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /** Current value per state. */
+    public Map<String, String> getStates() {
+        return states;
+    }
+
+    /** Records and bytes read from a single topic. */
+    public static final class TopicRate {
+        private final long totalRecords;
+        private final long totalBytes;
+        private final long totalWireBytes;
+        private final double recordsPerSecond;
+        private final double bytesPerSecond;
+        private final double wireBytesPerSecond;
+
+        TopicRate(long totalRecords, long totalBytes, long totalWireBytes,
+                double recordsPerSecond, double bytesPerSecond, double wireBytesPerSecond) {
+            this.totalRecords = totalRecords;
+            this.totalBytes = totalBytes;
+            this.totalWireBytes = totalWireBytes;
+            this.recordsPerSecond = recordsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.wireBytesPerSecond = wireBytesPerSecond;
+        }
+
+        public long getTotalRecords() {
+            return totalRecords;
+        }
+
+        /** Total response bytes after decompression, as attributed to this topic. */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * Total response bytes as received before decompression, as attributed to this topic.
+         */
+        public long getTotalWireBytes() {
+            return totalWireBytes;
+        }
+
+        /** Records per second over the last minute. */
+        public double getRecordsPerSecond() {
+            return recordsPerSecond;
+        }
+
+        /** Response bytes per second after decompression over the last minute. */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /** Response bytes per second before decompression over the last minute. */
+        public double getWireBytesPerSecond() {
+            return wireBytesPerSecond;
+        }
+    }
+
+    /** Latency distribution of a single phase, in milliseconds. */
+    public static final class Latency {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Latency(long count, double mean, double p50, double p90, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the hot paths of the monitor: records and bytes read per topic, latencies of each
+ * phase of a poll, gauges such as queue depths and memory use, event counters and states.
+ * Updates use atomic counters and fixed-size histograms only, so metrics can stay enabled in
+ * production. This class is thread-safe.
+ */
+public class MonitorMetrics {
+    /** Time until the response headers of a records request are received. */
+    public static final String LATENCY_HTTP = "http";
+    /** Time to read and decode a records response body. */
+    public static final String LATENCY_DECODE = "decode";
+    /** Time to add a batch of samples to the store. */
+    public static final String LATENCY_INGEST = "ingest";
+    /** Time to remove expired samples from the store. */
+    public static final String LATENCY_DECAY = "decay";
+
+    private final ConcurrentMap<String, TopicMeters> topics;
+    private final Map<String, Histogram> latencies;
+    private final ConcurrentMap<String, Gauge> gauges;
+    private final ConcurrentMap<String, AtomicLong> counters;
+    private final ConcurrentMap<String, String> states;
+
+    public MonitorMetrics() {
+        topics = new ConcurrentHashMap<>();
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        for (String phase : new String[] {LATENCY_HTTP, LATENCY_DECODE, LATENCY_INGEST, LATENCY_DECAY}) {
+            histograms.put(phase, new Histogram());
+        }
+        latencies = Collections.unmodifiableMap(histograms);
+        gauges = new ConcurrentHashMap<>();
+        counters = new ConcurrentHashMap<>();
+        states = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Count records and response bytes read from a topic.
+     * @param numBytes response bytes after decompression
+     * @param numWireBytes response bytes as received, before decompression
+     */
+    public void markRead(String topic, long numRecords, long numBytes, long numWireBytes) {
+        TopicMeters meters = topics.get(topic);
+        if (meters == null) {
+            TopicMeters newMeters = new TopicMeters();
+            meters = topics.putIfAbsent(topic, newMeters);
+            if (meters == null) {
+                meters = newMeters;
+            }
+        }
+        meters.records.mark(numRecords);
+        meters.bytes.mark(numBytes);
+        meters.wireBytes.mark(numWireBytes);
+    }
+
+    /**
+     * Record the duration of a phase.
+     * @param phase one of the {@code LATENCY_*} phases
+     * @param durationNanos duration in nanoseconds
+     */
+    public void recordLatency(String phase, long durationNanos) {
+        Histogram histogram = latencies.get(phase);
+        if (histogram == null) {
+            throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+        histogram.record(durationNanos);
+    }
+
+    /** Register a gauge, replacing any gauge with the same name. */
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /** Increment a counter, creating it if needed. */
+    public void incrementCounter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong(0L);
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /** Set the current value of a state, such as the consumer state. */
+    public void setState(String name, String value) {
+        states.put(name, value);
+    }
+
+    /** Summarize all metrics. This does not reset any of them. */
+    public MetricsSnapshot snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, MetricsSnapshot.TopicRate> topicRates = new HashMap<>();
+        for (Map.Entry<String, TopicMeters> topic : topics.entrySet()) {
+            TopicMeters meters = topic.getValue();
+            topicRates.put(topic.getKey(), new MetricsSnapshot.TopicRate(
+                    meters.records.getTotal(), meters.bytes.getTotal(),
+                    meters.wireBytes.getTotal(), meters.records.getRate(now),
+                    meters.bytes.getRate(now), meters.wireBytes.getRate(now)));
+        }
+        Map<String, MetricsSnapshot.Latency> latencySummaries = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+            latencySummaries.put(latency.getKey(), latency.getValue().summarize());
+        }
+        Map<String, Long> gaugeValues = new HashMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            gaugeValues.put(gauge.getKey(), gauge.getValue().getValue());
+        }
+        Map<String, Long> counterValues = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            counterValues.put(counter.getKey(), counter.getValue().get());
+        }
+        return new MetricsSnapshot(now, topicRates, latencySummaries, gaugeValues,
+                counterValues, new HashMap<>(states));
+    }
+
+    private static final class TopicMeters {
+        final RateMeter records = new RateMeter();
+        final RateMeter bytes = new RateMeter();
+        final RateMeter wireBytes = new RateMeter();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Formats {@link MetricsSnapshot}s in the Prometheus text exposition format. The text is
+ * rendered into a builder and a byte buffer that are reused between calls, so formatting only
+ * allocates when the metrics grow. This class is not thread-safe.
+ */
+public class PrometheusFormatter {
+    private static final String PREFIX = "prmt_monitor_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final StringBuilder text;
+    private byte[] bytes;
+    private int length;
+
+    public PrometheusFormatter() {
+        text = new StringBuilder(4096);
+        bytes = new byte[4096];
+        length = 0;
+    }
+
+    /**
+     * Format a snapshot. The result is available with {@link #getBytes()} and
+     * {@link #getLength()} until the next call.
+     */
+    public void format(MetricsSnapshot snapshot) {
+        text.setLength(0);
+
+        header("records_total", "counter", "Records read per topic.");
+        for (Map.Entry<String, MetricsSnapshot.TopicRate> topic : snapshot.getTopics().entrySet()) {
+            sample("records_total", "topic", topic.getKey(), topic.getValue().getTotalRecords());
+        }
+        header("bytes_total", "counter", "Response bytes read per topic after decompression, attributed by record count.");
+        for (Map.Entry<String, MetricsSnapshot.TopicRate> topic : snapshot.getTopics().entrySet()) {
+            sample("bytes_total", "topic", topic.getKey(), topic.getValue().getTotalBytes());
+        }
+        header("wire_bytes_total", "counter", "Response bytes received per topic before decompression, attributed by record count.");
+        for (Map.Entry<String, MetricsSnapshot.TopicRate> topic : snapshot.getTopics().entrySet()) {
+            sample("wire_bytes_total", "topic", topic.getKey(), topic.getValue().getTotalWireBytes());
+        }
+        header("records_per_second", "gauge", "Records read per topic per second over the last minute.");
+        for (Map.Entry<String, MetricsSnapshot.TopicRate> topic : snapshot.getTopics().entrySet()) {
+            sample("records_per_second", "topic", topic.getKey(), topic.getValue().getRecordsPerSecond());
+        }
+
+        header("latency_seconds", "summary", "Latency of each phase of a poll.");
+        for (Map.Entry<String, MetricsSnapshot.Latency> phase : snapshot.getLatencies().entrySet()) {
+            MetricsSnapshot.Latency latency = phase.getValue();
+            double[] values = {latency.getP50(), latency.getP90(), latency.getP99()};
+            for (int i = 0; i < QUANTILES.length; i++) {
+                text.append(PREFIX).append("latency_seconds{phase=\"");
+                label(phase.getKey());
+                text.append("\",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(values[i] / 1000d).append('\n');
+            }
+            sample("latency_seconds_sum", "phase", phase.getKey(),
+                    latency.getMean() * latency.getCount() / 1000d);
+            sample("latency_seconds_count", "phase", phase.getKey(), latency.getCount());
+        }
+
+        for (Map.Entry<String, Long> gauge : snapshot.getGauges().entrySet()) {
+            header(gauge.getKey(), "gauge", null);
+            text.append(PREFIX).append(gauge.getKey()).append(' ')
+                    .append(gauge.getValue().longValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+            header(counter.getKey() + "_total", "counter", null);
+            text.append(PREFIX).append(counter.getKey()).append("_total ")
+                    .append(counter.getValue().longValue()).append('\n');
+        }
+        for (Map.Entry<String, String> state : snapshot.getStates().entrySet()) {
+            header(state.getKey(), "gauge", null);
+            sample(state.getKey(), "state", state.getValue(), 1L);
+        }
+
+        encode();
+    }
+
+    /** Formatted text as ASCII bytes. Only the first {@link #getLength()} bytes are valid. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /** Number of valid formatted bytes. */
+    public int getLength() {
+        return length;
+    }
+
+    private void header(String name, String type, String help) {
+        if (help != null) {
+            text.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        }
+        text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(String name, String labelName, String labelValue, double value) {
+        sampleName(name, labelName, labelValue);
+        text.append(value).append('\n');
+    }
+
+    private void sample(String name, String labelName, String labelValue, long value) {
+        sampleName(name, labelName, labelValue);
+        text.append(value).append('\n');
+    }
+
+    private void sampleName(String name, String labelName, String labelValue) {
+        text.append(PREFIX).append(name).append('{').append(labelName).append("=\"");
+        label(labelValue);
+        text.append("\"} ");
+    }
+
+    private void label(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    /** Encode the text to the byte buffer, replacing any non-ASCII characters. */
+    private void encode() {
+        length = text.length();
+        if (bytes.length < length) {
+            bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            bytes[i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter with a rate over the last minute, kept in one-second buckets. Marking only updates
+ * atomic counters. When a bucket is reused for a new second, a concurrent mark may be counted in
+ * the wrong second, which is acceptable for a monitoring rate.
+ */
+public final class RateMeter {
+    static final int WINDOW_SECONDS = 60;
+    /** One more than the window, so the current second never shares a bucket with the window. */
+    private static final int NUM_BUCKETS = WINDOW_SECONDS + 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLongArray seconds;
+    private final AtomicLong total;
+
+    public RateMeter() {
+        counts = new AtomicLongArray(NUM_BUCKETS);
+        seconds = new AtomicLongArray(NUM_BUCKETS);
+        total = new AtomicLong(0L);
+    }
+
+    /** Count given number of events at the current time. */
+    public void mark(long n) {
+        mark(n, System.currentTimeMillis());
+    }
+
+    void mark(long n, long timeMs) {
+        long second = timeMs / 1000L;
+        int index = (int) (second % NUM_BUCKETS);
+        long bucketSecond = seconds.get(index);
+        if (bucketSecond != second && seconds.compareAndSet(index, bucketSecond, second)) {
+            counts.set(index, 0L);
+        }
+        counts.addAndGet(index, n);
+        total.addAndGet(n);
+    }
+
+    /** Total number of events counted. */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /** Average number of events per second over the last minute, excluding the current second. */
+    public double getRate() {
+        return getRate(System.currentTimeMillis());
+    }
+
+    double getRate(long timeMs) {
+        long second = timeMs / 1000L;
+        long sum = 0L;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long bucketSecond = seconds.get(i);
+            if (bucketSecond < second && bucketSecond >= second - WINDOW_SECONDS) {
+                sum += counts.get(i);
+            }
+        }
+        return sum / (double) WINDOW_SECONDS;
+    }
+}
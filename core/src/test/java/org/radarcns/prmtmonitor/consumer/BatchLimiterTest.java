@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchLimiterTest {
+    @Test
+    public void limitsRecords() {
+        BatchLimiter limiter = new BatchLimiter(new ReadLimits(2, 0L, 0L), source(""));
+        assertFalse(limiter.isLimitReached());
+        limiter.didRead();
+        assertFalse(limiter.isLimitReached());
+        limiter.didRead();
+        assertTrue(limiter.isLimitReached());
+
+        ReadResult result = limiter.result(-1L, 0L, 0L);
+        assertEquals(2, result.getNumRecords());
+        assertTrue(result.isLimitReached());
+    }
+
+    @Test
+    public void unlimited() {
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, source(""));
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(limiter.isLimitReached());
+            limiter.didRead();
+        }
+        assertFalse(limiter.result(-1L, 0L, 0L).isLimitReached());
+    }
+
+    @Test
+    public void keepsFirstSkippedOffsets() {
+        BatchLimiter limiter = new BatchLimiter(new ReadLimits(1, 0L, 0L), source(""));
+        limiter.didRead();
+        assertTrue(limiter.isLimitReached());
+        limiter.didSkip("a", 0, 10L);
+        limiter.didSkip("a", 1, 20L);
+        limiter.didSkip("a", 0, 11L);
+        limiter.didSkip("b", 0, 5L);
+        limiter.didSkip("a", 1, 21L);
+
+        Map<TopicPartition, Long> expected = new HashMap<>();
+        expected.put(new TopicPartition("a", 0), 10L);
+        expected.put(new TopicPartition("a", 1), 20L);
+        expected.put(new TopicPartition("b", 0), 5L);
+        assertEquals(expected, limiter.getSkippedOffsets());
+    }
+
+    @Test
+    public void doesNotTruncateOnBytes() throws IOException {
+        CountingSource source = source("0123456789");
+        BatchLimiter limiter = new BatchLimiter(new ReadLimits(0, 4L, 0L), source);
+        BufferedSource buffered = Okio.buffer(source);
+        buffered.readUtf8();
+        limiter.didRead();
+        // the proxy applies the byte limit, the response itself is never truncated on it
+        assertFalse(limiter.isLimitReached());
+
+        ReadResult result = limiter.result(-1L, 0L, 0L);
+        assertEquals(10L, result.getNumBytes());
+        assertEquals(10L, result.getNumWireBytes());
+        // a response of the byte limit or more probably stopped at it, so more records may wait
+        assertTrue(result.isLimitReached());
+    }
+
+    @Test
+    public void countsWireBytes() throws IOException {
+        CountingSource source = source("0123456789");
+        BatchLimiter limiter = new BatchLimiter(new ReadLimits(0, 100L, 0L), source);
+        Okio.buffer(source).readUtf8();
+
+        ReadResult result = limiter.result(3L, 5L, 7L);
+        assertEquals(10L, result.getNumBytes());
+        assertEquals(3L, result.getNumWireBytes());
+        assertEquals(5L, result.getRequestNanos());
+        assertEquals(7L, result.getDecodeNanos());
+        assertFalse(result.isLimitReached());
+    }
+
+    private static CountingSource source(String content) {
+        return new CountingSource(new Buffer().writeUtf8(content));
+    }
+}
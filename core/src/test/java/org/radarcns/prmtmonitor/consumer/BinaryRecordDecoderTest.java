@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.radarcns.kafka.ObservationKey;
+import org.radarcns.passive.empatica.EmpaticaE4Acceleration;
+import org.radarcns.prmtmonitor.data.SeriesSchema;
+import org.radarcns.topic.AvroTopic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BinaryRecordDecoderTest {
+    private static final String TOPIC = "android_empatica_e4_acceleration";
+    private static final int KEY_ID = 1;
+    private static final int VALUE_ID = 2;
+
+    private List<AvroTopic> topics;
+    private SchemaLookup lookup;
+    private BinaryRecordDecoder decoder;
+
+    @Before
+    public void setUp() {
+        topics = Collections.singletonList(new AvroTopic<>(TOPIC,
+                ObservationKey.getClassSchema(), EmpaticaE4Acceleration.getClassSchema(),
+                ObservationKey.class, EmpaticaE4Acceleration.class));
+        lookup = (topic, ofValue, id) -> {
+            if (id == KEY_ID) {
+                return ObservationKey.getClassSchema();
+            } else if (id == VALUE_ID) {
+                return EmpaticaE4Acceleration.getClassSchema();
+            } else {
+                throw new IOException("Unknown schema ID " + id);
+            }
+        };
+        decoder = new BinaryRecordDecoder();
+    }
+
+    @Test
+    public void decode() throws IOException {
+        List<SpecificRecord[]> records = new ArrayList<>();
+        int numRecords = decoder.decode(source(response(3)), topics, lookup, limiter(0),
+                (topic, partition, offset, key, value) -> records.add(new SpecificRecord[] {key, value}));
+
+        assertEquals(3, numRecords);
+        for (int i = 0; i < 3; i++) {
+            ObservationKey key = (ObservationKey) records.get(i)[0];
+            assertEquals("u", key.getUserId().toString());
+            assertEquals("s", key.getSourceId().toString());
+            EmpaticaE4Acceleration value = (EmpaticaE4Acceleration) records.get(i)[1];
+            assertEquals(1000d + i, value.getTime(), 0d);
+            assertEquals(1001d + i, value.getTimeReceived(), 0d);
+            assertEquals(i, value.getX(), 0f);
+            assertEquals(-i, value.getZ(), 0f);
+        }
+    }
+
+    @Test
+    public void decodeSamples() throws IOException {
+        SeriesSchema schema = new SeriesSchema(EmpaticaE4Acceleration.getClassSchema());
+        Map<String, SeriesSchema> schemas = Collections.singletonMap(TOPIC, schema);
+        List<double[]> samples = new ArrayList<>();
+        int numRecords = decoder.decodeSamples(source(response(3)), topics, schemas, lookup,
+                limiter(0), (topic, partition, offset, sample) -> {
+                    assertEquals(TOPIC, topic);
+                    assertEquals("u", sample.getUserId());
+                    assertEquals("s", sample.getSourceId());
+                    samples.add(new double[] {sample.getTime(), sample.getTimeReceived(),
+                            sample.getValue(schema.indexOf("x")), sample.getValue(schema.indexOf("z"))});
+                });
+
+        assertEquals(3, numRecords);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1_000_000d + 1000d * i, samples.get(i)[0], 0d);
+            assertEquals(1_001_000d + 1000d * i, samples.get(i)[1], 0d);
+            assertEquals(i, samples.get(i)[2], 0d);
+            assertEquals(-i, samples.get(i)[3], 0d);
+        }
+    }
+
+    @Test
+    public void skipsRecordsBeyondLimit() throws IOException {
+        BatchLimiter limiter = limiter(2);
+        int numRecords = decoder.decode(source(response(5)), topics, lookup, limiter,
+                (topic, partition, offset, key, value) -> { });
+
+        assertEquals(2, numRecords);
+        assertEquals(Collections.singletonMap(new TopicPartition(TOPIC, 0), 2L),
+                limiter.getSkippedOffsets());
+    }
+
+    @Test
+    public void decodeNullKey() throws IOException {
+        String response = "[{\"topic\":\"" + TOPIC + "\",\"key\":null,\"value\":null,"
+                + "\"partition\":0,\"offset\":0}]";
+        List<SpecificRecord> keys = new ArrayList<>();
+        decoder.decode(source(response), topics, lookup, limiter(0),
+                (topic, partition, offset, key, value) -> keys.add(key));
+        assertEquals(1, keys.size());
+        assertNull(keys.get(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeUnsubscribedTopic() throws IOException {
+        String response = "[{\"topic\":\"other\",\"key\":null,\"value\":null,"
+                + "\"partition\":0,\"offset\":0}]";
+        decoder.decode(source(response), topics, lookup, limiter(0),
+                (topic, partition, offset, key, value) -> { });
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeWithoutSchemaId() throws IOException {
+        String response = "[{\"topic\":\"" + TOPIC + "\",\"key\":\""
+                + ByteString.encodeUtf8("abc").base64() + "\",\"value\":null,"
+                + "\"partition\":0,\"offset\":0}]";
+        decoder.decode(source(response), topics, lookup, limiter(0),
+                (topic, partition, offset, key, value) -> { });
+    }
+
+    /** Binary embedded format response with given number of records on partition 0. */
+    private static String response(int numRecords) throws IOException {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < numRecords; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            ObservationKey key = new ObservationKey("p", "u", "s");
+            EmpaticaE4Acceleration value = new EmpaticaE4Acceleration(
+                    1000d + i, 1001d + i, (float) i, 0f, (float) -i);
+            builder.append("{\"topic\":\"").append(TOPIC)
+                    .append("\",\"key\":\"").append(encode(key, KEY_ID))
+                    .append("\",\"value\":\"").append(encode(value, VALUE_ID))
+                    .append("\",\"partition\":0,\"offset\":").append(i).append('}');
+        }
+        return builder.append(']').toString();
+    }
+
+    /** Base64 encoded Kafka message with a schema ID header. */
+    private static String encode(SpecificRecord record, int schemaId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(schemaId >>> 24);
+        out.write(schemaId >>> 16);
+        out.write(schemaId >>> 8);
+        out.write(schemaId);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        Schema schema = record.getSchema();
+        new SpecificDatumWriter<SpecificRecord>(schema).write(record, encoder);
+        encoder.flush();
+        return ByteString.of(out.toByteArray()).base64();
+    }
+
+    private static BatchLimiter limiter(int maxRecords) {
+        return new BatchLimiter(new ReadLimits(maxRecords, 0L, 0L), new CountingSource(new Buffer()));
+    }
+
+    private static BufferedSource source(String content) {
+        return new Buffer().writeUtf8(content);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionLivenessTest {
+    @Test
+    public void isAlive() throws InterruptedException {
+        ConnectionLiveness liveness = new ConnectionLiveness();
+        long now = System.currentTimeMillis();
+        assertFalse(liveness.isAlive(60_000L, now));
+        assertEquals(-1L, liveness.getLastSuccess());
+        assertEquals(-1L, liveness.getLastFailure());
+
+        liveness.didSucceed();
+        long success = liveness.getLastSuccess();
+        assertTrue(success >= now);
+        assertTrue(liveness.isAlive(60_000L, success));
+        assertTrue(liveness.isAlive(60_000L, success + 59_999L));
+        assertFalse(liveness.isAlive(60_000L, success + 60_000L));
+
+        sleepPastMillisecond(success);
+        liveness.didFail();
+        assertFalse(liveness.isAlive(60_000L, success + 1L));
+
+        sleepPastMillisecond(liveness.getLastFailure());
+        liveness.didSucceed();
+        assertTrue(liveness.isAlive(60_000L, liveness.getLastSuccess()));
+    }
+
+    @Test
+    public void failureInSameMillisecond() {
+        ConnectionLiveness liveness = new ConnectionLiveness();
+        do {
+            liveness.didSucceed();
+            liveness.didFail();
+        } while (liveness.getLastSuccess() != liveness.getLastFailure());
+        // a failure that cannot be ordered after the success counts against it
+        assertFalse(liveness.isAlive(60_000L, liveness.getLastSuccess()));
+    }
+
+    /** Wait until the clock has passed given time, so that the next update is later. */
+    private static void sleepPastMillisecond(long time) throws InterruptedException {
+        while (System.currentTimeMillis() <= time) {
+            Thread.sleep(1L);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonRecordDecoderTest {
+    private static final String RESPONSE = "["
+            + "{\"topic\":\"t\",\"key\":{\"userId\":\"u\"},\"value\":{\"x\":1,\"y\":2.5,\"z\":12345678901,\"s\":\"a\",\"n\":null,\"l\":[1,{\"b\":true}]},\"partition\":0,\"offset\":10},"
+            + "{\"partition\":1,\"offset\":20,\"topic\":\"t\",\"key\":null,\"value\":{\"x\":2},\"extra\":{\"ignored\":[1,2]}},"
+            + "{\"topic\":\"t\",\"key\":{\"userId\":\"u\"},\"value\":{\"x\":3},\"partition\":0,\"offset\":11},"
+            + "{\"topic\":\"t\",\"key\":{\"userId\":\"u\"},\"value\":{\"x\":4},\"partition\":1,\"offset\":21},"
+            + "{\"topic\":\"t\",\"key\":{\"userId\":\"u\"},\"value\":{\"x\":5},\"partition\":0,\"offset\":12}"
+            + "]";
+
+    @Test
+    public void decode() throws IOException {
+        List<Object[]> records = new ArrayList<>();
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, new CountingSource(new Buffer()));
+        int numRecords = JsonRecordDecoder.decode(source(RESPONSE), limiter, (topic, partition, offset, key, value) ->
+                records.add(new Object[] {topic, partition, offset, key, value}));
+
+        assertEquals(5, numRecords);
+        assertEquals(5, records.size());
+        assertTrue(limiter.getSkippedOffsets().isEmpty());
+
+        Object[] first = records.get(0);
+        assertEquals("t", first[0]);
+        assertEquals(0, first[1]);
+        assertEquals(10L, first[2]);
+        assertEquals("u", ((JSONObject) first[3]).getString("userId"));
+        JSONObject value = (JSONObject) first[4];
+        assertEquals(1, value.get("x"));
+        assertEquals(2.5, value.getDouble("y"), 0.0);
+        assertEquals(12345678901L, value.get("z"));
+        assertEquals("a", value.getString("s"));
+        assertTrue(value.isNull("n"));
+        assertTrue(value.getJSONArray("l").getJSONObject(1).getBoolean("b"));
+
+        Object[] second = records.get(1);
+        assertEquals(1, second[1]);
+        assertEquals(20L, second[2]);
+        assertNull(second[3]);
+        assertEquals(2, ((JSONObject) second[4]).getInt("x"));
+    }
+
+    @Test
+    public void skipsRecordsBeyondLimit() throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        BatchLimiter limiter = new BatchLimiter(new ReadLimits(2, 0L, 0L), new CountingSource(new Buffer()));
+        int numRecords = JsonRecordDecoder.decode(source(RESPONSE), limiter, (topic, partition, offset, key, value) ->
+                offsets.add(offset));
+
+        assertEquals(2, numRecords);
+        assertEquals(2, offsets.size());
+        assertEquals(10L, (long) offsets.get(0));
+        assertEquals(20L, (long) offsets.get(1));
+        assertEquals(Long.valueOf(11L), limiter.getSkippedOffsets().get(new TopicPartition("t", 0)));
+        assertEquals(Long.valueOf(21L), limiter.getSkippedOffsets().get(new TopicPartition("t", 1)));
+        assertTrue(limiter.result(-1L, 0L, 0L).isLimitReached());
+    }
+
+    @Test
+    public void decodeEmpty() throws IOException {
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, new CountingSource(new Buffer()));
+        assertEquals(0, JsonRecordDecoder.decode(source("[]"), limiter, (topic, partition, offset, key, value) -> {
+            throw new AssertionError("No records expected");
+        }));
+        assertEquals(Collections.emptyMap(), limiter.getSkippedOffsets());
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeMalformed() throws IOException {
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, new CountingSource(new Buffer()));
+        JsonRecordDecoder.decode(source("[{\"topic\":"), limiter, (topic, partition, offset, key, value) -> {
+            // no records are complete
+        });
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeWrongType() throws IOException {
+        BatchLimiter limiter = new BatchLimiter(ReadLimits.UNLIMITED, new CountingSource(new Buffer()));
+        JsonRecordDecoder.decode(source("[{\"topic\":\"t\",\"partition\":\"zero\",\"offset\":1}]"), limiter,
+                (topic, partition, offset, key, value) -> {
+                    throw new AssertionError("No records expected");
+                });
+    }
+
+    private static BufferedSource source(String content) {
+        return new Buffer().writeUtf8(content);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.radarcns.kafka.ObservationKey;
+import org.radarcns.passive.empatica.EmpaticaE4Acceleration;
+import org.radarcns.topic.AvroTopic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordsCaptureTest {
+    private static final String TOPIC = "android_empatica_e4_acceleration";
+    private static final int KEY_ID = 1;
+    private static final int VALUE_ID = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void binaryRoundTrip() throws IOException, JSONException {
+        File file = folder.newFile("binary.capture");
+        try (RecordsCapture capture = new RecordsCapture(file, true)) {
+            capture.writeTopics("[\"" + TOPIC + "\"]");
+            capture.writePartitions(TOPIC, Arrays.asList(0, 1));
+            capture.writeSchema(TOPIC, false, KEY_ID, ObservationKey.getClassSchema());
+            capture.writeSchema(TOPIC, true, VALUE_ID, EmpaticaE4Acceleration.getClassSchema());
+            // already captured schemas are not written again
+            capture.writeSchema(TOPIC, true, VALUE_ID, EmpaticaE4Acceleration.getClassSchema());
+            capture.writeRecords("i", new Buffer().writeUtf8(binaryResponse(0, 3)));
+            capture.writeRecords("i", new Buffer().writeUtf8(binaryResponse(3, 2)));
+        }
+
+        ReplayReader replay = new ReplayReader(file, 0d);
+        assertTrue(replay.hasBinaryContent());
+        KafkaTopicReader reader = replay.reader();
+        assertEquals(TOPIC, reader.topics().getString(0));
+        assertEquals(Arrays.asList(0, 1), reader.partitions(TOPIC));
+
+        reader.consumer("g", "i");
+        reader.subscribe(Collections.singleton(new AvroTopic<>(TOPIC,
+                ObservationKey.getClassSchema(), EmpaticaE4Acceleration.getClassSchema(),
+                ObservationKey.class, EmpaticaE4Acceleration.class)));
+
+        List<EmpaticaE4Acceleration> values = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        RecordListener<SpecificRecord, SpecificRecord> listener = (topic, partition, offset, key, value) -> {
+            assertEquals(TOPIC, topic);
+            assertEquals("u", ((ObservationKey) key).getUserId().toString());
+            offsets.add(offset);
+            values.add((EmpaticaE4Acceleration) value);
+        };
+        assertEquals(3, reader.readBinary(ReadLimits.UNLIMITED, listener).getNumRecords());
+        assertEquals(2, reader.readBinary(ReadLimits.UNLIMITED, listener).getNumRecords());
+        // all responses were replayed
+        assertEquals(0, reader.readBinary(ReadLimits.UNLIMITED, listener).getNumRecords());
+
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), offsets);
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(1000d + i, values.get(i).getTime(), 0d);
+            assertEquals(i, values.get(i).getX(), 0f);
+        }
+    }
+
+    @Test
+    public void jsonRoundTripPerInstance() throws IOException, JSONException {
+        File file = folder.newFile("json.capture");
+        try (RecordsCapture capture = new RecordsCapture(file, false)) {
+            capture.writeRecords("a", new Buffer().writeUtf8(jsonResponse(1)));
+            capture.writeRecords("b", new Buffer().writeUtf8(jsonResponse(2)));
+            capture.writeRecords("a", new Buffer().writeUtf8(jsonResponse(3)));
+        }
+
+        KafkaTopicReader reader = new ReplayReader(file, 0d).reader();
+        reader.consumer("g", "a");
+        reader.subscribe(Collections.singleton(new AvroTopic<>("t",
+                ObservationKey.getClassSchema(), EmpaticaE4Acceleration.getClassSchema(),
+                ObservationKey.class, EmpaticaE4Acceleration.class)));
+
+        List<Integer> xs = new ArrayList<>();
+        RecordListener<JSONObject, JSONObject> listener = (topic, partition, offset, key, value) ->
+                xs.add(value.getInt("x"));
+        reader.read(ReadLimits.UNLIMITED, listener);
+        reader.read(ReadLimits.UNLIMITED, listener);
+        reader.read(ReadLimits.UNLIMITED, listener);
+        // only the responses of consumer instance a are replayed
+        assertEquals(Arrays.asList(1, 3), xs);
+    }
+
+    @Test
+    public void ignoresTruncatedFrame() throws IOException, JSONException {
+        File file = folder.newFile("truncated.capture");
+        try (RecordsCapture capture = new RecordsCapture(file, false)) {
+            capture.writeRecords("a", new Buffer().writeUtf8(jsonResponse(1)));
+            capture.writeRecords("a", new Buffer().writeUtf8(jsonResponse(2)));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        KafkaTopicReader reader = new ReplayReader(file, 0d).reader();
+        reader.consumer("g", "a");
+        assertEquals(1, reader.read().length());
+        assertEquals(0, reader.read().length());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("other.capture");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeBytes("not a capture");
+        }
+        new ReplayReader(file, 0d);
+    }
+
+    private static String jsonResponse(int x) {
+        return "[{\"topic\":\"t\",\"key\":{\"userId\":\"u\"},\"value\":{\"x\":" + x
+                + "},\"partition\":0,\"offset\":" + x + "}]";
+    }
+
+    /** Binary embedded format response with records at given offsets of partition 0. */
+    private static String binaryResponse(int firstOffset, int numRecords) throws IOException {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = firstOffset; i < firstOffset + numRecords; i++) {
+            if (i > firstOffset) {
+                builder.append(',');
+            }
+            ObservationKey key = new ObservationKey("p", "u", "s");
+            EmpaticaE4Acceleration value = new EmpaticaE4Acceleration(
+                    1000d + i, 1001d + i, (float) i, 0f, (float) -i);
+            builder.append("{\"topic\":\"").append(TOPIC)
+                    .append("\",\"key\":\"").append(encode(key, KEY_ID))
+                    .append("\",\"value\":\"").append(encode(value, VALUE_ID))
+                    .append("\",\"partition\":0,\"offset\":").append(i).append('}');
+        }
+        return builder.append(']').toString();
+    }
+
+    /** Base64 encoded Kafka message with a schema ID header. */
+    private static String encode(SpecificRecord record, int schemaId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(schemaId >>> 24);
+        out.write(schemaId >>> 16);
+        out.write(schemaId >>> 8);
+        out.write(schemaId);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        Schema schema = record.getSchema();
+        new SpecificDatumWriter<SpecificRecord>(schema).write(record, encoder);
+        encoder.flush();
+        return ByteString.of(out.toByteArray()).base64();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.radarcns.config.ServerConfig;
+import org.radarcns.producer.rest.RestClient;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Collections;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTemplateTest {
+    private RestReader.RequestContext context;
+
+    @Before
+    public void setUp() throws MalformedURLException {
+        context = context(1);
+    }
+
+    @Test
+    public void isValid() throws MalformedURLException {
+        RequestTemplate template = new RequestTemplate(context, "g", "i");
+        assertTrue(template.isValid(context, "g", "i"));
+        // the context is replaced when the settings of the reader change
+        assertFalse(template.isValid(context(2), "g", "i"));
+        assertFalse(template.isValid(context, "g", "other"));
+        assertFalse(template.isValid(context, "other", "i"));
+        assertFalse(template.isValid(context, "g", null));
+    }
+
+    @Test
+    public void records() throws MalformedURLException {
+        RequestTemplate template = new RequestTemplate(context, "g", "i");
+        Request request = template.records(new ReadLimits(100, 1000L, 500L));
+        assertEquals("/kafka/consumers/g/instances/i/records", request.url().encodedPath());
+        assertEquals("500", request.url().queryParameter("timeout"));
+        assertEquals("1000", request.url().queryParameter("max_bytes"));
+        assertEquals("gzip", request.header("Accept-Encoding"));
+        assertEquals(RestReader.KAFKA_REST_BINARY_CONSUMER_ENCODING.toString(),
+                request.header("Accept"));
+        assertEquals("Bearer abc", request.header("Authorization"));
+
+        // the record limit is applied while decoding, so the request is reused
+        assertSame(request, template.records(new ReadLimits(10, 1000L, 500L)));
+
+        Request unlimited = template.records(ReadLimits.UNLIMITED);
+        assertNull(unlimited.url().queryParameter("timeout"));
+        assertNull(unlimited.url().queryParameter("max_bytes"));
+    }
+
+    @Test
+    public void consumerRequests() throws IOException {
+        RequestTemplate template = new RequestTemplate(context, "g", "i");
+        TopicRequestData data = TopicRequestData.partitions(
+                Collections.singletonList(new TopicPartition("t", 0)));
+        Request seek = template.seek(data);
+        assertEquals("POST", seek.method());
+        assertEquals("/kafka/consumers/g/instances/i/positions", seek.url().encodedPath());
+        assertEquals("/kafka/consumers/g/instances/i/positions/end",
+                template.seekEnd(data).url().encodedPath());
+        assertEquals("/kafka/consumers/g", template.createConsumer(data).url().encodedPath());
+        assertEquals("DELETE", template.deleteConsumer().method());
+        assertEquals("/kafka/topics", template.get("topics").url().encodedPath());
+    }
+
+    private static RestReader.RequestContext context(int version) throws MalformedURLException {
+        RestClient client = RestClient.newClient()
+                .server(new ServerConfig("http://localhost:8082/kafka/"))
+                .build();
+        RestReader.RequestProperties properties = new RestReader.RequestProperties(
+                RestReader.KAFKA_REST_ACCEPT_ENCODING,
+                RestReader.KAFKA_REST_BINARY_CONSUMER_ENCODING,
+                Headers.of("Authorization", "Bearer abc"),
+                true);
+        return new RestReader.RequestContext(version, client, properties, null, null);
+    }
+}
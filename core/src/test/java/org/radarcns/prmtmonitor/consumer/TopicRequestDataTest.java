@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 The Hyve and King's College London
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.consumer;
+
+import org.junit.Test;
+import org.radarcns.kafka.ObservationKey;
+import org.radarcns.passive.empatica.EmpaticaE4Acceleration;
+import org.radarcns.passive.phone.PhoneAcceleration;
+import org.radarcns.topic.AvroTopic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopicRequestDataTest {
+    @Test
+    public void consumer() throws IOException {
+        assertEquals("{\"name\":\"c1\",\"format\":\"binary\",\"auto.offset.reset\":\"latest\"}",
+                TopicRequestData.consumer("c1", true).content().utf8());
+        assertEquals("{\"name\":\"c\\\"2\",\"format\":\"avro\",\"auto.offset.reset\":\"latest\"}",
+                TopicRequestData.consumer("c\"2", false).content().utf8());
+    }
+
+    @Test
+    public void subscription() throws IOException {
+        AvroTopic e4 = new AvroTopic<>("android_empatica_e4_acceleration",
+                ObservationKey.getClassSchema(), EmpaticaE4Acceleration.getClassSchema(),
+                ObservationKey.class, EmpaticaE4Acceleration.class);
+        AvroTopic phone = new AvroTopic<>("android_phone_acceleration",
+                ObservationKey.getClassSchema(), PhoneAcceleration.getClassSchema(),
+                ObservationKey.class, PhoneAcceleration.class);
+
+        assertEquals("{\"topics\":[\"android_empatica_e4_acceleration\",\"android_phone_acceleration\"]}",
+                TopicRequestData.subscription(Arrays.asList(e4, phone)).content().utf8());
+        assertEquals("{\"topics\":[]}",
+                TopicRequestData.subscription(Collections.<AvroTopic>emptyList()).content().utf8());
+    }
+
+    @Test
+    public void partitions() throws IOException {
+        assertEquals("{\"partitions\":[{\"topic\":\"a\",\"partition\":0},{\"topic\":\"b\",\"partition\":3}]}",
+                TopicRequestData.partitions(Arrays.asList(
+                        new TopicPartition("a", 0), new TopicPartition("b", 3))).content().utf8());
+    }
+
+    @Test
+    public void offsets() throws IOException {
+        Map<TopicPartition, Long> offsets = new LinkedHashMap<>();
+        offsets.put(new TopicPartition("a", 0), 12L);
+        offsets.put(new TopicPartition("a", 1), 12345678901L);
+        assertEquals("{\"offsets\":[{\"topic\":\"a\",\"partition\":0,\"offset\":12},"
+                        + "{\"topic\":\"a\",\"partition\":1,\"offset\":12345678901}]}",
+                TopicRequestData.offsets(offsets).content().utf8());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataChangeTest {
+    private static final String TOPIC = "android_phone_acceleration";
+    private static final Schema VALUE_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Value\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"float\"}]}");
+
+    private TimeSeriesStore store;
+
+    @Before
+    public void setUp() {
+        store = new TimeSeriesStore(4);
+        store.addTopic(TOPIC, VALUE_SCHEMA);
+    }
+
+    @Test
+    public void appended() {
+        add("u1", 1L);
+        add("u1", 2L);
+        DataChange change = store.publish();
+        assertEquals(0L, change.getPreviousVersion());
+        assertTrue(change.getSnapshot() == store.getSnapshot());
+        assertEquals(Collections.singleton("u1"), change.getUsers());
+
+        DataChange.SeriesDelta delta = change.getDelta("u1", TOPIC);
+        assertEquals("u1", delta.getUserId());
+        assertEquals(TOPIC, delta.getTopic());
+        assertEquals(2, delta.getAppended());
+        assertEquals(0, delta.getEvicted());
+        assertEquals(0, delta.getAppendedStart());
+        assertEquals(2, delta.getAppendedEnd());
+        assertEquals(1000L, delta.getFirstAppendedTime());
+        assertEquals(2000L, delta.getLastAppendedTime());
+
+        long previousVersion = store.getSnapshot().getVersion();
+        add("u1", 3L);
+        add("u2", 1L);
+        change = store.publish();
+        assertEquals(previousVersion, change.getPreviousVersion());
+        delta = change.getDelta("u1", TOPIC);
+        assertEquals(1, delta.getAppended());
+        assertEquals(2, delta.getAppendedStart());
+        assertEquals(3, delta.getAppendedEnd());
+        // the appended range covers the new samples of the published series
+        double[] values = change.getSnapshot().getSeries("u1", TOPIC).getValues("x");
+        assertArrayEquals(new double[] {3},
+                Arrays.copyOfRange(values, delta.getAppendedStart(), delta.getAppendedEnd()), 0d);
+        assertEquals(1, change.getDeltas("u2").size());
+    }
+
+    @Test
+    public void evicted() {
+        for (long i = 1; i <= 3; i++) {
+            add("u", i);
+        }
+        store.publish();
+        store.removeReceivedBefore(2000L);
+        DataChange change = store.publish();
+        DataChange.SeriesDelta delta = change.getDelta("u", TOPIC);
+        assertEquals(0, delta.getAppended());
+        assertEquals(1, delta.getEvicted());
+        assertEquals(2, delta.getAppendedStart());
+        assertEquals(2, delta.getAppendedEnd());
+        assertEquals(-1L, delta.getFirstAppendedTime());
+    }
+
+    @Test
+    public void evictedBeforePublished() {
+        // six samples in a series of four: two appended samples are overwritten before publishing
+        for (long i = 1; i <= 6; i++) {
+            add("u", i);
+        }
+        DataChange.SeriesDelta delta = store.publish().getDelta("u", TOPIC);
+        assertEquals(6, delta.getAppended());
+        assertEquals(2, delta.getEvicted());
+        assertEquals(0, delta.getAppendedStart());
+        assertEquals(4, delta.getAppendedEnd());
+    }
+
+    @Test
+    public void unchanged() {
+        add("u1", 1L);
+        add("u2", 1L);
+        store.publish();
+        add("u1", 2L);
+        DataChange change = store.publish();
+        assertEquals(Collections.singleton("u1"), change.getUsers());
+        assertNull(change.getDelta("u2", TOPIC));
+        assertTrue(change.getDeltas("u2").isEmpty());
+        assertNull(store.publish());
+    }
+
+    private void add(String userId, long timeSeconds) {
+        store.add(TOPIC, userId, "s", timeSeconds * 1000L, timeSeconds * 1000L,
+                new double[] {timeSeconds});
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceSummaryTest {
+    private static final String ACCELERATION = "android_empatica_e4_acceleration";
+    private static final String BATTERY = "android_empatica_e4_battery_level";
+    private static final Schema ACCELERATION_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Acceleration\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"float\"}]}");
+    private static final Schema BATTERY_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"BatteryLevel\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"batteryLevel\",\"type\":\"float\"}]}");
+
+    private TimeSeriesStore store;
+
+    @Before
+    public void setUp() {
+        store = new TimeSeriesStore(1000);
+        store.addTopic(ACCELERATION, ACCELERATION_SCHEMA);
+        store.addTopic(BATTERY, BATTERY_SCHEMA);
+    }
+
+    @Test
+    public void deviceOf() {
+        assertEquals("android_empatica_e4", DeviceSummary.deviceOf(BATTERY));
+        assertEquals("android_biovotion_vsm1", DeviceSummary.deviceOf("android_biovotion_vsm1_ppg_raw"));
+        assertEquals("android_phone", DeviceSummary.deviceOf("android_phone_battery_level"));
+        assertEquals(ACCELERATION, DeviceSummary.statusTopicOf("android_empatica_e4"));
+    }
+
+    @Test
+    public void statusFollowsStatusTopic() {
+        // 32 Hz acceleration for 20 seconds, and a battery level every second
+        for (int i = 0; i < 20 * 32; i++) {
+            long time = i * 1000L / 32;
+            store.add(ACCELERATION, "u", "e4", time, time, new double[] {i});
+        }
+        for (int i = 0; i <= 30; i++) {
+            long time = i * 1000L;
+            store.add(BATTERY, "u", "battery", time, time, new double[] {0.5});
+        }
+        store.publish();
+        DeviceSummary summary = store.getSnapshot().getDeviceSummary("u", "android_empatica_e4");
+
+        assertTrue(summary.isConnected());
+        assertEquals(19 * 1000L + 31 * 1000L / 32, summary.getLastTimeReceived());
+        assertEquals("e4", summary.getLastSourceId());
+        assertEquals(0.5f, summary.getLastBatteryLevel(), 0f);
+        assertEquals(32d, summary.getSampleRate(), 0.1);
+        assertEquals(20 * 32 + 31, summary.getNumSamples());
+    }
+
+    @Test
+    public void disconnectsWhenStatusTopicDecays() {
+        store.add(ACCELERATION, "u", "e4", 1000L, 1000L, new double[] {1});
+        store.add(BATTERY, "u", "battery", 5000L, 5000L, new double[] {0.5});
+        store.removeReceivedBefore(2000L);
+        store.publish();
+        DeviceSummary summary = store.getSnapshot().getDeviceSummary("u", "android_empatica_e4");
+
+        assertFalse(summary.isConnected());
+        assertEquals(1000L, summary.getLastTimeReceived());
+        assertEquals(1, summary.getNumSamples());
+    }
+
+    @Test
+    public void onlyOtherTopics() {
+        store.add(BATTERY, "u", "battery", 5000L, 5000L, new double[] {0.25});
+        store.publish();
+        DeviceSummary summary = store.getSnapshot().getDeviceSummary("u", "android_empatica_e4");
+
+        assertFalse(summary.isConnected());
+        assertEquals(-1L, summary.getLastTimeReceived());
+        assertEquals(0.25f, summary.getLastBatteryLevel(), 0f);
+        assertTrue(Double.isNaN(summary.getSampleRate()));
+    }
+}
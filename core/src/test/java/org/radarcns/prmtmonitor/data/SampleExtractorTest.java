@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampleExtractorTest {
+    private static final Schema KEY_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Key\",\"fields\":["
+            + "{\"name\":\"projectId\",\"type\":[\"null\",\"string\"]},"
+            + "{\"name\":\"userId\",\"type\":\"string\"},"
+            + "{\"name\":\"sourceId\",\"type\":[\"null\",\"string\"]}]}");
+    private static final Schema READER_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Value\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"float\"},"
+            + "{\"name\":\"y\",\"type\":\"double\"},"
+            + "{\"name\":\"z\",\"type\":\"int\"}]}");
+    /** Older version of the value schema, without z, with a nullable y and more fields. */
+    private static final Schema WRITER_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Value\",\"fields\":["
+            + "{\"name\":\"name\",\"type\":\"string\"},"
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"long\"},"
+            + "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},"
+            + "{\"name\":\"y\",\"type\":[\"null\",\"double\"]},"
+            + "{\"name\":\"props\",\"type\":{\"type\":\"map\",\"values\":\"float\"}},"
+            + "{\"name\":\"state\",\"type\":{\"type\":\"enum\",\"name\":\"State\",\"symbols\":[\"A\",\"B\"]}},"
+            + "{\"name\":\"nested\",\"type\":{\"type\":\"record\",\"name\":\"Nested\",\"fields\":["
+            + "{\"name\":\"a\",\"type\":\"boolean\"},{\"name\":\"b\",\"type\":\"bytes\"}]}},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"}]}");
+
+    private SeriesSchema schema;
+    private Sample sample;
+
+    @Before
+    public void setUp() {
+        schema = new SeriesSchema(READER_SCHEMA);
+        sample = new Sample(schema);
+    }
+
+    @Test
+    public void extractKey() throws IOException {
+        SampleExtractor extractor = SampleExtractor.forKey(KEY_SCHEMA);
+        GenericRecord key = new GenericData.Record(KEY_SCHEMA);
+        key.put("projectId", "p");
+        key.put("userId", "u");
+        key.put("sourceId", "s");
+        extractor.extract(decoder(key), sample);
+        assertEquals("u", sample.getUserId());
+        assertEquals("s", sample.getSourceId());
+
+        key.put("projectId", null);
+        key.put("userId", "u2");
+        key.put("sourceId", null);
+        extractor.extract(decoder(key), sample);
+        assertEquals("u2", sample.getUserId());
+        assertNull(sample.getSourceId());
+    }
+
+    @Test
+    public void extractValue() throws IOException {
+        SampleExtractor extractor = SampleExtractor.forValue(READER_SCHEMA, schema);
+        GenericRecord value = new GenericData.Record(READER_SCHEMA);
+        value.put("time", 1.5);
+        value.put("timeReceived", 2.25);
+        value.put("x", 3f);
+        value.put("y", 4d);
+        value.put("z", 5);
+        extractor.extract(decoder(value), sample);
+
+        assertEquals(1500L, sample.getTime());
+        assertEquals(2250L, sample.getTimeReceived());
+        assertEquals(3d, sample.getValue(schema.indexOf("x")), 0d);
+        assertEquals(4d, sample.getValue(schema.indexOf("y")), 0d);
+        assertEquals(5d, sample.getValue(schema.indexOf("z")), 0d);
+    }
+
+    @Test
+    public void extractOtherWriterSchema() throws IOException {
+        SampleExtractor extractor = SampleExtractor.forValue(WRITER_SCHEMA, schema);
+        GenericRecord value = writerValue(4d);
+        extractor.extract(decoder(value), sample);
+
+        assertEquals(1000L, sample.getTime());
+        assertEquals(2000L, sample.getTimeReceived());
+        assertEquals(3d, sample.getValue(schema.indexOf("x")), 0d);
+        assertEquals(4d, sample.getValue(schema.indexOf("y")), 0d);
+        assertTrue(Double.isNaN(sample.getValue(schema.indexOf("z"))));
+
+        // the sample is reused, and values that are null now should not keep the old value
+        extractor.extract(decoder(writerValue(null)), sample);
+        assertTrue(Double.isNaN(sample.getValue(schema.indexOf("y"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void valueWithoutTime() {
+        SampleExtractor.forValue(KEY_SCHEMA, schema);
+    }
+
+    private static GenericRecord writerValue(Double y) {
+        GenericRecord nested = new GenericData.Record(WRITER_SCHEMA.getField("nested").schema());
+        nested.put("a", true);
+        nested.put("b", ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+        GenericRecord value = new GenericData.Record(WRITER_SCHEMA);
+        value.put("name", "n");
+        value.put("time", 1d);
+        value.put("x", 3L);
+        value.put("tags", Arrays.asList("a", "b"));
+        value.put("y", y);
+        value.put("props", Collections.singletonMap("p", 1f));
+        value.put("state", new GenericData.EnumSymbol(WRITER_SCHEMA.getField("state").schema(), "B"));
+        value.put("nested", nested);
+        value.put("timeReceived", 2d);
+        return value;
+    }
+
+    private static Decoder decoder(GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return DecoderFactory.get().binaryDecoder(out.toByteArray(), null);
+    }
+}
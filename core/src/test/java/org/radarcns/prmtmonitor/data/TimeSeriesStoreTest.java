@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesStoreTest {
+    private static final String TOPIC = "android_phone_acceleration";
+    private static final String OTHER_TOPIC = "android_phone_light";
+    private static final Schema VALUE_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Value\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"float\"},"
+            + "{\"name\":\"y\",\"type\":\"double\"}]}");
+
+    private TimeSeriesStore store;
+
+    @Before
+    public void setUp() {
+        store = new TimeSeriesStore(100);
+        store.addTopic(TOPIC, VALUE_SCHEMA);
+        store.addTopic(OTHER_TOPIC, VALUE_SCHEMA);
+    }
+
+    @Test
+    public void add() {
+        assertTrue(add(TOPIC, "u", 1L));
+        assertTrue(add(TOPIC, "u", 2L));
+        assertFalse(store.add("unregistered", "u", "s", 1000L, 1000L, new double[] {1, 2}));
+        assertEquals(1, store.getNumUsers());
+        assertEquals(2L, store.getNumSamples());
+
+        store.publish();
+        TimeSeries series = store.getSnapshot().getSeries("u", TOPIC);
+        assertArrayEquals(new long[] {1000L, 2000L}, series.getTimesReceived());
+        assertArrayEquals(new double[] {1, 2}, series.getValues("x"), 0d);
+        assertArrayEquals(new double[] {-1, -2}, series.getValues("y"), 0d);
+        assertNull(store.getSnapshot().getSeries("u", OTHER_TOPIC));
+    }
+
+    @Test
+    public void addAll() throws Exception {
+        SampleBatch batch = store.createBatch();
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(batch.add(TOPIC, key("u" + (i % 2)), value(i)));
+        }
+        assertTrue(batch.add(OTHER_TOPIC, key("u1"), value(4)));
+        assertFalse(batch.add("unregistered", key("u1"), value(5)));
+        assertEquals(4, batch.size());
+
+        assertEquals(4, store.addAll(batch));
+        assertEquals(2, store.getNumUsers());
+        store.publish();
+        StoreSnapshot snapshot = store.getSnapshot();
+        assertArrayEquals(new double[] {1, 3}, snapshot.getSeries("u1", TOPIC).getValues("x"), 0d);
+        assertArrayEquals(new double[] {2}, snapshot.getSeries("u0", TOPIC).getValues("x"), 0d);
+        assertArrayEquals(new long[] {4000L}, snapshot.getSeries("u1", OTHER_TOPIC).getTimesReceived());
+        assertEquals("s", snapshot.getSeries("u1", TOPIC).getLastSourceId());
+        // samples without a field are stored as NaN
+        assertTrue(Double.isNaN(snapshot.getSeries("u1", TOPIC).getLastValue("y")));
+    }
+
+    @Test
+    public void capacity() {
+        store.setCapacity(2);
+        for (long i = 1; i <= 3; i++) {
+            add(TOPIC, "u", i);
+        }
+        store.publish();
+        TimeSeries series = store.getSnapshot().getSeries("u", TOPIC);
+        assertEquals(2, series.getCapacity());
+        assertArrayEquals(new long[] {2000L, 3000L}, series.getTimesReceived());
+        assertEquals(2, store.getSnapshot().getDeviceSummary("u", "android_phone").getNumSamples());
+    }
+
+    @Test
+    public void removeReceivedBefore() {
+        for (long i = 1; i <= 5; i++) {
+            add(TOPIC, "u1", i);
+            add(TOPIC, "u2", i * 2);
+            add(OTHER_TOPIC, "u1", i + 10);
+        }
+        assertEquals(0, store.removeReceivedBefore(1000L));
+        // u1 samples 1 to 4 and u2 samples 2 and 4
+        assertEquals(6, store.removeReceivedBefore(5000L));
+        assertEquals(9L, store.getNumSamples());
+
+        store.publish();
+        StoreSnapshot snapshot = store.getSnapshot();
+        assertArrayEquals(new long[] {5000L}, snapshot.getSeries("u1", TOPIC).getTimesReceived());
+        assertArrayEquals(new long[] {6000L, 8000L, 10000L}, snapshot.getSeries("u2", TOPIC).getTimesReceived());
+        assertEquals(5, snapshot.getSeries("u1", OTHER_TOPIC).size());
+        assertEquals(6, snapshot.getDeviceSummary("u1", "android_phone").getNumSamples());
+    }
+
+    @Test
+    public void removeAllThenAddAgain() {
+        add(TOPIC, "u", 1L);
+        assertEquals(1, store.removeReceivedBefore(2000L));
+        assertEquals(0L, store.getNumSamples());
+        assertEquals(0, store.removeReceivedBefore(10000L));
+
+        // an emptied series is queued again once it has samples
+        add(TOPIC, "u", 20L);
+        add(TOPIC, "u", 21L);
+        assertEquals(1, store.removeReceivedBefore(21000L));
+        store.publish();
+        assertArrayEquals(new long[] {21000L}, store.getSnapshot().getSeries("u", TOPIC).getTimesReceived());
+    }
+
+    @Test
+    public void removeAfterOverwrite() {
+        store.setCapacity(2);
+        for (long i = 1; i <= 4; i++) {
+            add(TOPIC, "u", i);
+        }
+        // the queued head of the series was overwritten, so only sample 3 is removed
+        assertEquals(1, store.removeReceivedBefore(4000L));
+        assertEquals(1L, store.getNumSamples());
+        store.publish();
+        assertArrayEquals(new long[] {4000L}, store.getSnapshot().getSeries("u", TOPIC).getTimesReceived());
+        assertEquals(1, store.getSnapshot().getDeviceSummary("u", "android_phone").getNumSamples());
+    }
+
+    @Test
+    public void publish() {
+        assertNull(store.publish());
+        assertEquals(0, store.getSnapshot().getUsers().size());
+
+        add(TOPIC, "u1", 1L);
+        add(TOPIC, "u2", 1L);
+        assertEquals(0, store.getSnapshot().getUsers().size());
+        assertTrue(store.publish() != null);
+        StoreSnapshot first = store.getSnapshot();
+        assertEquals(2, first.getUsers().size());
+        assertNull(store.publish());
+        assertTrue(first == store.getSnapshot());
+
+        add(TOPIC, "u1", 2L);
+        store.publish();
+        StoreSnapshot second = store.getSnapshot();
+        assertTrue(second.getVersion() > first.getVersion());
+        // published series are not changed by later additions
+        assertEquals(1, first.getSeries("u1", TOPIC).size());
+        assertEquals(2, second.getSeries("u1", TOPIC).size());
+        // unchanged series and summaries are shared with the previous snapshot
+        assertTrue(first.getSeries("u2", TOPIC) == second.getSeries("u2", TOPIC));
+        assertTrue(first.getDeviceSummaries("u2") == second.getDeviceSummaries("u2"));
+        assertEquals(1, first.getDeviceSummary("u1", "android_phone").getNumSamples());
+        assertEquals(2, second.getDeviceSummary("u1", "android_phone").getNumSamples());
+    }
+
+    @Test
+    public void publishedViewsStayUnchanged() {
+        // fill more than a chunk, so views share full chunks with the series
+        store.setCapacity(1000);
+        int numSamples = TimeSeries.CHUNK_SIZE + 10;
+        for (long i = 1; i <= numSamples; i++) {
+            add(TOPIC, "u", i);
+        }
+        store.publish();
+        TimeSeries view = store.getSnapshot().getSeries("u", TOPIC);
+        for (long i = numSamples + 1; i <= 2 * numSamples; i++) {
+            add(TOPIC, "u", i);
+        }
+        store.removeReceivedBefore(numSamples * 1000L);
+        store.publish();
+
+        assertEquals(numSamples, view.size());
+        double[] values = view.getValues("x");
+        for (int i = 0; i < numSamples; i++) {
+            assertEquals(i + 1, values[i], 0d);
+        }
+        assertEquals(numSamples + 1, store.getSnapshot().getSeries("u", TOPIC).size());
+    }
+
+    private boolean add(String topic, String userId, long timeSeconds) {
+        return store.add(topic, userId, "s", timeSeconds * 1000L, timeSeconds * 1000L,
+                new double[] {timeSeconds, -timeSeconds});
+    }
+
+    private static JSONObject key(String userId) {
+        return new JSONObject().put("userId", userId).put("sourceId", "s");
+    }
+
+    private static JSONObject value(int timeSeconds) {
+        return new JSONObject().put("time", timeSeconds).put("timeReceived", timeSeconds)
+                .put("x", timeSeconds);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.data;
+
+import org.apache.avro.Schema;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesTest {
+    private static final Schema VALUE_SCHEMA = new Schema.Parser().parse("{\"type\":\"record\","
+            + "\"name\":\"Value\",\"fields\":["
+            + "{\"name\":\"time\",\"type\":\"double\"},"
+            + "{\"name\":\"timeReceived\",\"type\":\"double\"},"
+            + "{\"name\":\"x\",\"type\":\"float\"},"
+            + "{\"name\":\"y\",\"type\":\"double\"}]}");
+
+    private SeriesSchema schema;
+
+    @Before
+    public void setUp() {
+        schema = new SeriesSchema(VALUE_SCHEMA);
+    }
+
+    @Test
+    public void add() {
+        TimeSeries series = new TimeSeries(schema, 10);
+        assertTrue(series.isEmpty());
+        assertEquals(-1L, series.getLastTime());
+        assertEquals(-1L, series.getLastTimeReceived());
+        assertTrue(Double.isNaN(series.getLastValue("x")));
+
+        assertFalse(add(series, 1L, 1.5));
+        assertFalse(add(series, 2L, 2.5));
+        assertEquals(2, series.size());
+        assertEquals(2L, series.getVersion());
+        assertEquals(2000L, series.getLastTime());
+        assertEquals(2L, series.getLastTimeReceived());
+        assertEquals("s2", series.getLastSourceId());
+        assertEquals(2.5, series.getLastValue("x"), 0d);
+        assertArrayEquals(new double[] {1.5, 2.5}, series.getValues("x"), 0d);
+        assertArrayEquals(new double[] {-1.5, -2.5}, series.getValues("y"), 0d);
+        assertArrayEquals(new long[] {1L, 2L}, series.getTimesReceived());
+
+        assertTrue(Double.isNaN(series.getLastValue("z")));
+        assertEquals(0, series.getValues("z").length);
+    }
+
+    @Test
+    public void holdsDecayWindowAtDeviceRates() {
+        // five minutes of blood volume pulse of the E4 at 64 Hz
+        TimeSeries series = new TimeSeries(schema, TimeSeriesStore.capacityFor(300_000L));
+        int numSamples = 300 * 64;
+        for (int i = 0; i < numSamples; i++) {
+            assertFalse(add(series, i, i));
+        }
+        assertEquals(numSamples, series.size());
+        assertEquals(0L, series.getTimesReceived()[0]);
+        // only chunks that hold samples are allocated
+        TimeSeries small = new TimeSeries(schema, numSamples);
+        for (int i = 0; i < numSamples; i++) {
+            add(small, i, i);
+        }
+        assertEquals(small.getAllocatedBytes(), series.getAllocatedBytes());
+    }
+
+    @Test
+    public void evictsOldestAtCapacity() {
+        TimeSeries series = new TimeSeries(schema, 3);
+        for (long i = 1; i <= 3; i++) {
+            assertFalse(add(series, i, i));
+        }
+        assertTrue(add(series, 4L, 4));
+        assertTrue(add(series, 5L, 5));
+        assertEquals(3, series.size());
+        assertArrayEquals(new long[] {3L, 4L, 5L}, series.getTimesReceived());
+        assertArrayEquals(new double[] {3, 4, 5}, series.getValues("x"), 0d);
+    }
+
+    @Test
+    public void evictsOldestAcrossChunks() {
+        int capacity = TimeSeries.CHUNK_SIZE * 2 + 10;
+        TimeSeries series = new TimeSeries(schema, capacity);
+        int numSamples = capacity * 3 + 7;
+        for (long i = 0; i < numSamples; i++) {
+            add(series, i, i);
+        }
+        assertEquals(capacity, series.size());
+        long[] times = series.getTimesReceived();
+        for (int i = 0; i < capacity; i++) {
+            assertEquals(numSamples - capacity + i, times[i]);
+        }
+        assertEquals(-(numSamples - 1), series.getLastValue("y"), 0d);
+    }
+
+    @Test
+    public void removeReceivedBefore() {
+        TimeSeries series = new TimeSeries(schema, 10);
+        add(series, 1L, 1);
+        add(series, 2L, 2);
+        add(series, 10L, 3);
+        add(series, 3L, 4);
+
+        assertEquals(0, series.removeReceivedBefore(1L));
+        assertEquals(4, series.size());
+
+        // stops at the first sample that was received later
+        long version = series.getVersion();
+        assertEquals(2, series.removeReceivedBefore(5L));
+        assertArrayEquals(new long[] {10L, 3L}, series.getTimesReceived());
+        assertEquals(10L, series.getHeadTimeReceived());
+        assertEquals(version + 1, series.getVersion());
+
+        assertEquals(2, series.removeReceivedBefore(11L));
+        assertTrue(series.isEmpty());
+        assertEquals(-1L, series.getHeadTimeReceived());
+        assertEquals(0, series.removeReceivedBefore(100L));
+
+        add(series, 20L, 5);
+        assertArrayEquals(new double[] {5}, series.getValues("x"), 0d);
+    }
+
+    @Test
+    public void viewDoesNotChange() {
+        TimeSeries series = new TimeSeries(schema, TimeSeries.CHUNK_SIZE * 3);
+        int numSamples = TimeSeries.CHUNK_SIZE + 5;
+        for (long i = 0; i < numSamples; i++) {
+            add(series, i, i);
+        }
+        TimeSeries view = series.view();
+        long[] times = view.getTimesReceived();
+        double[] values = view.getValues("x");
+        long version = view.getVersion();
+        assertEquals(series.getVersion(), version);
+
+        for (long i = numSamples; i < TimeSeries.CHUNK_SIZE * 5; i++) {
+            add(series, i, -i);
+        }
+        series.removeReceivedBefore(TimeSeries.CHUNK_SIZE * 4);
+
+        assertEquals(numSamples, view.size());
+        assertEquals(version, view.getVersion());
+        assertArrayEquals(times, view.getTimesReceived());
+        assertArrayEquals(values, view.getValues("x"), 0d);
+        assertEquals(numSamples - 1, view.getLastValue("x"), 0d);
+    }
+
+    private static boolean add(TimeSeries series, long timeReceived, double x) {
+        return series.add(timeReceived * 1000L, timeReceived, "s" + timeReceived,
+                new double[] {x, -x}, 0);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.kafka;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.radarcns.prmtmonitor.consumer.TopicPartition;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffsetCheckpointStoreTest {
+    private static final long HISTORY_MS = 60_000L;
+    private static final TopicPartition PARTITION = new TopicPartition("t", 0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private OffsetCheckpointStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "offsets.tsv");
+        store = new OffsetCheckpointStore(file, HISTORY_MS);
+    }
+
+    @Test
+    public void getOffset() {
+        assertNull(store.getOffset(PARTITION));
+        commit(0L, 10L);
+        commit(20_000L, 20L);
+        // the checkpoint policy resumes from the latest offset
+        assertEquals(Long.valueOf(20L), store.getOffset(PARTITION));
+        assertNull(store.getOffset(new TopicPartition("t", 1)));
+    }
+
+    @Test
+    public void getOffsetAt() {
+        assertNull(store.getOffsetAt(PARTITION, 0L));
+        commit(0L, 10L);
+        commit(20_000L, 20L);
+        commit(40_000L, 30L);
+
+        assertEquals(Long.valueOf(10L), store.getOffsetAt(PARTITION, -5_000L));
+        assertEquals(Long.valueOf(10L), store.getOffsetAt(PARTITION, 0L));
+        assertEquals(Long.valueOf(10L), store.getOffsetAt(PARTITION, 19_999L));
+        assertEquals(Long.valueOf(20L), store.getOffsetAt(PARTITION, 25_000L));
+        assertEquals(Long.valueOf(30L), store.getOffsetAt(PARTITION, 40_000L));
+    }
+
+    @Test
+    public void getOffsetAtAfterOutage() {
+        commit(0L, 10L);
+        commit(20_000L, 20L);
+        // the decay window policy looks up the offset of a window ago, which the consumer did
+        // not reach if it was not running since, so it should read from the end instead
+        assertNull(store.getOffsetAt(PARTITION, 20_001L));
+        assertNull(store.getOffsetAt(PARTITION, 20_000L + HISTORY_MS));
+    }
+
+    @Test
+    public void keepsHistoryWindow() {
+        commit(0L, 10L);
+        commit(20_000L, 20L);
+        commit(25_000L, 25L);
+        // within the history resolution of the previous entry, so it replaces the last one
+        commit(28_000L, 28L);
+        assertEquals(Long.valueOf(20L), store.getOffsetAt(PARTITION, 27_000L));
+
+        commit(100_000L, 100L);
+        // a single entry before the history window is kept
+        assertEquals(Long.valueOf(28L), store.getOffsetAt(PARTITION, 100_000L - HISTORY_MS));
+        assertEquals(Long.valueOf(28L), store.getOffsetAt(PARTITION, 0L));
+        assertEquals(Long.valueOf(100L), store.getOffset(PARTITION));
+    }
+
+    @Test
+    public void save() {
+        commit(0L, 10L);
+        commit(20_000L, 20L);
+        store.commit(Collections.singletonMap(new TopicPartition("u", 3), 5L), 20_000L);
+        store.save();
+        assertTrue(file.exists());
+
+        OffsetCheckpointStore loaded = new OffsetCheckpointStore(file, HISTORY_MS);
+        assertEquals(Long.valueOf(20L), loaded.getOffset(PARTITION));
+        assertEquals(Long.valueOf(10L), loaded.getOffsetAt(PARTITION, 10_000L));
+        assertEquals(Long.valueOf(5L), loaded.getOffset(new TopicPartition("u", 3)));
+    }
+
+    @Test
+    public void loadMissingFile() {
+        assertFalse(file.exists());
+        assertNull(store.getOffset(PARTITION));
+        store.save();
+        // nothing to save
+        assertFalse(file.exists());
+    }
+
+    private void commit(long time, long offset) {
+        store.commit(Collections.singletonMap(PARTITION, offset), time);
+    }
+}
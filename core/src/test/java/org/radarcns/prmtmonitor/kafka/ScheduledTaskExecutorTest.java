@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.kafka;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledTaskExecutorTest {
+    @Test
+    public void quitSafelyRunsPostedTasks() throws InterruptedException {
+        ScheduledTaskExecutor executor = new ScheduledTaskExecutor("test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // keep the thread busy so the cleanup task is still queued when quitting
+        executor.post(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean cleanedUp = new AtomicBoolean();
+        AtomicBoolean delayedRan = new AtomicBoolean();
+        executor.post(() -> cleanedUp.set(true));
+        executor.postDelayed(() -> delayedRan.set(true), 60_000L);
+        executor.quitSafely();
+        release.countDown();
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(cleanedUp.get());
+        assertFalse(delayedRan.get());
+    }
+
+    @Test
+    public void removeCallbacks() throws InterruptedException {
+        ScheduledTaskExecutor executor = new ScheduledTaskExecutor("test");
+        AtomicBoolean ran = new AtomicBoolean();
+        Runnable task = () -> ran.set(true);
+        executor.postDelayed(task, 200L);
+        executor.removeCallbacks(task);
+        executor.quitSafely();
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+}
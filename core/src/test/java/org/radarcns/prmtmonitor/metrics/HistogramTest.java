@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+    @Test
+    public void summarize() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100_000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5_000_000L);
+        }
+        MetricsSnapshot.Latency latency = histogram.summarize();
+        assertEquals(100L, latency.getCount());
+        assertEquals(0.59, latency.getMean(), 1e-9);
+        // upper bound of the bucket of 100 us
+        assertEquals(0.128, latency.getP50(), 1e-9);
+        assertEquals(0.128, latency.getP90(), 1e-9);
+        // the bucket bound of 8192 us is capped at the maximum
+        assertEquals(5.0, latency.getP99(), 1e-9);
+        assertEquals(5.0, latency.getMax(), 1e-9);
+    }
+
+    @Test
+    public void summarizeEmpty() {
+        MetricsSnapshot.Latency latency = new Histogram().summarize();
+        assertEquals(0L, latency.getCount());
+        assertEquals(0d, latency.getMean(), 0d);
+        assertEquals(0d, latency.getP99(), 0d);
+        assertEquals(0d, latency.getMax(), 0d);
+    }
+
+    @Test
+    public void recordsOutOfRange() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5L);
+        histogram.record(Long.MAX_VALUE);
+        MetricsSnapshot.Latency latency = histogram.summarize();
+        assertEquals(2L, latency.getCount());
+        // upper bound of the first bucket
+        assertEquals(0.001, latency.getP50(), 1e-9);
+        assertEquals((1L << (Histogram.NUM_BUCKETS - 1)) / 1000d, latency.getP99(), 0d);
+    }
+}
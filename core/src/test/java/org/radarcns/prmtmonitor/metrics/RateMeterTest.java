@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.prmtmonitor.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateMeterTest {
+    private static final long START_MS = 1_500_000_000_000L;
+
+    @Test
+    public void rateOverLastMinute() {
+        RateMeter meter = new RateMeter();
+        for (int i = 0; i < RateMeter.WINDOW_SECONDS; i++) {
+            meter.mark(2L, START_MS + i * 1000L);
+        }
+        // the current second is not complete yet, so it is not included
+        meter.mark(100L, START_MS + RateMeter.WINDOW_SECONDS * 1000L);
+        assertEquals(2d, meter.getRate(START_MS + RateMeter.WINDOW_SECONDS * 1000L), 1e-9);
+        assertEquals(220L, meter.getTotal());
+    }
+
+    @Test
+    public void expiresOldSeconds() {
+        RateMeter meter = new RateMeter();
+        meter.mark(60L, START_MS);
+        assertEquals(1d, meter.getRate(START_MS + 1000L), 1e-9);
+        assertEquals(1d, meter.getRate(START_MS + RateMeter.WINDOW_SECONDS * 1000L), 1e-9);
+        assertEquals(0d, meter.getRate(START_MS + (RateMeter.WINDOW_SECONDS + 1) * 1000L), 0d);
+        assertEquals(60L, meter.getTotal());
+    }
+
+    @Test
+    public void reusesBuckets() {
+        RateMeter meter = new RateMeter();
+        meter.mark(60L, START_MS);
+        // same bucket, one more than a window later
+        meter.mark(120L, START_MS + (RateMeter.WINDOW_SECONDS + 1) * 1000L);
+        assertEquals(2d, meter.getRate(START_MS + (RateMeter.WINDOW_SECONDS + 2) * 1000L), 1e-9);
+        assertEquals(180L, meter.getTotal());
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.daemon;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.radarcns.config.ServerConfig;
+import org.radarcns.prmtmonitor.consumer.KafkaReader;
+import org.radarcns.prmtmonitor.consumer.RecordsCapture;
+import org.radarcns.prmtmonitor.consumer.ReplayReader;
+import org.radarcns.prmtmonitor.consumer.RestReader;
+import org.radarcns.prmtmonitor.kafka.KafkaDataReader;
+import org.radarcns.prmtmonitor.kafka.OffsetCheckpointStore;
+import org.radarcns.prmtmonitor.kafka.ScheduledTaskExecutor;
+import org.radarcns.prmtmonitor.kafka.TaskExecutor;
+import org.radarcns.prmtmonitor.metrics.MetricsServer;
+import org.radarcns.producer.rest.RestClient;
+import org.radarcns.producer.rest.SchemaRetriever;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_BINARY;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_DECAY;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_GROUP;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_HTTP2;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_INSTANCE;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_MAX_BYTES;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_MAX_RECORDS;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_PERSISTENT;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_PIPELINED;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_POOL_SIZE;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_RATE;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_RESUME;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_SERIES_CAPACITY;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_CONSUMER_TIMEOUT;
+import static org.radarcns.prmtmonitor.kafka.KafkaDataReader.CONFIG_METRICS_PORT;
+
+/**
+ * Headless monitor, which consumes the data of all participants of a study once, and serves
+ * their status with a {@link StatusServer}. It is configured with a properties file that uses the
+ * same settings as the remote configuration of the app.
+ */
+public class MonitorDaemon implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MonitorDaemon.class);
+
+    public static final String KAFKA_REST_PROXY_URL_KEY = "kafka_rest_proxy_url";
+    public static final String SCHEMA_REGISTRY_URL_KEY = "schema_registry_url";
+    public static final String UNSAFE_KAFKA_CONNECTION = "unsafe_kafka_connection";
+    public static final String CONFIG_AUTHORIZATION = "kafka_rest_proxy_authorization";
+    public static final String CONFIG_DATA_DIR = "daemon_data_dir";
+    public static final String CONFIG_STATUS_HOST = "daemon_status_host";
+    public static final String CONFIG_STATUS_PORT = "daemon_status_port";
+    public static final String CONFIG_CAPTURE_FILE = "daemon_capture_file";
+    public static final String CONFIG_REPLAY_FILE = "daemon_replay_file";
+    public static final String CONFIG_REPLAY_SPEED = "daemon_replay_speed";
+
+    /** Time to wait for the reader threads to finish when closing. */
+    private static final long CLOSE_TIMEOUT_MS = 10_000L;
+    /**
+     * Default maximum number of samples kept per user and topic. The daemon only serves device
+     * summaries, which do not need the samples, so by default only the latest samples are kept.
+     */
+    private static final int DEFAULT_SERIES_CAPACITY = 128;
+
+    private final KafkaDataReader<SpecificRecord> dataReader;
+    private final StatusServer statusServer;
+    private final List<ScheduledTaskExecutor> executors;
+    private final RecordsCapture capture;
+    private final MetricsServer metricsServer;
+
+    public MonitorDaemon(Properties config) throws IOException {
+        String consumerGroup = config.getProperty(CONFIG_CONSUMER_GROUP, "prmt_monitor");
+        String consumerInstance = config.getProperty(CONFIG_CONSUMER_INSTANCE, "prmt_monitor_instance");
+        int consumerDownloadRate = getInt(config, CONFIG_CONSUMER_RATE, 10);
+        boolean consumerPersistentData = getBoolean(config, CONFIG_CONSUMER_PERSISTENT, false);
+        int consumerDecay = getInt(config, CONFIG_CONSUMER_DECAY, 300000);
+        boolean consumerBinary = getBoolean(config, CONFIG_CONSUMER_BINARY, false);
+        boolean consumerPipelined = getBoolean(config, CONFIG_CONSUMER_PIPELINED, false);
+        int consumerMaxRecords = getInt(config, CONFIG_CONSUMER_MAX_RECORDS, 1000);
+        long consumerMaxBytes = getLong(config, CONFIG_CONSUMER_MAX_BYTES, 1048576L);
+        long consumerTimeout = getLong(config, CONFIG_CONSUMER_TIMEOUT, 1000L);
+        int consumerPoolSize = getInt(config, CONFIG_CONSUMER_POOL_SIZE, 1);
+        String consumerResume = config.getProperty(CONFIG_CONSUMER_RESUME, "end");
+        int consumerSeriesCapacity = getInt(config, CONFIG_CONSUMER_SERIES_CAPACITY, DEFAULT_SERIES_CAPACITY);
+
+        KafkaReader kafkaReader;
+        String replayFile = config.getProperty(CONFIG_REPLAY_FILE);
+        if (replayFile != null && !replayFile.isEmpty()) {
+            kafkaReader = new ReplayReader(new File(replayFile),
+                    getDouble(config, CONFIG_REPLAY_SPEED, 0d));
+            capture = null;
+        } else {
+            String captureFile = config.getProperty(CONFIG_CAPTURE_FILE);
+            capture = captureFile != null && !captureFile.isEmpty()
+                    ? new RecordsCapture(new File(captureFile), consumerBinary) : null;
+            kafkaReader = createRestReader(config, consumerBinary, capture);
+        }
+
+        InetSocketAddress statusAddress = new InetSocketAddress(
+                config.getProperty(CONFIG_STATUS_HOST, "127.0.0.1"),
+                getInt(config, CONFIG_STATUS_PORT, 8080));
+        statusServer = new StatusServer(statusAddress);
+
+        executors = new CopyOnWriteArrayList<>();
+        TaskExecutor.Factory executorFactory = new TaskExecutor.Factory() {
+            @Override
+            public TaskExecutor create(String name) {
+                ScheduledTaskExecutor executor = new ScheduledTaskExecutor(name);
+                executors.add(executor);
+                return executor;
+            }
+        };
+
+        dataReader = new KafkaDataReader<>(statusServer, kafkaReader, executorFactory, consumerGroup, consumerInstance, consumerMaxRecords, consumerDownloadRate, consumerPersistentData, consumerDecay, consumerPipelined, consumerPoolSize);
+        File dataDir = new File(config.getProperty(CONFIG_DATA_DIR, "data"));
+        if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IOException("Cannot create data directory " + dataDir);
+        }
+        dataReader.setOffsetCheckpoints(
+                new OffsetCheckpointStore(new File(dataDir, "offsets_" + consumerGroup + ".tsv"), consumerDecay),
+                parseResumePolicy(consumerResume));
+        dataReader.setGetLimit(consumerMaxRecords);
+        dataReader.setGetByteLimit(consumerMaxBytes);
+        dataReader.setGetTimeout(consumerTimeout);
+        dataReader.setSeriesCapacity(consumerSeriesCapacity);
+        dataReader.addDataChangeListener(statusServer);
+
+        int metricsPort = getInt(config, CONFIG_METRICS_PORT, 0);
+        metricsServer = metricsPort > 0 ? new MetricsServer(dataReader.getMetrics(),
+                new InetSocketAddress(statusAddress.getAddress(), metricsPort)) : null;
+    }
+
+    private static RestReader createRestReader(Properties config, boolean binary,
+            RecordsCapture capture) throws MalformedURLException {
+        String urlString = config.getProperty(KAFKA_REST_PROXY_URL_KEY);
+        if (urlString == null || urlString.isEmpty()) {
+            throw new IllegalArgumentException("Missing setting " + KAFKA_REST_PROXY_URL_KEY);
+        }
+        boolean unsafeConnection = getBoolean(config, UNSAFE_KAFKA_CONNECTION, false);
+        ServerConfig schemaRegistry = new ServerConfig(config.getProperty(SCHEMA_REGISTRY_URL_KEY));
+        schemaRegistry.setUnsafe(unsafeConnection);
+        ServerConfig kafkaConfig = new ServerConfig(urlString);
+        kafkaConfig.setUnsafe(unsafeConnection);
+
+        RestClient httpClient = RestClient.global()
+                .server(kafkaConfig)
+                .gzipCompression(false)
+                .timeout(30, TimeUnit.SECONDS)
+                .build();
+
+        RestReader.Builder readerBuilder = new RestReader.Builder()
+                .httpClient(httpClient)
+                .schemaRetriever(new SchemaRetriever(schemaRegistry, 30))
+                .hasBinaryContent(binary)
+                .http2(getBoolean(config, CONFIG_CONSUMER_HTTP2, false))
+                .capture(capture);
+        String authorization = config.getProperty(CONFIG_AUTHORIZATION);
+        if (authorization != null && !authorization.isEmpty()) {
+            readerBuilder.addHeader("Authorization", authorization);
+        }
+        return readerBuilder.build();
+    }
+
+    /** Start the status server and subscribe to the topics of all monitored devices. */
+    public void start() throws IOException {
+        statusServer.start();
+        if (metricsServer != null) {
+            metricsServer.start();
+        }
+        dataReader.addTopics(dataReader.createMonitorTopics());
+    }
+
+    /** Stop serving the status and close the consumers, saving their offsets. */
+    @Override
+    public void close() {
+        statusServer.stop();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        dataReader.removeDataChangeListener(statusServer);
+        dataReader.close();
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        try {
+            for (ScheduledTaskExecutor executor : executors) {
+                long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+                if (!executor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Data reader did not close within {} ms", CLOSE_TIMEOUT_MS);
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException ex) {
+                logger.warn("Failed to close capture", ex);
+            }
+        }
+    }
+
+    private static KafkaDataReader.ResumePolicy parseResumePolicy(String policy) {
+        try {
+            return KafkaDataReader.ResumePolicy.valueOf(policy.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Unknown consumer resume policy {}, reading from the end", policy);
+            return KafkaDataReader.ResumePolicy.END;
+        }
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static long getLong(Properties config, String key, long defaultValue) {
+        String value = config.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private static double getDouble(Properties config, String key, double defaultValue) {
+        String value = config.getProperty(key);
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    private static boolean getBoolean(Properties config, String key, boolean defaultValue) {
+        String value = config.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: monitor-daemon <monitor.properties>");
+            System.exit(1);
+        }
+        Properties config = new Properties();
+        try (InputStream in = new FileInputStream(args[0])) {
+            config.load(in);
+        }
+
+        final MonitorDaemon daemon = new MonitorDaemon(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Shutting down monitor daemon");
+                daemon.close();
+            }
+        }, "monitor-daemon-shutdown"));
+        daemon.start();
+        logger.info("Monitor daemon started");
+    }
+}
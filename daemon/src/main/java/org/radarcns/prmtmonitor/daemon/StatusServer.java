@@ -0,0 +1,288 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.daemon;
+
+import com.squareup.moshi.JsonWriter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.radarcns.prmtmonitor.data.DataChange;
+import org.radarcns.prmtmonitor.data.DeviceSummary;
+import org.radarcns.prmtmonitor.data.StoreSnapshot;
+import org.radarcns.prmtmonitor.kafka.DataChangeListener;
+import org.radarcns.prmtmonitor.kafka.ServerStatusListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+
+/**
+ * Serves compact JSON status snapshots over HTTP, so that many lightweight clients can follow
+ * the participants without consuming any data themselves.
+ *
+ * <ul>
+ *     <li>{@code GET /status} returns the server and consumer state, the records read per
+ *     topic and the device summaries of all participants.</li>
+ *     <li>{@code GET /users/<userId>} returns the device summaries of a single participant.</li>
+ * </ul>
+ *
+ * Each response has an ETag of the data version it describes. A client that sends that ETag
+ * back in an If-None-Match header gets an empty 304 response until the data changes. The full
+ * status is serialized at most once per data version, however many clients poll it.
+ */
+public class StatusServer implements ServerStatusListener, DataChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(StatusServer.class);
+
+    private static final int NUM_THREADS = 4;
+    private static final String USERS_PATH = "/users/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, AtomicLong> recordsRead;
+    /** Incremented on each change of server status or consumer state. */
+    private final AtomicLong statusVersion;
+    private volatile StoreSnapshot snapshot;
+    private volatile Status serverStatus;
+    private volatile ConsumerState consumerState;
+    private String cachedTag;
+    private byte[] cachedStatus;
+
+    public StatusServer(InetSocketAddress address) throws IOException {
+        this.recordsRead = new ConcurrentHashMap<>();
+        this.statusVersion = new AtomicLong(0L);
+        this.snapshot = StoreSnapshot.EMPTY;
+        this.serverStatus = Status.CONNECTING;
+        this.consumerState = null;
+        this.cachedTag = null;
+        this.cachedStatus = null;
+
+        server = HttpServer.create(address, 0);
+        executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "status-server-" + count.incrementAndGet());
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleStatus(exchange);
+            }
+        });
+        server.createContext(USERS_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleUser(exchange);
+            }
+        });
+    }
+
+    /** Start serving requests. */
+    public void start() {
+        server.start();
+        logger.info("Serving status on {}", server.getAddress());
+    }
+
+    /** Stop serving requests, closing any open exchanges. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    @Override
+    public void updateServerStatus(Status status) {
+        serverStatus = status;
+        statusVersion.incrementAndGet();
+    }
+
+    @Override
+    public void updateConsumerState(ConsumerState state) {
+        consumerState = state;
+        statusVersion.incrementAndGet();
+    }
+
+    /**
+     * Records are only read as part of a poll that also changes the data version, so this does
+     * not change the status version.
+     */
+    @Override
+    public void updateRecordsRead(String topicName, int numberOfRecords) {
+        AtomicLong count = recordsRead.get(topicName);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong(0L);
+            count = recordsRead.putIfAbsent(topicName, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.addAndGet(numberOfRecords);
+    }
+
+    @Override
+    public void onDataChanged(DataChange change) {
+        snapshot = change.getSnapshot();
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            if (!isRead(exchange)) {
+                return;
+            }
+            StoreSnapshot currentSnapshot = snapshot;
+            String tag = "\"" + currentSnapshot.getVersion() + "-" + statusVersion.get() + "\"";
+            if (isNotModified(exchange, tag)) {
+                return;
+            }
+            respond(exchange, tag, statusBody(currentSnapshot, tag));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleUser(HttpExchange exchange) throws IOException {
+        try {
+            if (!isRead(exchange)) {
+                return;
+            }
+            String userId = exchange.getRequestURI().getPath().substring(USERS_PATH.length());
+            StoreSnapshot currentSnapshot = snapshot;
+            Map<String, DeviceSummary> summaries = currentSnapshot.getDeviceSummaries(userId);
+            if (summaries.isEmpty()) {
+                exchange.sendResponseHeaders(404, -1L);
+                return;
+            }
+            String tag = "\"" + currentSnapshot.getVersion() + "\"";
+            if (isNotModified(exchange, tag)) {
+                return;
+            }
+            Buffer buffer = new Buffer();
+            try (JsonWriter writer = JsonWriter.of(buffer)) {
+                writer.beginObject();
+                writer.name("version").value(currentSnapshot.getVersion());
+                writer.name("devices");
+                writeDevices(writer, summaries);
+                writer.endObject();
+            }
+            respond(exchange, tag, buffer.readByteArray());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Full status, serialized once per tag. */
+    private synchronized byte[] statusBody(StoreSnapshot currentSnapshot, String tag) throws IOException {
+        if (tag.equals(cachedTag)) {
+            return cachedStatus;
+        }
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = JsonWriter.of(buffer)) {
+            writer.beginObject();
+            writer.name("version").value(currentSnapshot.getVersion());
+            writer.name("serverStatus").value(serverStatus != null ? serverStatus.name() : null);
+            writer.name("consumerState").value(consumerState != null ? consumerState.name() : null);
+            writer.name("recordsRead").beginObject();
+            for (Map.Entry<String, AtomicLong> topic : recordsRead.entrySet()) {
+                writer.name(topic.getKey()).value(topic.getValue().get());
+            }
+            writer.endObject();
+            writer.name("users").beginObject();
+            for (String userId : currentSnapshot.getUsers()) {
+                writer.name(userId);
+                writeDevices(writer, currentSnapshot.getDeviceSummaries(userId));
+            }
+            writer.endObject();
+            writer.endObject();
+        }
+        cachedTag = tag;
+        cachedStatus = buffer.readByteArray();
+        return cachedStatus;
+    }
+
+    private static void writeDevices(JsonWriter writer, Map<String, DeviceSummary> summaries) throws IOException {
+        writer.beginObject();
+        for (DeviceSummary summary : summaries.values()) {
+            writer.name(summary.getDevice()).beginObject();
+            writer.name("connected").value(summary.isConnected());
+            writer.name("lastTimeReceived").value(summary.getLastTimeReceived());
+            writer.name("lastSourceId").value(summary.getLastSourceId());
+            writer.name("numSamples").value(summary.getNumSamples());
+            writeDouble(writer, "batteryLevel", summary.getLastBatteryLevel());
+            writeDouble(writer, "sampleRate", summary.getSampleRate());
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    /** Write a double value, leaving it out if it is unknown. */
+    private static void writeDouble(JsonWriter writer, String name, double value) throws IOException {
+        if (!Double.isNaN(value)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    /** Whether the request reads data, responding with 405 if it does not. */
+    private static boolean isRead(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET") || method.equals("HEAD")) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1L);
+        return false;
+    }
+
+    /** Whether the client already has given version, responding with 304 if it does. */
+    private static boolean isNotModified(HttpExchange exchange, String tag) throws IOException {
+        if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.getResponseHeaders().set("ETag", tag);
+            exchange.sendResponseHeaders(304, -1L);
+            return true;
+        }
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, String tag, byte[] body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        headers.set("Cache-Control", "no-cache");
+        headers.set("ETag", tag);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1L);
+        } else {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Kafka cluster with a schema registry: the partition logs of the monitored topics, and
+ * the IDs of their key and value schemas. This class is thread-safe.
+ */
+final class MockBroker {
+    private final Map<String, PartitionLog[]> topics;
+    private final Map<String, int[]> topicSchemaIds;
+    private final Map<Integer, Schema> schemas;
+    private final AtomicLong recordsProduced;
+
+    /**
+     * Broker with all topics of the monitored devices.
+     * @param numPartitions number of partitions per topic
+     * @param retention number of records retained per partition
+     */
+    MockBroker(int numPartitions, int retention) {
+        topics = new LinkedHashMap<>();
+        topicSchemaIds = new HashMap<>();
+        schemas = new HashMap<>();
+        recordsProduced = new AtomicLong(0L);
+
+        Map<Schema, Integer> schemaIds = new HashMap<>();
+        for (Payloads.TopicPayload topic : Payloads.TOPICS) {
+            PartitionLog[] partitions = new PartitionLog[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                partitions[i] = new PartitionLog(topic.name, i, retention);
+            }
+            topics.put(topic.name, partitions);
+            topicSchemaIds.put(topic.name, new int[] {
+                    register(schemaIds, Payloads.KEY_SCHEMA),
+                    register(schemaIds, topic.valueSchema)});
+        }
+    }
+
+    private int register(Map<Schema, Integer> schemaIds, Schema schema) {
+        Integer id = schemaIds.get(schema);
+        if (id == null) {
+            id = schemaIds.size() + 1;
+            schemaIds.put(schema, id);
+            schemas.put(id, schema);
+        }
+        return id;
+    }
+
+    Set<String> getTopics() {
+        return Collections.unmodifiableSet(topics.keySet());
+    }
+
+    /** Partitions of a topic, or null if the topic does not exist. */
+    PartitionLog[] getPartitions(String topic) {
+        return topics.get(topic);
+    }
+
+    /** Partition of a topic, or null if it does not exist. */
+    PartitionLog getPartition(String topic, int partition) {
+        PartitionLog[] partitions = topics.get(topic);
+        if (partitions == null || partition < 0 || partition >= partitions.length) {
+            return null;
+        }
+        return partitions[partition];
+    }
+
+    /** Schema with given ID, or null if it is not registered. */
+    Schema getSchema(int id) {
+        return schemas.get(id);
+    }
+
+    /** IDs of the key and value schema of a topic. */
+    int getSchemaId(String topic, boolean ofValue) {
+        return topicSchemaIds.get(topic)[ofValue ? 1 : 0];
+    }
+
+    /** Subjects of the schema registry, with the ID of their schema. */
+    Map<String, Integer> getSubjects() {
+        Map<String, Integer> subjects = new LinkedHashMap<>();
+        for (String topic : topics.keySet()) {
+            subjects.put(topic + "-key", getSchemaId(topic, false));
+            subjects.put(topic + "-value", getSchemaId(topic, true));
+        }
+        return subjects;
+    }
+
+    /**
+     * Append records to a topic, partitioned by user as the RADAR producers do, and wake up any
+     * consumers waiting for records.
+     */
+    void produce(String topic, int user, List<GenericRecord> keys, List<GenericRecord> values) {
+        PartitionLog[] partitions = topics.get(topic);
+        PartitionLog log = partitions[user % partitions.length];
+        for (int i = 0; i < keys.size(); i++) {
+            log.append(keys.get(i), values.get(i));
+        }
+        recordsProduced.addAndGet(keys.size());
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /** Wait until new records are produced, or until the timeout has passed. */
+    synchronized void awaitRecords(long timeoutMs) throws InterruptedException {
+        if (timeoutMs > 0L) {
+            wait(timeoutMs);
+        }
+    }
+
+    /** Total number of records produced. */
+    long getRecordsProduced() {
+        return recordsProduced.get();
+    }
+
+    /** All partitions of given topics. */
+    List<PartitionLog> partitionsOf(Iterable<String> topicNames) {
+        List<PartitionLog> result = new ArrayList<>();
+        for (String topic : topicNames) {
+            PartitionLog[] partitions = topics.get(topic);
+            if (partitions != null) {
+                Collections.addAll(result, partitions);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal Kafka REST Proxy v2 and schema registry, serving the records of a {@link MockBroker}.
+ * It implements exactly the calls that the monitor makes, in both the avro and the binary
+ * embedded format, so the monitor or its daemon can be run and measured without a RADAR server.
+ *
+ * <p>The REST proxy is served under {@code /kafka/} and the schema registry under
+ * {@code /schema/}. Consumer instances start reading at the end of their partitions, unless
+ * they seek elsewhere. Offsets that are no longer retained are read from the oldest retained
+ * record.
+ */
+public class MockRestProxy {
+    private static final Logger logger = LoggerFactory.getLogger(MockRestProxy.class);
+
+    static final String KAFKA_PATH = "/kafka/";
+    static final String SCHEMA_PATH = "/schema/";
+
+    private static final int NUM_THREADS = 8;
+    /** Default request timeout of the Kafka REST Proxy. */
+    private static final long DEFAULT_TIMEOUT_MS = 1000L;
+    /** Default maximum response size of the Kafka REST Proxy. */
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+    /** Maximum number of records read from a single partition per request. */
+    private static final int MAX_PARTITION_RECORDS = 1000;
+    private static final String AVRO_CONTENT_TYPE = "application/vnd.kafka.avro.v2+json";
+    private static final String BINARY_CONTENT_TYPE = "application/vnd.kafka.binary.v2+json";
+    private static final String JSON_CONTENT_TYPE = "application/vnd.kafka.v2+json";
+    private static final String SCHEMA_CONTENT_TYPE = "application/vnd.schemaregistry.v1+json";
+
+    private final MockBroker broker;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, ConsumerInstance> consumers;
+    private final AtomicLong recordsServed;
+    private final AtomicLong bytesServed;
+    private volatile boolean compression;
+
+    public MockRestProxy(MockBroker broker, InetSocketAddress address) throws IOException {
+        this.broker = broker;
+        this.consumers = new ConcurrentHashMap<>();
+        this.recordsServed = new AtomicLong(0L);
+        this.bytesServed = new AtomicLong(0L);
+
+        server = HttpServer.create(address, 0);
+        executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "mock-proxy-" + count.incrementAndGet());
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(KAFKA_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleKafka(exchange, split(exchange, KAFKA_PATH));
+                } catch (JSONException ex) {
+                    sendError(exchange, 422, 42201, "Malformed request: " + ex.getMessage());
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.createContext(SCHEMA_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleSchema(exchange, split(exchange, SCHEMA_PATH));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    /** Start serving requests. */
+    public void start() {
+        server.start();
+        logger.info("Serving mock Kafka REST proxy on http://{}:{}{}",
+                server.getAddress().getHostString(), server.getAddress().getPort(), KAFKA_PATH);
+    }
+
+    /**
+     * Gzip compress record responses if the consumer accepts it. By default, responses are not
+     * compressed.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /** Stop serving requests, closing any open exchanges. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Run a mock REST proxy with simulated participants, logging throughput every ten
+     * seconds. Options are {@code --host}, {@code --port}, {@code --participants},
+     * {@code --partitions}, {@code --upload-interval} (seconds), {@code --retention}
+     * (records per partition), {@code --seed} and {@code --gzip} (true or false).
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("--host", "127.0.0.1");
+        options.put("--port", "8082");
+        options.put("--participants", "10");
+        options.put("--partitions", String.valueOf(Payloads.NUM_PARTITIONS));
+        options.put("--upload-interval", "10");
+        options.put("--retention", "100000");
+        options.put("--seed", "42");
+        options.put("--gzip", "false");
+        for (int i = 0; i < args.length; i++) {
+            if (!options.containsKey(args[i]) || i + 1 == args.length) {
+                System.err.println("Usage: MockRestProxy [--host HOST] [--port PORT]"
+                        + " [--participants N] [--partitions N] [--upload-interval SECONDS]"
+                        + " [--retention RECORDS] [--seed SEED] [--gzip true|false]");
+                System.exit(1);
+            }
+            options.put(args[i], args[++i]);
+        }
+
+        MockBroker broker = new MockBroker(Integer.parseInt(options.get("--partitions")),
+                Integer.parseInt(options.get("--retention")));
+        final MockRestProxy proxy = new MockRestProxy(broker, new InetSocketAddress(
+                options.get("--host"), Integer.parseInt(options.get("--port"))));
+        proxy.setCompression(Boolean.parseBoolean(options.get("--gzip")));
+        final SyntheticProducer producer = new SyntheticProducer(broker,
+                Integer.parseInt(options.get("--participants")),
+                Integer.parseInt(options.get("--upload-interval")),
+                Long.parseLong(options.get("--seed")));
+        final StatsLogger stats = new StatsLogger(broker, proxy);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stats.stop();
+                producer.stop();
+                proxy.stop();
+            }
+        }, "mock-proxy-shutdown"));
+
+        proxy.start();
+        producer.start();
+        stats.start();
+    }
+
+    /** Total number of records served to consumers. */
+    public long getRecordsServed() {
+        return recordsServed.get();
+    }
+
+    /** Total number of bytes of record responses served to consumers, after compression. */
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private static String[] split(HttpExchange exchange, String prefix) {
+        String path = exchange.getRequestURI().getPath().substring(prefix.length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() ? new String[0] : path.split("/");
+    }
+
+    private void handleKafka(HttpExchange exchange, String[] path) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (path.length == 0) {
+            sendJson(exchange, 200, JSON_CONTENT_TYPE, "{}");
+        } else if (path[0].equals("topics")) {
+            if (path.length == 1 && method.equals("GET")) {
+                sendJson(exchange, 200, JSON_CONTENT_TYPE,
+                        new JSONArray(broker.getTopics()).toString());
+            } else if (path.length == 3 && path[2].equals("partitions")
+                    && method.equals("GET")) {
+                handlePartitions(exchange, path[1]);
+            } else {
+                sendError(exchange, 404, 404, "HTTP 404 Not Found");
+            }
+        } else if (path[0].equals("consumers") && path.length >= 2) {
+            if (path.length == 2 && method.equals("POST")) {
+                handleCreateConsumer(exchange, path[1]);
+                return;
+            }
+            if (path.length < 4 || !path[2].equals("instances")) {
+                sendError(exchange, 404, 404, "HTTP 404 Not Found");
+                return;
+            }
+            ConsumerInstance consumer = consumers.get(consumerKey(path[1], path[3]));
+            if (consumer == null) {
+                sendError(exchange, 404, 40403, "Consumer instance not found.");
+                return;
+            }
+            String action = path.length == 4 ? "" : path[4];
+            if (path.length == 4 && method.equals("DELETE")) {
+                consumers.remove(consumerKey(path[1], path[3]));
+                sendEmpty(exchange);
+            } else if (action.equals("subscription") && method.equals("POST")) {
+                JSONObject request = readJson(exchange);
+                List<String> topics = new ArrayList<>();
+                JSONArray topicArray = request.getJSONArray("topics");
+                for (int i = 0; i < topicArray.length(); i++) {
+                    topics.add(topicArray.getString(i));
+                }
+                consumer.assign(broker.partitionsOf(topics));
+                sendEmpty(exchange);
+            } else if (action.equals("assignments") && method.equals("POST")) {
+                consumer.assign(readPartitions(readJson(exchange).getJSONArray("partitions")));
+                sendEmpty(exchange);
+            } else if (action.equals("positions") && path.length == 6 && path[5].equals("end")
+                    && method.equals("POST")) {
+                for (PartitionLog partition : readPartitions(
+                        readJson(exchange).getJSONArray("partitions"))) {
+                    consumer.seek(partition, partition.getEndOffset());
+                }
+                sendEmpty(exchange);
+            } else if (action.equals("positions") && path.length == 5 && method.equals("POST")) {
+                JSONArray offsets = readJson(exchange).getJSONArray("offsets");
+                for (int i = 0; i < offsets.length(); i++) {
+                    JSONObject offset = offsets.getJSONObject(i);
+                    PartitionLog partition = readPartition(offset);
+                    if (partition != null) {
+                        consumer.seek(partition, offset.getLong("offset"));
+                    }
+                }
+                sendEmpty(exchange);
+            } else if (action.equals("records") && method.equals("GET")) {
+                handleRecords(exchange, consumer);
+            } else {
+                sendError(exchange, 404, 404, "HTTP 404 Not Found");
+            }
+        } else {
+            sendError(exchange, 404, 404, "HTTP 404 Not Found");
+        }
+    }
+
+    private void handlePartitions(HttpExchange exchange, String topic) throws IOException {
+        PartitionLog[] partitions = broker.getPartitions(topic);
+        if (partitions == null) {
+            sendError(exchange, 404, 40401, "Topic not found.");
+            return;
+        }
+        JSONArray result = new JSONArray();
+        for (int i = 0; i < partitions.length; i++) {
+            result.put(new JSONObject()
+                    .put("partition", i)
+                    .put("leader", 0)
+                    .put("replicas", new JSONArray()));
+        }
+        sendJson(exchange, 200, JSON_CONTENT_TYPE, result.toString());
+    }
+
+    private void handleCreateConsumer(HttpExchange exchange, String group) throws IOException {
+        JSONObject request = readJson(exchange);
+        String name = request.optString("name", null);
+        if (name == null) {
+            name = "consumer-" + consumers.size();
+        }
+        boolean binary = request.optString("format", "binary").equals("binary");
+        ConsumerInstance consumer = new ConsumerInstance(binary);
+        if (consumers.putIfAbsent(consumerKey(group, name), consumer) != null) {
+            sendError(exchange, 409, 40902, "Consumer with specified consumer ID already exists "
+                    + "in the specified consumer group.");
+            return;
+        }
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        sendJson(exchange, 200, JSON_CONTENT_TYPE, new JSONObject()
+                .put("instance_id", name)
+                .put("base_uri", "http://" + host + KAFKA_PATH + "consumers/" + group
+                        + "/instances/" + name)
+                .toString());
+    }
+
+    private void handleRecords(HttpExchange exchange, ConsumerInstance consumer)
+            throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        long timeout = query.containsKey("timeout")
+                ? Long.parseLong(query.get("timeout")) : DEFAULT_TIMEOUT_MS;
+        long maxBytes = query.containsKey("max_bytes")
+                ? Long.parseLong(query.get("max_bytes")) : DEFAULT_MAX_BYTES;
+        long deadline = System.currentTimeMillis() + timeout;
+
+        StringBuilder response = new StringBuilder();
+        int numRecords;
+        try {
+            while (true) {
+                response.setLength(0);
+                numRecords = consumer.poll(response, maxBytes);
+                long remaining = deadline - System.currentTimeMillis();
+                if (numRecords > 0 || remaining <= 0L) {
+                    break;
+                }
+                broker.awaitRecords(remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 500, 500, "Interrupted");
+            return;
+        }
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        if (compression && acceptsGzip(exchange)) {
+            body = gzip(body);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        recordsServed.addAndGet(numRecords);
+        bytesServed.addAndGet(body.length);
+        send(exchange, 200, consumer.binary ? BINARY_CONTENT_TYPE : AVRO_CONTENT_TYPE, body);
+    }
+
+    private void handleSchema(HttpExchange exchange, String[] path) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            sendError(exchange, 405, 405, "HTTP 405 Method Not Allowed");
+        } else if (path.length == 1 && path[0].equals("subjects")) {
+            sendJson(exchange, 200, SCHEMA_CONTENT_TYPE,
+                    new JSONArray(broker.getSubjects().keySet()).toString());
+        } else if (path.length == 3 && path[0].equals("schemas") && path[1].equals("ids")) {
+            Schema schema;
+            try {
+                schema = broker.getSchema(Integer.parseInt(path[2]));
+            } catch (NumberFormatException ex) {
+                schema = null;
+            }
+            if (schema == null) {
+                sendError(exchange, 404, 40403, "Schema not found");
+            } else {
+                sendJson(exchange, 200, SCHEMA_CONTENT_TYPE,
+                        new JSONObject().put("schema", schema.toString()).toString());
+            }
+        } else if (path.length == 4 && path[0].equals("subjects")
+                && path[2].equals("versions")) {
+            Integer id = broker.getSubjects().get(path[1]);
+            if (id == null) {
+                sendError(exchange, 404, 40401, "Subject not found.");
+            } else if (!path[3].equals("latest") && !path[3].equals("1")) {
+                sendError(exchange, 404, 40402, "Version not found.");
+            } else {
+                sendJson(exchange, 200, SCHEMA_CONTENT_TYPE, new JSONObject()
+                        .put("subject", path[1])
+                        .put("version", 1)
+                        .put("id", id)
+                        .put("schema", broker.getSchema(id).toString())
+                        .toString());
+            }
+        } else {
+            sendError(exchange, 404, 404, "HTTP 404 Not Found");
+        }
+    }
+
+    private List<PartitionLog> readPartitions(JSONArray partitionArray) {
+        List<PartitionLog> partitions = new ArrayList<>(partitionArray.length());
+        for (int i = 0; i < partitionArray.length(); i++) {
+            PartitionLog partition = readPartition(partitionArray.getJSONObject(i));
+            if (partition != null) {
+                partitions.add(partition);
+            }
+        }
+        return partitions;
+    }
+
+    private PartitionLog readPartition(JSONObject object) {
+        return broker.getPartition(object.getString("topic"), object.getInt("partition"));
+    }
+
+    private static String consumerKey(String group, String instance) {
+        return group + '/' + instance;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query == null) {
+            return result;
+        }
+        for (String parameter : query.split("&")) {
+            int index = parameter.indexOf('=');
+            if (index > 0) {
+                result.put(parameter.substring(0, index), parameter.substring(index + 1));
+            }
+        }
+        return result;
+    }
+
+    private static JSONObject readJson(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        String body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return body.trim().isEmpty() ? new JSONObject() : new JSONObject(body);
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        List<String> encodings = exchange.getRequestHeaders().get("Accept-Encoding");
+        if (encodings == null) {
+            return false;
+        }
+        for (String encoding : encodings) {
+            for (String value : encoding.split(",")) {
+                if (value.trim().startsWith("gzip")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sendEmpty(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, int errorCode,
+            String message) throws IOException {
+        sendJson(exchange, status, JSON_CONTENT_TYPE, new JSONObject()
+                .put("error_code", errorCode)
+                .put("message", message)
+                .toString());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String contentType,
+            String body) throws IOException {
+        send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** Assigned partitions and read positions of a single consumer instance. */
+    private final class ConsumerInstance {
+        private final boolean binary;
+        private final Map<PartitionLog, Long> positions;
+
+        ConsumerInstance(boolean binary) {
+            this.binary = binary;
+            this.positions = new LinkedHashMap<>();
+        }
+
+        /** Assign partitions, starting at their end as with auto.offset.reset latest. */
+        synchronized void assign(List<PartitionLog> partitions) {
+            positions.clear();
+            for (PartitionLog partition : partitions) {
+                positions.put(partition, partition.getEndOffset());
+            }
+        }
+
+        synchronized void seek(PartitionLog partition, long offset) {
+            if (positions.containsKey(partition)) {
+                positions.put(partition, offset);
+            }
+        }
+
+        /**
+         * Append the records after the current positions to a JSON array, until the response
+         * exceeds given number of bytes, and advance the positions.
+         * @return number of records appended
+         */
+        synchronized int poll(StringBuilder builder, long maxBytes) throws IOException {
+            builder.append('[');
+            int numRecords = 0;
+            for (Map.Entry<PartitionLog, Long> position : positions.entrySet()) {
+                if (builder.length() >= maxBytes) {
+                    break;
+                }
+                List<PartitionLog.LogRecord> records = position.getKey().read(
+                        position.getValue(), MAX_PARTITION_RECORDS);
+                long offset = position.getValue();
+                for (PartitionLog.LogRecord record : records) {
+                    if (numRecords > 0) {
+                        builder.append(',');
+                    }
+                    appendRecord(builder, record);
+                    numRecords++;
+                    offset = record.offset + 1;
+                    if (builder.length() >= maxBytes) {
+                        break;
+                    }
+                }
+                position.setValue(offset);
+            }
+            builder.append(']');
+            return numRecords;
+        }
+
+        private void appendRecord(StringBuilder builder, PartitionLog.LogRecord record)
+                throws IOException {
+            String[] encoding = binary ? record.binaryEncoding : record.avroEncoding;
+            if (encoding == null) {
+                if (binary) {
+                    encoding = new String[] {
+                            JSONObject.quote(encodeBinary(record.topic, false, record.key)),
+                            JSONObject.quote(encodeBinary(record.topic, true, record.value))};
+                    record.binaryEncoding = encoding;
+                } else {
+                    encoding = new String[] {
+                            Payloads.avroJson(record.key), Payloads.avroJson(record.value)};
+                    record.avroEncoding = encoding;
+                }
+            }
+            builder.append("{\"topic\":\"").append(record.topic)
+                    .append("\",\"key\":").append(encoding[0])
+                    .append(",\"value\":").append(encoding[1])
+                    .append(",\"partition\":").append(record.partition)
+                    .append(",\"offset\":").append(record.offset)
+                    .append('}');
+        }
+
+        /** Base64 of the Confluent wire format: magic byte, schema ID and Avro binary. */
+        private String encodeBinary(String topic, boolean ofValue, GenericRecord record)
+                throws IOException {
+            byte[] data = Payloads.avroBinary(record);
+            ByteBuffer buffer = ByteBuffer.allocate(5 + data.length);
+            buffer.put((byte) 0);
+            buffer.putInt(broker.getSchemaId(topic, ofValue));
+            buffer.put(data);
+            return Base64.getEncoder().encodeToString(buffer.array());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records of a single topic partition. Only the most recent records are retained, in a ring
+ * buffer, but offsets keep increasing as in Kafka. This class is thread-safe.
+ */
+final class PartitionLog {
+    private final String topic;
+    private final int partition;
+    private final LogRecord[] records;
+    /** Offset of the next record to append. */
+    private long endOffset;
+
+    PartitionLog(String topic, int partition, int capacity) {
+        this.topic = topic;
+        this.partition = partition;
+        this.records = new LogRecord[capacity];
+        this.endOffset = 0L;
+    }
+
+    synchronized void append(GenericRecord key, GenericRecord value) {
+        records[(int) (endOffset % records.length)] = new LogRecord(topic, partition, endOffset, key, value);
+        endOffset++;
+    }
+
+    /** Offset of the next record to be appended. */
+    synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /** Offset of the oldest retained record. */
+    synchronized long getStartOffset() {
+        return Math.max(0L, endOffset - records.length);
+    }
+
+    /**
+     * Read records from given offset. Offsets of records that are no longer retained are read
+     * from the oldest retained record instead.
+     */
+    synchronized List<LogRecord> read(long offset, int maxRecords) {
+        long start = Math.max(offset, getStartOffset());
+        long end = Math.min(endOffset, start + maxRecords);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        List<LogRecord> result = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            result.add(records[(int) (i % records.length)]);
+        }
+        return result;
+    }
+
+    /** A record in the log. Its encodings are cached once a consumer requested them. */
+    static final class LogRecord {
+        final String topic;
+        final int partition;
+        final long offset;
+        final GenericRecord key;
+        final GenericRecord value;
+        volatile String[] avroEncoding;
+        volatile String[] binaryEncoding;
+
+        LogRecord(String topic, int partition, long offset, GenericRecord key, GenericRecord value) {
+            this.topic = topic;
+            this.partition = partition;
+            this.offset = offset;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
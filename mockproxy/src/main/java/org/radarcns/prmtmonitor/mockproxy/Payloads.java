@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated records of all topics that the monitor subscribes to, with the schemas, sample rates
+ * and value ranges of the actual devices. Records are generated the way devices upload them: in
+ * runs per user and topic, covering a few seconds of data each.
+ */
+public final class Payloads {
+    public static final Schema KEY_SCHEMA = SchemaBuilder.record("ObservationKey")
+            .namespace("org.radarcns.kafka").fields()
+            .optionalString("projectId")
+            .requiredString("userId")
+            .requiredString("sourceId")
+            .endRecord();
+
+    private static final Schema BATTERY_STATUS = SchemaBuilder.enumeration("BatteryStatus")
+            .namespace("org.radarcns.passive.phone")
+            .symbols("UNKNOWN", "CHARGING", "DISCHARGING", "NOT_CHARGING", "FULL");
+
+    /** Topics subscribed to by the monitor service. */
+    public static final List<TopicPayload> TOPICS = Collections.unmodifiableList(Arrays.asList(
+            new TopicPayload("android_phone_acceleration", acceleration("org.radarcns.passive.phone", "PhoneAcceleration"), 50d),
+            new TopicPayload("android_phone_battery_level", SchemaBuilder.record("PhoneBatteryLevel")
+                    .namespace("org.radarcns.passive.phone").fields()
+                    .requiredDouble("time")
+                    .requiredDouble("timeReceived")
+                    .requiredFloat("batteryLevel")
+                    .requiredBoolean("isPlugged")
+                    .name("status").type(BATTERY_STATUS).noDefault()
+                    .endRecord(), 1d / 60d),
+            new TopicPayload("android_empatica_e4_acceleration", acceleration("org.radarcns.passive.empatica", "EmpaticaE4Acceleration"), 32d),
+            new TopicPayload("android_empatica_e4_battery_level", singleValue("org.radarcns.passive.empatica", "EmpaticaE4BatteryLevel", "batteryLevel"), 1d / 60d),
+            new TopicPayload("android_empatica_e4_blood_volume_pulse", singleValue("org.radarcns.passive.empatica", "EmpaticaE4BloodVolumePulse", "bloodVolumePulse"), 64d),
+            new TopicPayload("android_empatica_e4_electrodermal_activity", singleValue("org.radarcns.passive.empatica", "EmpaticaE4ElectroDermalActivity", "electroDermalActivity"), 4d),
+            new TopicPayload("android_biovotion_vsm1_acceleration", acceleration("org.radarcns.passive.phone", "PhoneAcceleration"), 51.2d),
+            new TopicPayload("android_biovotion_vsm1_battery_level", SchemaBuilder.record("BiovotionVsm1BatteryLevel")
+                    .namespace("org.radarcns.passive.biovotion").fields()
+                    .requiredDouble("time")
+                    .requiredDouble("timeReceived")
+                    .requiredFloat("batteryLevel")
+                    .requiredFloat("chargeRate")
+                    .requiredFloat("voltage")
+                    .name("status").type(BATTERY_STATUS).noDefault()
+                    .endRecord(), 1d / 60d),
+            new TopicPayload("android_biovotion_vsm1_ppg_raw", SchemaBuilder.record("BiovotionVsm1PpgRaw")
+                    .namespace("org.radarcns.passive.biovotion").fields()
+                    .requiredDouble("time")
+                    .requiredDouble("timeReceived")
+                    .requiredInt("red")
+                    .requiredInt("green")
+                    .requiredInt("ir")
+                    .requiredInt("dark")
+                    .endRecord(), 51.2d)));
+
+    /** Number of partitions per topic. */
+    public static final int NUM_PARTITIONS = 3;
+    /** Seconds of data in each upload of a device. */
+    private static final double UPLOAD_WINDOW = 10d;
+    private static final double START_TIME = 1.5e9;
+
+    private Payloads() {
+        // utility class
+    }
+
+    private static Schema acceleration(String namespace, String name) {
+        return SchemaBuilder.record(name).namespace(namespace).fields()
+                .requiredDouble("time")
+                .requiredDouble("timeReceived")
+                .requiredFloat("x")
+                .requiredFloat("y")
+                .requiredFloat("z")
+                .endRecord();
+    }
+
+    private static Schema singleValue(String namespace, String name, String field) {
+        return SchemaBuilder.record(name).namespace(namespace).fields()
+                .requiredDouble("time")
+                .requiredDouble("timeReceived")
+                .requiredFloat(field)
+                .endRecord();
+    }
+
+    /** Topic payload by topic name. */
+    public static TopicPayload topic(String name) {
+        for (TopicPayload topic : TOPICS) {
+            if (topic.name.equals(name)) {
+                return topic;
+            }
+        }
+        throw new IllegalArgumentException("Unknown topic " + name);
+    }
+
+    /** ID of a generated user. */
+    public static String userId(int user) {
+        return "user-" + user;
+    }
+
+    /** Observation key of the device data of a generated user. */
+    public static GenericRecord key(int user) {
+        GenericRecord key = new GenericData.Record(KEY_SCHEMA);
+        key.put("projectId", "radar-pilot");
+        key.put("userId", userId(user));
+        key.put("sourceId", "source-" + user);
+        return key;
+    }
+
+    /**
+     * Generate records of all topics for given number of users. Each user uploads the data of a
+     * few seconds of each topic in turn; topics with a low sample rate only occasionally have a
+     * sample in such an upload.
+     * @param numRecords number of records to generate
+     * @param numUsers number of users to generate records for
+     * @param seed random seed
+     */
+    public static List<Record> records(int numRecords, int numUsers, long seed) {
+        Random random = new Random(seed);
+        List<Record> records = new ArrayList<>(numRecords);
+        long[] offsets = new long[TOPICS.size() * NUM_PARTITIONS];
+        double[][] pending = new double[numUsers][TOPICS.size()];
+        long[][] sampleIndex = new long[numUsers][TOPICS.size()];
+
+        for (int window = 0; records.size() < numRecords; window++) {
+            double windowStart = START_TIME + window * UPLOAD_WINDOW;
+            for (int user = 0; user < numUsers && records.size() < numRecords; user++) {
+                GenericRecord key = key(user);
+                int partition = user % NUM_PARTITIONS;
+
+                for (int t = 0; t < TOPICS.size() && records.size() < numRecords; t++) {
+                    TopicPayload topic = TOPICS.get(t);
+                    pending[user][t] += topic.rate * UPLOAD_WINDOW;
+                    int numSamples = (int) pending[user][t];
+                    pending[user][t] -= numSamples;
+                    double timeReceived = windowStart + UPLOAD_WINDOW + random.nextDouble();
+                    for (int i = 0; i < numSamples && records.size() < numRecords; i++) {
+                        double time = windowStart + i / topic.rate;
+                        GenericRecord value = topic.value(sampleIndex[user][t]++, time, timeReceived, random);
+                        int topicPartition = t * NUM_PARTITIONS + partition;
+                        records.add(new Record(topic.name, partition, offsets[topicPartition]++, key, value));
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Kafka REST Proxy records response in the JSON embedded Avro format, with keys and values
+     * in the Avro JSON encoding.
+     */
+    public static byte[] jsonResponse(List<Record> records) throws IOException {
+        StringBuilder builder = new StringBuilder(records.size() * 200);
+        builder.append('[');
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"topic\":\"").append(record.topic)
+                    .append("\",\"key\":").append(avroJson(record.key))
+                    .append(",\"value\":").append(avroJson(record.value))
+                    .append(",\"partition\":").append(record.partition)
+                    .append(",\"offset\":").append(record.offset)
+                    .append('}');
+        }
+        builder.append(']');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Record in the Avro JSON encoding. */
+    public static String avroJson(GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonEncoder encoder = EncoderFactory.get().jsonEncoder(record.getSchema(), out);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Record in the Avro binary encoding, without any header. */
+    public static byte[] avroBinary(GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    /** Key and value of a record as JSONObjects, as decoded from a JSON records response. */
+    public static JSONObject[] toJson(Record record) throws IOException {
+        return new JSONObject[] {
+                new JSONObject(avroJson(record.key)), new JSONObject(avroJson(record.value))};
+    }
+
+    /** Generator of the values of a single topic. */
+    public static final class TopicPayload {
+        public final String name;
+        public final Schema valueSchema;
+        /** Samples per second. */
+        public final double rate;
+
+        TopicPayload(String name, Schema valueSchema, double rate) {
+            this.name = name;
+            this.valueSchema = valueSchema;
+            this.rate = rate;
+        }
+
+        /** Generate the value of the sample with given index. */
+        GenericRecord value(long index, double time, double timeReceived, Random random) {
+            GenericRecord value = new GenericData.Record(valueSchema);
+            for (Schema.Field field : valueSchema.getFields()) {
+                String fieldName = field.name();
+                switch (field.schema().getType()) {
+                    case DOUBLE:
+                        value.put(fieldName, fieldName.equals("time") ? time : timeReceived);
+                        break;
+                    case FLOAT:
+                        value.put(fieldName, floatValue(fieldName, index, random));
+                        break;
+                    case INT:
+                        value.put(fieldName, 20_000 + (int) (5_000 * Math.sin(index * 0.2)) + random.nextInt(200));
+                        break;
+                    case BOOLEAN:
+                        value.put(fieldName, index % 10 == 0);
+                        break;
+                    case ENUM:
+                        value.put(fieldName, new GenericData.EnumSymbol(field.schema(), "DISCHARGING"));
+                        break;
+                    default:
+                        throw new IllegalStateException("No generator for " + field.schema());
+                }
+            }
+            return value;
+        }
+
+        private float floatValue(String fieldName, long index, Random random) {
+            switch (fieldName) {
+                case "batteryLevel":
+                    return Math.max(0.05f, 1f - index * 0.002f);
+                case "voltage":
+                    return 3.7f + 0.1f * random.nextFloat();
+                case "chargeRate":
+                    return -0.01f * random.nextFloat();
+                case "electroDermalActivity":
+                    return 0.3f + 0.05f * (float) Math.sin(index * 0.01) + 0.01f * random.nextFloat();
+                default:
+                    return (float) Math.sin(index * 0.1) + 0.05f * (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /** A generated Kafka record. */
+    public static final class Record {
+        public final String topic;
+        public final int partition;
+        public final long offset;
+        public final GenericRecord key;
+        public final GenericRecord value;
+
+        Record(String topic, int partition, long offset, GenericRecord key, GenericRecord value) {
+            this.topic = topic;
+            this.partition = partition;
+            this.offset = offset;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
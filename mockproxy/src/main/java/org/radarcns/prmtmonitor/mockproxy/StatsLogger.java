@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/** Periodically logs the rate of produced records and of records and bytes served. */
+class StatsLogger implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(StatsLogger.class);
+
+    private static final long INTERVAL_SECONDS = 10L;
+
+    private final MockBroker broker;
+    private final MockRestProxy proxy;
+    private final ScheduledExecutorService executor;
+    private long lastProduced;
+    private long lastServed;
+    private long lastBytes;
+
+    StatsLogger(MockBroker broker, MockRestProxy proxy) {
+        this.broker = broker;
+        this.proxy = proxy;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mock-proxy-stats");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void start() {
+        executor.scheduleAtFixedRate(this, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        long produced = broker.getRecordsProduced();
+        long served = proxy.getRecordsServed();
+        long bytes = proxy.getBytesServed();
+        logger.info(String.format(Locale.US,
+                "Produced %.1f records/s, served %.1f records/s in %.1f kB/s",
+                (produced - lastProduced) / (double) INTERVAL_SECONDS,
+                (served - lastServed) / (double) INTERVAL_SECONDS,
+                (bytes - lastBytes) / 1024d / INTERVAL_SECONDS));
+        lastProduced = produced;
+        lastServed = served;
+        lastBytes = bytes;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.radarcns.prmtmonitor.mockproxy;
+
+import org.apache.avro.generic.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates live data of simulated participants. Each participant uploads the samples of all
+ * topics of the last upload interval at a time, at the sample rates of the real devices and
+ * timestamped with the current time. Uploads of different participants are spread over the
+ * upload interval.
+ */
+public class SyntheticProducer {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticProducer.class);
+
+    private final MockBroker broker;
+    private final int numParticipants;
+    private final int uploadInterval;
+    private final Random random;
+    private final GenericRecord[] keys;
+    /** Fractional samples not yet uploaded, per participant and topic. */
+    private final double[][] pending;
+    private final long[][] sampleIndex;
+    private final ScheduledExecutorService executor;
+    private long tick;
+
+    /**
+     * Producer of simulated participants.
+     * @param broker broker to produce to
+     * @param numParticipants number of participants to simulate
+     * @param uploadInterval seconds between uploads of a single participant
+     * @param seed random seed
+     */
+    public SyntheticProducer(MockBroker broker, int numParticipants, int uploadInterval,
+            long seed) {
+        if (uploadInterval <= 0) {
+            throw new IllegalArgumentException("Upload interval must be positive");
+        }
+        this.broker = broker;
+        this.numParticipants = numParticipants;
+        this.uploadInterval = uploadInterval;
+        this.random = new Random(seed);
+        this.keys = new GenericRecord[numParticipants];
+        for (int i = 0; i < numParticipants; i++) {
+            keys[i] = Payloads.key(i);
+        }
+        this.pending = new double[numParticipants][Payloads.TOPICS.size()];
+        this.sampleIndex = new long[numParticipants][Payloads.TOPICS.size()];
+        this.tick = 0L;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "synthetic-producer");
+            }
+        });
+    }
+
+    /** Start producing, once per second. */
+    public void start() {
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    produce();
+                } catch (RuntimeException ex) {
+                    logger.error("Failed to produce synthetic data", ex);
+                }
+            }
+        }, 0L, 1L, TimeUnit.SECONDS);
+        logger.info("Producing data of {} participants every {} seconds",
+                numParticipants, uploadInterval);
+    }
+
+    /** Stop producing. */
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** Upload the data of all participants whose turn it is in this second. */
+    private void produce() {
+        double now = System.currentTimeMillis() / 1000d;
+        double windowStart = now - uploadInterval;
+        for (int user = (int) (tick % uploadInterval); user < numParticipants;
+                user += uploadInterval) {
+            for (int t = 0; t < Payloads.TOPICS.size(); t++) {
+                Payloads.TopicPayload topic = Payloads.TOPICS.get(t);
+                pending[user][t] += topic.rate * uploadInterval;
+                int numSamples = (int) pending[user][t];
+                if (numSamples == 0) {
+                    continue;
+                }
+                pending[user][t] -= numSamples;
+                List<GenericRecord> userKeys = new ArrayList<>(numSamples);
+                List<GenericRecord> values = new ArrayList<>(numSamples);
+                for (int i = 0; i < numSamples; i++) {
+                    double time = windowStart + i / topic.rate;
+                    userKeys.add(keys[user]);
+                    values.add(topic.value(sampleIndex[user][t]++, time, now, random));
+                }
+                broker.produce(topic.name, user, userKeys, values);
+            }
+        }
+        tick++;
+    }
+}